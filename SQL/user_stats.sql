@@ -0,0 +1,32 @@
+-- Per-user totals kept up to date by the bot as messages and timeouts are logged, so the first
+-- message, last message, message count and timeout commands don't have to scan messages.
+
+CREATE TABLE IF NOT EXISTS `chat_stats`.`user_stats`
+(
+    `username`        varchar(50) NOT NULL,
+    `first_id`        int(11)              DEFAULT NULL,
+    `first_time`      datetime             DEFAULT NULL,
+    `last_id`         int(11)              DEFAULT NULL,
+    `last_time`       datetime             DEFAULT NULL,
+    `message_count`   bigint(20)  NOT NULL DEFAULT 0,
+    `timeout_seconds` bigint(20)  NOT NULL DEFAULT 0,
+    PRIMARY KEY (`username`)
+) ENGINE = InnoDB
+  DEFAULT CHARSET = utf8mb4;
+
+-- One-time backfill from the existing tables. Run once while the bot is stopped, it goes through
+-- all of messages.
+INSERT INTO `chat_stats`.`user_stats`(username, first_id, first_time, last_id, last_time, message_count, timeout_seconds)
+SELECT s.username, s.first_id, f.time, s.last_id, l.time, s.message_count, IFNULL(u.timeout, 0)
+FROM (SELECT username, MIN(id) AS first_id, MAX(id) AS last_id, COUNT(*) AS message_count
+      FROM `chat_stats`.`messages`
+      GROUP BY username) s
+         JOIN `chat_stats`.`messages` f ON f.id = s.first_id
+         JOIN `chat_stats`.`messages` l ON l.id = s.last_id
+         LEFT JOIN `chat_stats`.`users` u ON u.username = s.username
+UNION ALL
+-- users that were timed out but never wrote a message.
+SELECT u.username, NULL, NULL, NULL, NULL, 0, u.timeout
+FROM `chat_stats`.`users` u
+WHERE NOT EXISTS (SELECT 1 FROM `chat_stats`.`messages` m WHERE m.username = u.username)
+ON DUPLICATE KEY UPDATE username = user_stats.username;
@@ -0,0 +1,114 @@
+package chatbot;
+
+import chatbot.dao.api.ApiHandler;
+import chatbot.dao.db.DatabaseHandler;
+import chatbot.dao.db.DeadLetters;
+import chatbot.dao.db.KnownUserIndex;
+import chatbot.dao.db.Maria;
+import chatbot.dao.db.MultiDatabaseHandler;
+import chatbot.dao.db.SQLSolrHandler;
+import chatbot.dao.db.SearchCache;
+import chatbot.dao.db.Solr;
+import chatbot.dao.db.UserStats;
+import chatbot.service.CommandHandlerService;
+import chatbot.service.MessageLoggerService;
+import chatbot.service.OnlineCheckerService;
+import chatbot.service.TimeoutLoggerService;
+import chatbot.singleton.Config;
+import chatbot.singleton.SharedState;
+import chatbot.utils.LogSpool;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Service;
+import com.google.common.util.concurrent.ServiceManager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.annotation.Nonnull;
+
+import static chatbot.dao.db.DatabaseKt.getSolrInstance;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Services that don't depend on the IRC connection. They are started once and keep running across
+ * reconnects, only the connection specific services in {@link ProgramThread} are replaced.
+ */
+public class BotServices {
+
+    private final static Logger log = LogManager.getLogger(BotServices.class);
+
+    private final SharedState state = SharedState.getInstance();
+    private final MultiDatabaseHandler dbLogger;
+    private final DatabaseHandler databaseHandler;
+    private final KnownUserIndex knownUsers;
+    private final ServiceManager serviceManager;
+
+    public BotServices() {
+        SearchCache searchCache = new SearchCache(Config.getTwitchUsername(), Config.getSearchCacheSize(),
+                Duration.ofSeconds(Config.getSearchCacheTtl()));
+        this.knownUsers = new KnownUserIndex(Config.getKnownUsersSnapshot(), Config.getKnownUsersExpected());
+        this.databaseHandler = new SQLSolrHandler(searchCache, knownUsers);
+        LogSpool spool;
+        try {
+            spool = new LogSpool(Config.getSpoolDir(), Config.getSpoolSegmentSize(), Config.getSpoolMaxSize());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the spool in " + Config.getSpoolDir(), e);
+        }
+        DeadLetters deadLetters = new DeadLetters(Config.getDeadLetterFile());
+        this.dbLogger = new MultiDatabaseHandler(spool,
+                new Maria(new UserStats(), spool.cursor("maria"), deadLetters),
+                new Solr(spool.cursor("solr"), deadLetters));
+
+        List<Service> services = List.of(
+                new CommandHandlerService(databaseHandler),
+                new MessageLoggerService(dbLogger, searchCache, knownUsers),
+                new TimeoutLoggerService(dbLogger),
+                new OnlineCheckerService(new ApiHandler()));
+        this.serviceManager = new ServiceManager(services);
+        serviceManager.addListener(new ServiceManager.Listener() {
+            @Override
+            public void failure(@Nonnull Service service) {
+                log.error("{} failed. reason {}", service, service.failureCause());
+                state.stop();
+            }
+
+            @Override
+            public void healthy() {
+                log.info("Started services: {}", serviceManager.startupDurations());
+            }
+
+            @Override
+            public void stopped() {
+                log.info("Stopped services");
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    public void start() throws TimeoutException {
+        // lookups go to the database until the index is loaded.
+        Thread.ofVirtual().name("known-users").start(() -> knownUsers.load(databaseHandler::forEachUsername));
+        serviceManager.startAsync();
+        serviceManager.awaitHealthy(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Lets the services finish what is already queued and stops the database sinks after them.
+     */
+    public void shutdown() {
+        state.poisonQueues();
+        try {
+            serviceManager.stopAsync().awaitStopped(60, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            log.error("Closing services timed out: {} . Current states: {}", e.getMessage(),
+                    serviceManager.servicesByState());
+        }
+        dbLogger.destroy();
+        getSolrInstance().close();
+        knownUsers.writeSnapshot();
+    }
+}
@@ -1,7 +1,11 @@
 package chatbot;
 
 import chatbot.connector.MessageConnector;
+import chatbot.connector.NioMessageConnector;
+import chatbot.connector.RedundantMessageConnector;
 import chatbot.connector.TwitchMessageConnector;
+import chatbot.enums.HotStandby;
+import chatbot.service.SenderService;
 import chatbot.singleton.Config;
 import chatbot.singleton.SharedState;
 import org.apache.logging.log4j.LogManager;
@@ -9,6 +13,7 @@ import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
 import java.time.Instant;
+import java.util.concurrent.TimeoutException;
 
 public class ConsoleMain {
 
@@ -22,10 +27,20 @@ public class ConsoleMain {
         Config.init();
         registerMetrics();
 
+        BotServices services = new BotServices();
+        try {
+            services.start();
+        } catch (TimeoutException e) {
+            log.fatal("Services did not start: {}", e.getMessage());
+            services.shutdown();
+            Metrics.close();
+            return;
+        }
+
         while (SharedState.getInstance().isBotStillRunning()) {
             MessageConnector messageConnector;
             try {
-                messageConnector = new TwitchMessageConnector();
+                messageConnector = createConnector();
             } catch (IOException e) {
                 log.fatal("Error creating messageConnector", e);
                 waitToReconnect();
@@ -46,10 +61,28 @@ public class ConsoleMain {
             }
             Config.init();
         }
+        services.shutdown();
         Metrics.close();
         log.info("Program shutdown.");
     }
 
+    /**
+     * Opens the connection used by a ProgramThread, wrapped with a standby connection if
+     * configured.
+     */
+    private static MessageConnector createConnector() throws IOException {
+        HotStandby hotStandby = Config.getHotStandby();
+        if (hotStandby == HotStandby.OFF) {
+            return openConnection();
+        }
+        return new RedundantMessageConnector(ConsoleMain::openConnection, SenderService::handshake,
+                hotStandby == HotStandby.PERMANENT);
+    }
+
+    private static MessageConnector openConnection() throws IOException {
+        return Config.isNioConnector() ? new NioMessageConnector() : new TwitchMessageConnector();
+    }
+
     public static void waitToReconnect() {
         try {
             Thread.sleep(1000);
@@ -63,7 +96,9 @@ public class ConsoleMain {
 
     public static void reconnect() {
         Metrics.RECONNECT_COUNTER.inc();
-        programThread.shutdown();
+        if (programThread != null) {
+            programThread.shutdown();
+        }
     }
 
     public static void registerMetrics() {
@@ -13,8 +13,11 @@ public enum Metrics {
     CONNECT_COUNTER("connect"),
     RECONNECT_COUNTER("reconnect"),
     MESSAGE_COUNTER("message"),
+    FILTERED_COUNTER("filtered"),
     COMMAND_COUNTER("command"),
     COMMAND_NOT_ALLOWED_COUNTER("command_not_allowed"),
+    COMMAND_TIMEOUT_COUNTER("command_timeout"),
+    COMMAND_REJECTED_COUNTER("command_rejected"),
     PING_COUNTER("ping"),
     WHISPER_COUNTER("whisper"),
     SENT_COUNTER("sent"),
@@ -22,6 +25,24 @@ public enum Metrics {
     TIMEOUT_COUNTER("timeout"),
     PERMABAN_COUNTER("permaban"),
     UNHANDLED_COUNTER("unhandled"),
+    QUEUE_SHED_COUNTER("queue_shed"),
+    QUEUE_SPILL_COUNTER("queue_spill"),
+    LOST_MESSAGE_COUNTER("lost_message"),
+    RECONNECT_TIME("reconnect_time"),
+    STANDBY_PROMOTED_COUNTER("standby_promoted"),
+    SEARCH_CACHE_HIT_COUNTER("search_cache_hit"),
+    SEARCH_CACHE_MISS_COUNTER("search_cache_miss"),
+    SEND_QUEUE_WAIT("send_queue_wait"),
+    SEND_DROPPED_COUNTER("send_dropped"),
+    SEND_BATCH_SIZE("send_batch_size"),
+    SEND_WRITE_MICROS("send_write_micros"),
+    DB_BATCH_ROWS("db_batch_rows"),
+    DB_COMMIT_TIME("db_commit_time"),
+    DEAD_LETTER_COUNTER("dead_letter"),
+    SINK_LAG_BYTES("sink_lag_bytes"),
+    SINK_BREAKER_STATE("sink_breaker_state"),
+    SPOOL_BYTES("spool_bytes"),
+    SPOOL_DROPPED_BYTES("spool_dropped_bytes"),
     ;
 
     final String field;
@@ -39,6 +60,9 @@ public enum Metrics {
     }
 
     public void inc(String command, Long time) {
+        if (writeApi == null) {
+            return;
+        }
         Point point = Point.measurement("bot").addField(field, time != null ? time : 1L).time(Instant.now().toEpochMilli(), WritePrecision.MS);
         if (command != null) {
             point.addTag("command", command);
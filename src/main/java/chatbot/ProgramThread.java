@@ -1,19 +1,8 @@
 package chatbot;
 
 import chatbot.connector.MessageConnector;
-import chatbot.dao.api.ApiHandler;
-import chatbot.dao.db.DatabaseHandler;
-import chatbot.dao.db.Maria;
-import chatbot.dao.db.MultiDatabaseHandler;
-import chatbot.dao.db.Postgres;
-import chatbot.dao.db.SQLSolrHandler;
-import chatbot.dao.db.Solr;
-import chatbot.service.CommandHandlerService;
 import chatbot.service.ListenerService;
-import chatbot.service.MessageLoggerService;
-import chatbot.service.OnlineCheckerService;
 import chatbot.service.SenderService;
-import chatbot.service.TimeoutLoggerService;
 import chatbot.singleton.SharedState;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.MoreExecutors;
@@ -31,35 +20,25 @@ import javax.annotation.Nonnull;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+/**
+ * Runs a single connection to the IRC server. Only the listener and sender belong to the
+ * connection, everything else is in {@link BotServices}.
+ */
 public class ProgramThread implements Runnable {
 
     private final static Logger log = LogManager.getLogger(ProgramThread.class);
 
     private final ListenerService listenerService;
     private final SenderService senderService;
-    private final CommandHandlerService commandHandlerService;
-    private final MessageLoggerService messageLoggerService;
-    private final TimeoutLoggerService timeoutLoggerService;
-    private final OnlineCheckerService onlineCheckerService;
     private final CountDownLatch done = new CountDownLatch(1);
     private final SharedState state = SharedState.getInstance();
     private final MessageConnector messageConnector;
-    private final MultiDatabaseHandler dbLogger;
 
     private ServiceManager serviceManager;
 
     public ProgramThread(MessageConnector messageConnector) {
         this.messageConnector = messageConnector;
-        state.clearQueues();
-
-        DatabaseHandler databaseHandler = new SQLSolrHandler();
-
-        this.dbLogger = new MultiDatabaseHandler(new Maria(), new Solr());
         this.senderService = new SenderService(messageConnector);
-        this.commandHandlerService = new CommandHandlerService(databaseHandler);
-        this.onlineCheckerService = new OnlineCheckerService(new ApiHandler());
-        this.timeoutLoggerService = new TimeoutLoggerService(dbLogger);
-        this.messageLoggerService = new MessageLoggerService(dbLogger);
         this.listenerService = new ListenerService(messageConnector);
     }
 
@@ -67,9 +46,7 @@ public class ProgramThread implements Runnable {
     public void run() {
         try {
             state.lastPing.set(Instant.EPOCH);
-            ArrayList<Service> services = Lists.newArrayList(senderService, listenerService,
-                    commandHandlerService, messageLoggerService, timeoutLoggerService,
-                    onlineCheckerService);
+            ArrayList<Service> services = Lists.newArrayList(senderService, listenerService);
             this.serviceManager = new ServiceManager(services);
             addListenersToManager(serviceManager);
             serviceManager.startAsync();
@@ -112,9 +89,11 @@ public class ProgramThread implements Runnable {
     }
 
     public void shutdown() {
+        if (done.getCount() == 0) {
+            return;
+        }
+        state.disconnected();
         done.countDown();
-        state.poisonQueues();
-        dbLogger.destroy();
         messageConnector.close();
     }
 }
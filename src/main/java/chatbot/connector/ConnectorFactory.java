@@ -0,0 +1,12 @@
+package chatbot.connector;
+
+import java.io.IOException;
+
+/**
+ * Opens a new connection to the IRC server.
+ */
+@FunctionalInterface
+public interface ConnectorFactory {
+
+  MessageConnector create() throws IOException;
+}
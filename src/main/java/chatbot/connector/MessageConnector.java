@@ -1,6 +1,7 @@
 package chatbot.connector;
 
 import java.io.IOException;
+import java.util.List;
 
 public interface MessageConnector {
 
@@ -20,6 +21,18 @@ public interface MessageConnector {
    */
   void sendMessage(final String message) throws IOException;
 
+  /**
+   * Sends several messages to the connector. Implementations may write them all at once.
+   *
+   * @param messages Messages to be sent in order.
+   * @throws IOException when there is a connection issue with the connector.
+   */
+  default void sendMessages(final List<String> messages) throws IOException {
+    for (String message : messages) {
+      sendMessage(message);
+    }
+  }
+
   /**
    * Attempts to close the connections gracefully.
    */
@@ -0,0 +1,233 @@
+package chatbot.connector;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * MessageConnector on top of a non-blocking SocketChannel. Lines are framed on the raw bytes and
+ * only decoded to a String when their command passes the prefilter, so membership spam (JOIN/PART)
+ * never leaves the read buffer.
+ */
+public class NioMessageConnector implements MessageConnector {
+
+    private final static Logger log = LogManager.getLogger(NioMessageConnector.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[][] ignoredCommands = {
+            "JOIN".getBytes(StandardCharsets.US_ASCII),
+            "PART".getBytes(StandardCharsets.US_ASCII),
+    };
+
+    private final SocketChannel channel;
+    private final Selector readSelector;
+    private final Selector writeSelector;
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CharBuffer lineBuffer = CharBuffer.allocate(BUFFER_SIZE);
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final Object writeLock = new Object();
+    private int scanned;
+    private boolean discarding;
+
+    public NioMessageConnector() throws IOException {
+        this("irc.chat.twitch.tv", 6667);
+    }
+
+    public NioMessageConnector(String host, int port) throws IOException {
+        this.channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.configureBlocking(false);
+        this.readSelector = Selector.open();
+        this.writeSelector = Selector.open();
+        channel.register(readSelector, SelectionKey.OP_READ);
+        channel.register(writeSelector, SelectionKey.OP_WRITE);
+        readBuffer.flip();
+    }
+
+    @Override
+    public String getMessage() throws IOException {
+        while (true) {
+            int lineFeed = findLineFeed();
+            if (lineFeed == -1) {
+                if (!fill()) {
+                    return null;
+                }
+                continue;
+            }
+            int start = readBuffer.position();
+            int end = lineFeed;
+            if (end > start && readBuffer.get(end - 1) == '\r') {
+                end--;
+            }
+            readBuffer.position(lineFeed + 1);
+            scanned = lineFeed + 1;
+            if (discarding) {
+                discarding = false;
+                continue;
+            }
+            if (end == start || isIgnored(start, end)) {
+                continue;
+            }
+            return decode(start, end);
+        }
+    }
+
+    private int findLineFeed() {
+        for (int i = Math.max(scanned, readBuffer.position()); i < readBuffer.limit(); i++) {
+            if (readBuffer.get(i) == '\n') {
+                return i;
+            }
+        }
+        scanned = readBuffer.limit();
+        return -1;
+    }
+
+    /**
+     * Reads more bytes from the channel, waiting on the selector until some are available.
+     *
+     * @return false if the server closed the connection or it was closed with {@link #close()}.
+     */
+    private boolean fill() throws IOException {
+        int unread = readBuffer.remaining();
+        if (readBuffer.position() == 0 && readBuffer.limit() == readBuffer.capacity()) {
+            log.warn("Discarding line longer than {} bytes.", BUFFER_SIZE);
+            discarding = true;
+            readBuffer.clear();
+            unread = 0;
+        } else {
+            readBuffer.compact();
+        }
+        scanned = unread;
+        try {
+            while (true) {
+                int read = channel.read(readBuffer);
+                if (read == -1) {
+                    return false;
+                }
+                if (read > 0) {
+                    return true;
+                }
+                readSelector.select();
+                readSelector.selectedKeys().clear();
+            }
+        } catch (ClosedChannelException | ClosedSelectorException e) {
+            // closed by another thread while waiting, the same as the server closing it.
+            return false;
+        } finally {
+            readBuffer.flip();
+        }
+    }
+
+    /**
+     * Checks the command of the line without decoding it.
+     */
+    private boolean isIgnored(int start, int end) {
+        int index = start;
+        if (readBuffer.get(index) == '@') {
+            index = skipWord(index, end);
+        }
+        if (index < end && readBuffer.get(index) == ':') {
+            index = skipWord(index, end);
+        }
+        int commandEnd = index;
+        while (commandEnd < end && readBuffer.get(commandEnd) != ' ') {
+            commandEnd++;
+        }
+        for (byte[] ignored : ignoredCommands) {
+            if (ignored.length != commandEnd - index) {
+                continue;
+            }
+            boolean match = true;
+            for (int i = 0; i < ignored.length && match; i++) {
+                match = readBuffer.get(index + i) == ignored[i];
+            }
+            if (match) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int skipWord(int index, int end) {
+        while (index < end && readBuffer.get(index) != ' ') {
+            index++;
+        }
+        return Math.min(index + 1, end);
+    }
+
+    private String decode(int start, int end) {
+        ByteBuffer line = readBuffer.slice(start, end - start);
+        lineBuffer.clear();
+        decoder.reset();
+        // a UTF-8 line never has more chars than bytes, so the line buffer cannot overflow.
+        decoder.decode(line, lineBuffer, true);
+        decoder.flush(lineBuffer);
+        return lineBuffer.flip().toString();
+    }
+
+    @Override
+    public void sendMessage(String message) throws IOException {
+        write(new ByteBuffer[]{StandardCharsets.UTF_8.encode(message)});
+    }
+
+    /**
+     * Sends all messages with a single gathering write.
+     */
+    @Override
+    public void sendMessages(List<String> messages) throws IOException {
+        ByteBuffer[] buffers = new ByteBuffer[messages.size()];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = StandardCharsets.UTF_8.encode(messages.get(i));
+        }
+        write(buffers);
+    }
+
+    private void write(ByteBuffer[] buffers) throws IOException {
+        synchronized (writeLock) {
+            int first = 0;
+            while (first < buffers.length) {
+                if (channel.write(buffers, first, buffers.length - first) == 0) {
+                    try {
+                        writeSelector.select(1000);
+                    } catch (ClosedSelectorException e) {
+                        throw new ClosedChannelException();
+                    }
+                    writeSelector.selectedKeys().clear();
+                }
+                while (first < buffers.length && !buffers[first].hasRemaining()) {
+                    first++;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+            readSelector.wakeup();
+            writeSelector.wakeup();
+            readSelector.close();
+            writeSelector.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package chatbot.connector;
+
+import chatbot.Metrics;
+import chatbot.connector.container.IncomingMessage;
+import chatbot.utils.DedupWindow;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * MessageConnector that reads from a primary connection and a standby connection joined to the
+ * same channel. Chat lines from both are merged and deduplicated on their "id" tag, everything
+ * else only comes from the primary and messages are only sent through it.
+ * <p>
+ * When the server asks the primary to reconnect, a standby is joined and replaces it as soon as it
+ * is in the channel, without dropping anything in between. In permanent mode the standby is kept
+ * joined at all times and takes over immediately when the primary drops.
+ */
+public class RedundantMessageConnector implements MessageConnector {
+
+    private final static Logger log = LogManager.getLogger(RedundantMessageConnector.class);
+
+    private static final long DEDUP_WINDOW_SECONDS = 60;
+    private static final int DEDUP_MAX_KEYS = 100_000;
+    private static final long STANDBY_RETRY_SECONDS = 10;
+    /**
+     * Lines that are the same on every connection and can be deduplicated.
+     */
+    private static final String[] chatCommands = {
+            "PRIVMSG", "CLEARCHAT", "USERNOTICE", "CLEARMSG", "WHISPER",
+    };
+
+    private final ConnectorFactory factory;
+    private final Supplier<List<String>> handshake;
+    private final boolean permanent;
+    private final BlockingQueue<Line> lines = new LinkedBlockingQueue<>(10_000);
+    private final DedupWindow seen = new DedupWindow(DEDUP_WINDOW_SECONDS, TimeUnit.SECONDS, DEDUP_MAX_KEYS);
+    private final IncomingMessage parsed = new IncomingMessage();
+    private volatile Connection primary;
+    private Connection standby;
+    private boolean openingStandby;
+    private boolean handover;
+    private volatile boolean closed;
+
+    private record Line(Connection from, String text) {
+    }
+
+    private final class Connection implements Runnable {
+        private final MessageConnector connector;
+        private final String name;
+        private volatile boolean joined;
+
+        private Connection(MessageConnector connector, String name) {
+            this.connector = connector;
+            this.name = name;
+            Thread.ofPlatform().daemon().name(name).start(this);
+        }
+
+        @Override
+        public void run() {
+            try {
+                String line;
+                while ((line = connector.getMessage()) != null) {
+                    lines.put(new Line(this, line));
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    log.warn("{} read error: {}", name, e.getMessage());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                end();
+            }
+        }
+
+        /**
+         * Queues a line without text, which marks the end of this connection. getMessage only
+         * notices the end through it, so it waits for space instead of being dropped when the queue
+         * is full. Once the connector is closed nobody may be reading, then it gives up.
+         */
+        private void end() {
+            Line end = new Line(this, null);
+            boolean interrupted = Thread.interrupted();
+            try {
+                while (true) {
+                    try {
+                        if (lines.offer(end, 1, TimeUnit.SECONDS) || closed) {
+                            return;
+                        }
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private void close() {
+            try {
+                connector.close();
+            } catch (RuntimeException e) {
+                log.debug("Error closing {}: {}", name, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @param factory   opens the underlying connections.
+     * @param handshake lines that log in and join the channel, sent by the standby itself. The
+     *                  primary is logged in by whoever uses this connector.
+     * @param permanent keep a standby joined at all times instead of only when reconnecting.
+     * @throws IOException if the primary connection could not be opened.
+     */
+    public RedundantMessageConnector(ConnectorFactory factory, Supplier<List<String>> handshake,
+            boolean permanent) throws IOException
+    {
+        this.factory = factory;
+        this.handshake = handshake;
+        this.permanent = permanent;
+        this.primary = new Connection(factory.create(), "irc-primary");
+        if (permanent) {
+            openStandby();
+        }
+    }
+
+    @Override
+    public String getMessage() throws IOException {
+        while (true) {
+            Line line;
+            try {
+                line = lines.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a message.");
+            }
+            Connection from = line.from();
+            if (line.text() == null) {
+                if (closed) {
+                    return null;
+                }
+                if (from == primary) {
+                    log.warn("Primary connection closed.");
+                    if (!promoteStandby()) {
+                        return null;
+                    }
+                } else {
+                    standbyClosed(from);
+                }
+                continue;
+            }
+
+            parsed.parse(line.text());
+            if (isChat(parsed)) {
+                String id = parsed.getTag("id");
+                if (seen.firstSeen(id != null ? id : line.text(), System.nanoTime())) {
+                    return line.text();
+                }
+                continue;
+            }
+            if (from == primary) {
+                if (parsed.isCommand("RECONNECT")) {
+                    log.info("Reconnect issued, switching to a standby connection.");
+                    handover = true;
+                    if (!promoteStandby()) {
+                        openStandby();
+                    }
+                    continue;
+                }
+                return line.text();
+            }
+            handleStandbyLine(from, parsed);
+        }
+    }
+
+    private static boolean isChat(IncomingMessage message) {
+        for (String command : chatCommands) {
+            if (message.isCommand(command)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void handleStandbyLine(Connection from, IncomingMessage message) {
+        if (message.isCommand("PING")) {
+            try {
+                from.connector.sendMessage("PONG :tmi.twitch.tv\r\n");
+            } catch (IOException e) {
+                log.warn("Error answering ping on {}: {}", from.name, e.getMessage());
+            }
+        } else if (message.isCommand("366") || message.isCommand("ROOMSTATE")) {
+            if (!from.joined) {
+                from.joined = true;
+                log.info("{} joined.", from.name);
+                if (handover) {
+                    promoteStandby();
+                }
+            }
+        } else if (message.isCommand("RECONNECT")) {
+            log.info("Reconnect issued for {}.", from.name);
+            from.close();
+        } else {
+            log.trace("{}: {}", from.name, message.getOriginal());
+        }
+    }
+
+    /**
+     * Replaces the primary with the standby if it has joined the channel.
+     *
+     * @return false if there was no joined standby.
+     */
+    private boolean promoteStandby() {
+        Connection old;
+        synchronized (this) {
+            if (standby == null || !standby.joined) {
+                return false;
+            }
+            old = primary;
+            primary = standby;
+            standby = null;
+            handover = false;
+        }
+        log.info("{} is now the primary connection.", primary.name);
+        Metrics.STANDBY_PROMOTED_COUNTER.inc();
+        old.close();
+        if (permanent) {
+            openStandby();
+        }
+        return true;
+    }
+
+    private void standbyClosed(Connection connection) {
+        synchronized (this) {
+            if (connection != standby) {
+                return;
+            }
+            standby = null;
+        }
+        log.warn("{} closed.", connection.name);
+        if (permanent || handover) {
+            openStandby();
+        }
+    }
+
+    private void openStandby() {
+        synchronized (this) {
+            if (closed || standby != null || openingStandby) {
+                return;
+            }
+            openingStandby = true;
+        }
+        Thread.ofVirtual().name("irc-standby-opener").start(() -> {
+            while (true) {
+                try {
+                    MessageConnector connector = factory.create();
+                    connector.sendMessages(handshake.get());
+                    synchronized (this) {
+                        openingStandby = false;
+                        if (closed) {
+                            connector.close();
+                            return;
+                        }
+                        standby = new Connection(connector, "irc-standby-" + System.currentTimeMillis());
+                    }
+                    return;
+                } catch (IOException e) {
+                    log.warn("Could not open a standby connection: {}", e.getMessage());
+                }
+                try {
+                    TimeUnit.SECONDS.sleep(STANDBY_RETRY_SECONDS);
+                } catch (InterruptedException e) {
+                    synchronized (this) {
+                        openingStandby = false;
+                    }
+                    return;
+                }
+                if (closed) {
+                    return;
+                }
+            }
+        });
+    }
+
+    @Override
+    public void sendMessage(String message) throws IOException {
+        primary.connector.sendMessage(message);
+    }
+
+    @Override
+    public void sendMessages(List<String> messages) throws IOException {
+        primary.connector.sendMessages(messages);
+    }
+
+    @Override
+    public void close() {
+        Connection standbyConnection;
+        synchronized (this) {
+            closed = true;
+            standbyConnection = standby;
+            standby = null;
+        }
+        primary.close();
+        if (standbyConnection != null) {
+            standbyConnection.close();
+        }
+    }
+}
@@ -3,6 +3,7 @@ package chatbot.connector;
 import java.io.*;
 import java.net.Socket;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 public class TwitchMessageConnector implements MessageConnector {
 
@@ -25,8 +26,24 @@ public class TwitchMessageConnector implements MessageConnector {
 
     @Override
     public void sendMessage(String message) throws IOException {
-        bufferedWriter.write(message);
-        bufferedWriter.flush();
+        synchronized (bufferedWriter) {
+            bufferedWriter.write(message);
+            bufferedWriter.flush();
+        }
+    }
+
+    /**
+     * Writes all messages to the buffer and flushes once, so they go out in one socket write as long
+     * as they fit in the buffer.
+     */
+    @Override
+    public void sendMessages(List<String> messages) throws IOException {
+        synchronized (bufferedWriter) {
+            for (String message : messages) {
+                bufferedWriter.write(message);
+            }
+            bufferedWriter.flush();
+        }
     }
 
     @Override
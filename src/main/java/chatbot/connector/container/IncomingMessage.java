@@ -1,82 +1,248 @@
 package chatbot.connector.container;
 
-import java.util.HashMap;
-import java.util.Map;
-
+/**
+ * Flyweight parser for a single IRC line. Only offsets into the original line are stored when
+ * parsing, tags are looked up and unescaped on demand. Instances are not thread safe but can be
+ * reused for any number of lines by calling {@link #parse(String)} again.
+ */
 public class IncomingMessage {
 
-    public final String original;
-    public String source = "";
-    private String command;
-    public String params = "";
-    public Map<String, String> tagsMap = new HashMap<>();
+    private static final ThreadLocal<IncomingMessage> local = ThreadLocal.withInitial(IncomingMessage::new);
+
+    /**
+     * Commands that are returned as constants instead of allocating a new substring for each line.
+     */
+    private static final String[] knownCommands = {
+            "PRIVMSG", "CLEARCHAT", "USERNOTICE", "CLEARMSG", "PING", "WHISPER", "USERSTATE", "ROOMSTATE",
+            "JOIN", "PART", "RECONNECT", "CAP", "001", "002", "003", "004", "353", "366", "372", "375", "376",
+    };
+
+    private String original;
+    private int tagsStart;
+    private int tagsEnd;
+    private int sourceStart;
+    private int sourceEnd;
+    private int commandStart;
+    private int commandEnd;
+    private int paramsStart;
+
+    public IncomingMessage() {
+    }
 
     public IncomingMessage(String original) {
-        this.original = original;
-        parseToParts();
+        parse(original);
     }
 
-    private void parseToParts() {
+    /**
+     * Parses the line using an instance that is reused by the current thread. The returned instance
+     * is only valid until the next call on the same thread.
+     *
+     * @param line line as received from the server.
+     * @return parsed line.
+     */
+    public static IncomingMessage parseLocal(String line) {
+        return local.get().parse(line);
+    }
+
+    /**
+     * Parses the given line into this instance, discarding the previous one.
+     *
+     * @param line line as received from the server.
+     * @return this instance.
+     */
+    public IncomingMessage parse(String line) {
+        this.original = line;
+        int length = line.length();
         int index = 0;
-        if (original.startsWith("@")) {
-            int tagsEndIndex = original.indexOf(' ');
-            String tags = original.substring(1, tagsEndIndex);
-            tagsMap = tagsToMap(tags);
-            index = tagsEndIndex + 1;
+
+        tagsStart = tagsEnd = 0;
+        if (line.startsWith("@")) {
+            int tagsEndIndex = line.indexOf(' ');
+            if (tagsEndIndex == -1) {
+                tagsEndIndex = length;
+            }
+            tagsStart = 1;
+            tagsEnd = tagsEndIndex;
+            index = Math.min(tagsEndIndex + 1, length);
         }
 
-        if (original.charAt(index) == ':') {
+        sourceStart = sourceEnd = index;
+        if (index < length && line.charAt(index) == ':') {
             index += 1;
-            int sourceEndIndex = original.indexOf(" ", index);
-            source = original.substring(index, sourceEndIndex);
-            index = sourceEndIndex + 1;
+            int sourceEndIndex = line.indexOf(' ', index);
+            if (sourceEndIndex == -1) {
+                sourceEndIndex = length;
+            }
+            sourceStart = index;
+            sourceEnd = sourceEndIndex;
+            index = Math.min(sourceEndIndex + 1, length);
         }
 
-        int paramsEndIndex = original.indexOf(':', index);
+        int paramsEndIndex = line.indexOf(':', index);
         if (paramsEndIndex == -1) {
-            paramsEndIndex = original.length();
+            paramsEndIndex = length;
+            paramsStart = length;
+        } else {
+            paramsStart = paramsEndIndex + 1;
         }
 
-        command = original.substring(index, paramsEndIndex).trim();
-
-        if (paramsEndIndex != original.length()) {
-            index = paramsEndIndex + 1;
-            params = original.substring(index);
+        while (index < paramsEndIndex && line.charAt(index) <= ' ') {
+            index++;
         }
+        commandStart = index;
+        while (index < paramsEndIndex && line.charAt(index) != ' ') {
+            index++;
+        }
+        commandEnd = index;
+        return this;
+    }
+
+    public String getOriginal() {
+        return original;
     }
 
+    /**
+     * @return the command (PRIVMSG, PING, numeric replies...) or an empty string if the line had
+     * none.
+     */
     public String getCommand() {
-        String[] commandParts = command.split(" ");
-        if (commandParts.length == 0) {
-            return "";
+        int length = commandEnd - commandStart;
+        for (String known : knownCommands) {
+            if (known.length() == length && original.regionMatches(commandStart, known, 0, length)) {
+                return known;
+            }
         }
-        return commandParts[0];
+        return original.substring(commandStart, commandEnd);
+    }
+
+    public boolean isCommand(String command) {
+        return command.length() == commandEnd - commandStart
+                && original.regionMatches(commandStart, command, 0, command.length());
+    }
+
+    public String getSource() {
+        return original.substring(sourceStart, sourceEnd);
+    }
+
+    public String getParams() {
+        return original.substring(paramsStart);
     }
 
     public String getName() {
-        return source.substring(0, source.indexOf("!"));
+        int nameEnd = original.indexOf('!', sourceStart);
+        if (nameEnd == -1 || nameEnd > sourceEnd) {
+            nameEnd = sourceEnd;
+        }
+        return original.substring(sourceStart, nameEnd);
+    }
+
+    /**
+     * Looks up a tag and decodes its IRCv3 escape sequences.
+     *
+     * @param key tag name
+     * @return the tag value, an empty string for a tag without a value, or null if the tag is
+     * missing.
+     */
+    public String getTag(String key) {
+        int valueStart = findTagValue(key);
+        if (valueStart < 0) {
+            return null;
+        }
+        int valueEnd = tagValueEnd(valueStart);
+        int escape = original.indexOf('\\', valueStart);
+        if (escape == -1 || escape >= valueEnd) {
+            return original.substring(valueStart, valueEnd);
+        }
+        return unescape(original, valueStart, valueEnd);
+    }
+
+    public String getTag(String key, String defaultValue) {
+        String value = getTag(key);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * Compares a tag value without allocating it. Escaped values are compared in their raw form.
+     */
+    public boolean tagEquals(String key, String value) {
+        int valueStart = findTagValue(key);
+        if (valueStart < 0) {
+            return false;
+        }
+        return tagValueEnd(valueStart) - valueStart == value.length()
+                && original.regionMatches(valueStart, value, 0, value.length());
+    }
+
+    public boolean hasTag(String key) {
+        return findTagValue(key) >= 0;
+    }
+
+    /**
+     * @return index of the first character of the value of the tag, or -1 if the tag is missing.
+     */
+    private int findTagValue(String key) {
+        int keyLength = key.length();
+        int index = tagsStart;
+        while (index < tagsEnd) {
+            int end = index + keyLength;
+            if (end <= tagsEnd && original.regionMatches(index, key, 0, keyLength)) {
+                if (end == tagsEnd || original.charAt(end) == ';') {
+                    return end;
+                }
+                if (original.charAt(end) == '=') {
+                    return end + 1;
+                }
+            }
+            int next = original.indexOf(';', index);
+            if (next == -1 || next >= tagsEnd) {
+                return -1;
+            }
+            index = next + 1;
+        }
+        return -1;
+    }
+
+    private int tagValueEnd(int valueStart) {
+        int end = original.indexOf(';', valueStart);
+        if (end == -1 || end > tagsEnd) {
+            return tagsEnd;
+        }
+        return end;
     }
 
-    private Map<String, String> tagsToMap(String tags) {
-        Map<String, String> tagsMap = new HashMap<>();
-        String[] tagsSplit = tags.split(";");
-        for (String tag : tagsSplit) {
-            int index = tag.indexOf("=");
-            String key = tag.substring(0, index);
-            String value = tag.substring(index + 1);
-            tagsMap.put(key, value);
+    static String unescape(String s, int start, int end) {
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (++i == end) {
+                break; // a trailing lone backslash is dropped
+            }
+            char escaped = s.charAt(i);
+            switch (escaped) {
+                case ':' -> sb.append(';');
+                case 's' -> sb.append(' ');
+                case 'r' -> sb.append('\r');
+                case 'n' -> sb.append('\n');
+                default -> sb.append(escaped);
+            }
         }
-        return tagsMap;
+        return sb.toString();
     }
 
     @Override
     public String toString() {
+        int middleEnd = paramsStart == original.length() ? paramsStart : paramsStart - 1;
         return """
                 original: %s
                 tags: %s
                 source: %s
                 command: %s
                 params: %s
-                """.formatted(original, tagsMap.toString(), source, command, params);
+                """.formatted(original, original.substring(tagsStart, tagsEnd), getSource(),
+                original.substring(commandStart, middleEnd).trim(), getParams());
     }
 }
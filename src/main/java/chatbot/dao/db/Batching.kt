@@ -0,0 +1,12 @@
+package chatbot.dao.db
+
+import java.sql.SQLDataException
+import java.sql.SQLException
+import java.sql.SQLIntegrityConstraintViolationException
+
+/**
+ * @return true if the error is caused by the row itself, retrying it would fail the same way.
+ */
+fun isBadRow(e: SQLException): Boolean =
+    e is SQLIntegrityConstraintViolationException || e is SQLDataException
+            || e.sqlState?.startsWith("22") == true || e.sqlState?.startsWith("23") == true
@@ -4,8 +4,21 @@ import chatbot.message.LoggableMessage
 import chatbot.message.TimeoutMessage
 import chatbot.singleton.Config
 import org.apache.commons.dbcp2.BasicDataSource
+import org.apache.solr.client.solrj.SolrClient
+import org.apache.solr.client.solrj.impl.HttpJdkSolrClient
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
 
 interface Database {
+    /**
+     * Failures of sinks that write in the background, null for the rest.
+     */
+    val health: SinkHealth?
+        get() = null
+
+    /**
+     * Sinks that read messages from the [chatbot.utils.LogSpool] don't need this.
+     */
     fun recordMessage(message: LoggableMessage) {}
 
     fun recordWhisper(message: LoggableMessage) {}
@@ -45,3 +58,31 @@ class MariaSource {
         ds.maxIdle = 20
     }
 }
+
+
+val solrInstance: SolrSource = SolrSource()
+class SolrSource {
+    private val lazyClient = lazy {
+        HttpJdkSolrClient.Builder(Config.getSolrCredentials())
+            .withConnectionTimeout(5, TimeUnit.SECONDS)
+            .withRequestTimeout(7, TimeUnit.SECONDS)
+            .withExecutor(Executors.newVirtualThreadPerTaskExecutor())
+            .useHttp1_1(false)
+            .build()
+    }
+
+    /**
+     * Client for every query, thread safe and keeps its connections open between requests. Uses
+     * HTTP/2 so concurrent queries share a connection.
+     */
+    val client: SolrClient by lazyClient
+
+    /**
+     * Closes the client if it was ever used, no queries can be made after this.
+     */
+    fun close() {
+        if (lazyClient.isInitialized()) {
+            client.close()
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package chatbot.dao.db;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 public interface DatabaseHandler {
 
@@ -8,6 +9,11 @@ public interface DatabaseHandler {
 
     boolean userHasAnyMessages(String username);
 
+    /**
+     * Streams every username that has been logged.
+     */
+    void forEachUsername(Consumer<String> consumer);
+
     List<String> getModList();
 
     List<String> getAltsList();
@@ -28,9 +34,15 @@ public interface DatabaseHandler {
 
     Optional<String> randomQuote(String username, String year);
 
-    long search(String msg);
+    /**
+     * @return number of matching messages, empty if the query failed.
+     */
+    OptionalLong search(String msg);
 
-    long searchUser(String username, String msg);
+    /**
+     * @return number of matching messages from the user, empty if the query failed.
+     */
+    OptionalLong searchUser(String username, String msg);
 
     Map<String, String> getBlacklist();
 
@@ -44,8 +56,14 @@ public interface DatabaseHandler {
 
     boolean addAlt(String main, String alt);
 
-    void setCommandPermissionUser(String user, String command, boolean enable);
+    /**
+     * @return false if the permissions could not be stored.
+     */
+    boolean setPermissions(String user, Map<String, Boolean> permissions);
 
-    Map<String, Boolean> getPersonalPermissions(String user);
+    /**
+     * @return command permissions by username for every user that has any.
+     */
+    Map<String, Map<String, Boolean>> getPermissions();
 
 }
@@ -0,0 +1,72 @@
+package chatbot.dao.db
+
+import chatbot.Metrics
+import chatbot.message.LoggableMessage
+import chatbot.utils.log
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.sql.Connection
+import java.sql.SQLException
+import java.time.Instant
+
+/**
+ * Tab separated file of messages a sink gave up on, with the time, the sink, the error and the
+ * full IRC line so they can be looked at and inserted by hand.
+ */
+class DeadLetters(private val path: Path) {
+
+    @Synchronized
+    fun add(sink: String, message: LoggableMessage, reason: String?) {
+        log.error("Moved message that {} can't write to the dead letters: {} {}", sink, message.fullMsg, reason)
+        Metrics.DEAD_LETTER_COUNTER.inc(sink)
+        val line = listOf(Instant.now().toString(), sink, reason ?: "", message.fullMsg ?: "")
+            .joinToString("\t") { it.replace(Regex("[\t\r\n]"), " ") } + "\n"
+        try {
+            path.toAbsolutePath().parent?.let { Files.createDirectories(it) }
+            Files.writeString(path, line, StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+        } catch (e: IOException) {
+            log.error("Could not write to {}, message is lost: {}", path, e.message)
+            Metrics.LOST_MESSAGE_COUNTER.inc(sink)
+        }
+    }
+}
+
+/**
+ * Counts how often each message of a batch failed on its own, so a row that keeps failing for a
+ * reason [isBadRow] doesn't know about ends up in the dead letters instead of blocking the sink.
+ */
+class RowFailures(private val sink: String, private val deadLetters: DeadLetters) {
+    private val attempts = HashMap<String, Int>()
+
+    /**
+     * Called when inserting the message on its own failed.
+     *
+     * @return true if the message was moved to the dead letters, false if it should be retried.
+     */
+    fun failed(conn: Connection, message: LoggableMessage, e: SQLException): Boolean {
+        if (!isBadRow(e)) {
+            // a failing connection is an outage, not a problem with the row.
+            if (!conn.isValid(2)) {
+                return false
+            }
+            val count = attempts.merge(message.uuid, 1, Int::plus)!!
+            if (count < MAX_ATTEMPTS) {
+                return false
+            }
+        }
+        attempts.remove(message.uuid)
+        deadLetters.add(sink, message, "${e.sqlState} ${e.message}")
+        return true
+    }
+
+    /**
+     * Forgets the counts once the batch is written.
+     */
+    fun clear() = attempts.clear()
+
+    companion object {
+        const val MAX_ATTEMPTS = 3
+    }
+}
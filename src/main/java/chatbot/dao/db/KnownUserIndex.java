@@ -0,0 +1,176 @@
+package chatbot.dao.db;
+
+import chatbot.utils.OffHeapStringSet;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * Every username that has ever been logged. A Bloom filter answers most lookups for names that
+ * were never seen without locking, the rest are answered by an exact set kept off the heap.
+ * <p>
+ * Built from the database on the first start and saved to a snapshot file on shutdown, later starts
+ * only read the snapshot.
+ */
+public class KnownUserIndex {
+
+    private final static Logger log = LogManager.getLogger(KnownUserIndex.class);
+    private static final int MAGIC = 0x4b555352;
+    private static final int VERSION = 1;
+
+    private final Path snapshot;
+    private final int expectedUsers;
+    private volatile BloomFilter<CharSequence> filter;
+    private volatile OffHeapStringSet users;
+    private volatile boolean ready;
+
+    public KnownUserIndex(Path snapshot, int expectedUsers) {
+        this.snapshot = snapshot;
+        this.expectedUsers = expectedUsers;
+        this.filter = newFilter();
+        this.users = new OffHeapStringSet(expectedUsers);
+    }
+
+    private BloomFilter<CharSequence> newFilter() {
+        return BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), expectedUsers, 0.01);
+    }
+
+    /**
+     * Fills the index from the snapshot if there is one, otherwise from the database after which a
+     * snapshot is written. Names added while loading are kept.
+     *
+     * @param database streams every logged username, see {@link DatabaseHandler#forEachUsername}.
+     */
+    public void load(Consumer<Consumer<String>> database) {
+        long start = System.nanoTime();
+        String source = "snapshot";
+        boolean fromSnapshot = readSnapshot();
+        if (!fromSnapshot) {
+            source = "database";
+            database.accept(this::add);
+        }
+        ready = true;
+        if (!fromSnapshot) {
+            writeSnapshot();
+        }
+        log.info("Known user index loaded from {} in {}ms. {} users, {} bytes off heap.", source,
+                (System.nanoTime() - start) / 1_000_000, users.size(), users.allocatedBytes());
+    }
+
+    /**
+     * @return false until the index has been loaded, after that whether the user has been seen.
+     */
+    public boolean contains(String username) {
+        if (!ready) {
+            return false;
+        }
+        String name = username.toLowerCase(Locale.ROOT);
+        return filter.mightContain(name) && users.contains(name);
+    }
+
+    public void add(String username) {
+        String name = username.toLowerCase(Locale.ROOT);
+        if (filter.mightContain(name) && users.contains(name)) {
+            return;
+        }
+        synchronized (this) {
+            users.add(name);
+            filter.put(name);
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        return users.size();
+    }
+
+    private boolean readSnapshot() {
+        if (!Files.exists(snapshot)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                log.warn("{} is not a known user snapshot, rebuilding it.", snapshot);
+                return false;
+            }
+            int count = in.readInt();
+            BloomFilter<CharSequence> loadedFilter = newFilter();
+            OffHeapStringSet loaded = new OffHeapStringSet(Math.max(count, expectedUsers));
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                loaded.add(name);
+                loadedFilter.put(name);
+            }
+            synchronized (this) {
+                // keeps names added by the logger while the snapshot was read.
+                users.forEach(name -> {
+                    loaded.add(name);
+                    loadedFilter.put(name);
+                });
+                this.users = loaded;
+                this.filter = loadedFilter;
+            }
+            return true;
+        } catch (IOException e) {
+            log.error("Could not read known user snapshot {}: {}", snapshot, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Writes the snapshot to a temporary file first so a crash while writing leaves the previous one.
+     */
+    public void writeSnapshot() {
+        if (!ready) {
+            return;
+        }
+        try {
+            Path parent = snapshot.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, snapshot.getFileName().toString(), ".tmp");
+            int count;
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                // nothing is added while writing so the count matches the names written.
+                synchronized (this) {
+                    count = users.size();
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                    out.writeInt(count);
+                    IOException[] failure = new IOException[1];
+                    users.forEach(name -> {
+                        try {
+                            if (failure[0] == null) {
+                                out.writeUTF(name);
+                            }
+                        } catch (IOException e) {
+                            failure[0] = e;
+                        }
+                    });
+                    if (failure[0] != null) {
+                        throw failure[0];
+                    }
+                }
+            }
+            Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Wrote {} known users to {}.", count, snapshot);
+        } catch (IOException e) {
+            log.error("Could not write known user snapshot {}: {}", snapshot, e.getMessage());
+        }
+    }
+}
@@ -1,72 +1,103 @@
 package chatbot.dao.db
 
+import chatbot.Metrics
 import chatbot.message.LoggableMessage
 import chatbot.message.TimeoutMessage
+import chatbot.singleton.Config
 import chatbot.singleton.SharedState
+import chatbot.utils.LogSpool
 import chatbot.utils.errorSql
 import chatbot.utils.log
 import chatbot.utils.warnSql
 import java.sql.Connection
 import java.sql.SQLException
-import java.util.concurrent.LinkedBlockingDeque
-import java.util.concurrent.TimeUnit
-
-private val queue: LinkedBlockingDeque<LoggableMessage> = LinkedBlockingDeque()
-
-class Maria : Database, Runnable {
-    private var lastFailed: Boolean = false
+import java.sql.Statement
+
+class Maria(
+    private val stats: UserStats,
+    private val spool: LogSpool.Cursor,
+    deadLetters: DeadLetters
+) : Database, Runnable {
+    override val health = SinkHealth("maria")
+    private val rowFailures = RowFailures("maria", deadLetters)
     private var running: Boolean = true
+    private val batchSize = Config.getDbBatchSize()
+    private val batchDelay = Config.getDbBatchDelay()
 
     private fun getConn(): Connection = mariaInstance.ds.connection
 
 
-    override fun recordMessage(message: LoggableMessage) {
-        queue.addLast(message)
-    }
-
     override fun run() {
         log.info("Started ${this.javaClass}")
 
-        while (SharedState.getInstance().isBotStillRunning && !Thread.currentThread().isInterrupted && running) {
-            val message: LoggableMessage = queue.pollFirst(1, TimeUnit.SECONDS) ?: continue
-
-            if (!logMessage(message)) {
-                queue.addFirst(message) // add it back if the insert failed.
-
-                if (queue.size > 10000) {
-                    log.error("Queue has reached high capacity ${queue.size}")
+        // messages that failed to insert stay in the batch and are retried before anything newer,
+        // the spool is only committed once the whole batch is written.
+        val batch = ArrayList<LoggableMessage>(batchSize)
+        try {
+            while (SharedState.getInstance().isBotStillRunning && !Thread.currentThread().isInterrupted && running) {
+                try {
+                    stats.flushIfDue()
+                    if (batch.isEmpty() && !spool.poll(batch, batchSize, batchDelay)) {
+                        continue
+                    }
+
+                    if (insertBatch(batch)) {
+                        spool.commit()
+                        rowFailures.clear()
+                        health.succeeded()
+                    } else {
+                        Thread.sleep(health.failed().toMillis())
+                    }
+                } catch (e: InterruptedException) {
+                    throw e
+                } catch (e: Exception) {
+                    // the thread must not die on an unexpected error, the spool would grow until it is dropped.
+                    log.error("Unexpected maria sink error", e)
+                    Thread.sleep(health.failed().toMillis())
                 }
-
-                lastFailed = true
-            } else {
-                lastFailed = false
             }
-
-            if (lastFailed) {
-                Thread.sleep(500)
+        } catch (e: InterruptedException) {
+            // shut down while waiting to retry, the batch is read from the spool next time.
+            Thread.currentThread().interrupt()
+        } finally {
+            // cleared until the stats are flushed so the interrupt can't cut the flush short.
+            val interrupted = Thread.interrupted()
+            stats.flush()
+            if (interrupted) {
+                Thread.currentThread().interrupt()
             }
         }
 
         log.info("Shut down ${this.javaClass}")
     }
 
-    private fun logMessage(message: LoggableMessage): Boolean {
+    /**
+     * Inserts the messages in one transaction. If that fails they are inserted one at a time so a
+     * row that can't be inserted is moved to the dead letters instead of blocking the rest. Inserted
+     * and dead lettered messages are removed from the batch.
+     *
+     * @return true if nothing is left to retry.
+     */
+    private fun insertBatch(batch: MutableList<LoggableMessage>): Boolean {
+        val start = System.nanoTime()
         try {
             getConn().use { conn ->
-                conn.prepareStatement(
-                    "INSERT INTO chat_stats.messages(time, username, userid, message, online_status, subscribed, full, uuid) VALUES (?,?,?,?,?,?,?,?)"
-                ).use { stmt ->
-                    stmt.setTimestamp(1, message.timestamp)
-                    stmt.setString(2, message.sender)
-                    stmt.setString(3, message.uid)
-                    stmt.setString(4, message.stringMessage)
-                    stmt.setBoolean(5, SharedState.getInstance().online.get())
-                    stmt.setBoolean(6, message.isSubscribed)
-                    stmt.setString(7, message.fullMsg)
-                    stmt.setString(8, message.uuid)
-                    stmt.executeUpdate()
+                conn.autoCommit = false
+                try {
+                    val ids = insert(conn, batch)
+                    conn.commit()
+                    logged(batch, ids)
+                    Metrics.DB_BATCH_ROWS.inc("maria", batch.size.toLong())
+                    Metrics.DB_COMMIT_TIME.inc("maria", (System.nanoTime() - start) / 1_000_000)
+                    batch.clear()
                     return true
+                } catch (e: SQLException) {
+                    warnSql(e)
+                    conn.rollback()
+                } finally {
+                    conn.autoCommit = true
                 }
+                return insertEach(conn, batch)
             }
         } catch (e: SQLException) {
             warnSql(e)
@@ -74,6 +105,63 @@ class Maria : Database, Runnable {
         return false
     }
 
+    private fun insertEach(conn: Connection, batch: MutableList<LoggableMessage>): Boolean {
+        val iterator = batch.iterator()
+        while (iterator.hasNext()) {
+            val message = iterator.next()
+            try {
+                logged(listOf(message), insert(conn, listOf(message)))
+                Metrics.DB_BATCH_ROWS.inc("maria", 1L)
+            } catch (e: SQLException) {
+                if (!rowFailures.failed(conn, message, e)) {
+                    warnSql(e)
+                    return false
+                }
+            }
+            iterator.remove()
+        }
+        return true
+    }
+
+    /**
+     * @return the generated ids of the inserted rows in order.
+     */
+    private fun insert(conn: Connection, messages: List<LoggableMessage>): List<Long> {
+        conn.prepareStatement(
+            "INSERT INTO chat_stats.messages(time, username, userid, message, online_status, subscribed, full, uuid) VALUES (?,?,?,?,?,?,?,?)",
+            Statement.RETURN_GENERATED_KEYS
+        ).use { stmt ->
+            val online = SharedState.getInstance().online.get()
+            for (message in messages) {
+                stmt.setTimestamp(1, message.timestamp)
+                stmt.setString(2, message.sender)
+                stmt.setString(3, message.uid)
+                stmt.setString(4, message.stringMessage)
+                stmt.setBoolean(5, online)
+                stmt.setBoolean(6, message.isSubscribed)
+                stmt.setString(7, message.fullMsg)
+                stmt.setString(8, message.uuid)
+                stmt.addBatch()
+            }
+            stmt.executeBatch()
+            val ids = ArrayList<Long>(messages.size)
+            stmt.generatedKeys.use { keys ->
+                while (keys.next()) {
+                    ids.add(keys.getLong(1))
+                }
+            }
+            return ids
+        }
+    }
+
+    private fun logged(messages: List<LoggableMessage>, ids: List<Long>) {
+        if (ids.size != messages.size) {
+            log.warn("Got {} ids for {} inserted messages, user stats are not updated for them.", ids.size, messages.size)
+            return
+        }
+        messages.forEachIndexed { i, message -> stats.messageLogged(message.sender, ids[i], message.timestamp) }
+    }
+
     override fun recordWhisper(message: LoggableMessage) {
         try {
             getConn().use { conn ->
@@ -121,6 +209,7 @@ class Maria : Database, Runnable {
                     stmt.setString(1, username)
                     stmt.setInt(2, length)
                     stmt.executeQuery()
+                    stats.timeoutAdded(username, length)
                     log.info("Added {} with a timeout of {}s to db.", username, length)
                 }
             }
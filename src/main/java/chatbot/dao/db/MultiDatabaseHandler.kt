@@ -1,23 +1,72 @@
 package chatbot.dao.db
 
+import chatbot.Metrics
 import chatbot.message.LoggableMessage
 import chatbot.message.TimeoutMessage
+import chatbot.singleton.Config
+import chatbot.utils.LogSpool
+import chatbot.utils.log
+import java.io.IOException
+import java.time.Duration
 import java.util.concurrent.ExecutorService
 import java.util.concurrent.Executors
 import java.util.concurrent.TimeUnit
 
-class MultiDatabaseHandler(private vararg val loggers: Database) : Database {
+/**
+ * Messages are appended to the spool that the sinks read from, everything else is passed to each
+ * sink directly. The spool's size and each sink's lag behind it and circuit breaker state are sent
+ * to metrics.
+ */
+class MultiDatabaseHandler(private val spool: LogSpool, private vararg val loggers: Database) : Database {
     private val executor: ExecutorService = Executors.newThreadPerTaskExecutor(Executors.defaultThreadFactory())
 
+    @Volatile
+    private var running: Boolean = true
+
     init {
         loggers.forEach {
             if (it is Runnable) {
                 executor.submit(it)
             }
         }
+        executor.submit(::syncSpool)
+    }
+
+    private fun syncSpool() {
+        val interval = Config.getSpoolSyncInterval().toMillis()
+        var reported = System.nanoTime()
+        while (running) {
+            Thread.sleep(interval)
+            try {
+                spool.sync()
+            } catch (e: IOException) {
+                log.error("Could not sync the spool: {}", e.message)
+            }
+            if (System.nanoTime() - reported >= METRICS_INTERVAL.toNanos()) {
+                reportHealth()
+                reported = System.nanoTime()
+            }
+        }
+    }
+
+    private fun reportHealth() {
+        Metrics.SPOOL_BYTES.inc(null, spool.sizeBytes())
+        spool.lagBytes().forEach { (sink, lag) -> Metrics.SINK_LAG_BYTES.inc(sink, lag) }
+        for (logger in loggers) {
+            val health = logger.health ?: continue
+            Metrics.SINK_BREAKER_STATE.inc(health.name, health.state.ordinal.toLong())
+        }
     }
 
-    override fun recordMessage(message: LoggableMessage) = loggers.forEach { it.recordMessage(message) }
+    override fun recordMessage(message: LoggableMessage) {
+        try {
+            spool.append(message)
+        } catch (e: IOException) {
+            log.error("Could not spool message, it is lost: {} {}", message.fullMsg, e.message)
+            Metrics.LOST_MESSAGE_COUNTER.inc("spool")
+        }
+        loggers.forEach { it.recordMessage(message) }
+    }
 
     override fun recordWhisper(message: LoggableMessage) = loggers.forEach { it.recordWhisper(message) }
 
@@ -29,7 +78,17 @@ class MultiDatabaseHandler(private vararg val loggers: Database) : Database {
 
     fun destroy() {
         this.shutdown()
+        running = false
         executor.shutdown()
-        executor.awaitTermination(5, TimeUnit.SECONDS)
+        if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+            // a sink waiting to retry, what it didn't commit is read from the spool next time.
+            executor.shutdownNow()
+            executor.awaitTermination(5, TimeUnit.SECONDS)
+        }
+        spool.close()
+    }
+
+    companion object {
+        private val METRICS_INTERVAL = Duration.ofSeconds(10)
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,134 @@
+package chatbot.dao.db;
+
+import chatbot.enums.Command;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-user command permissions kept in memory. Loaded from the database as a whole and written
+ * through to it when changed, so checking a permission doesn't need a database round trip.
+ */
+public class PermissionStore {
+
+    private final static Logger log = LogManager.getLogger(PermissionStore.class);
+
+    static {
+        if (Command.values().length > Long.SIZE) {
+            throw new IllegalStateException("Permissions only fit %d commands.".formatted(Long.SIZE));
+        }
+    }
+
+    private final DatabaseHandler databaseHandler;
+    private volatile ConcurrentHashMap<String, Grants> grants = new ConcurrentHashMap<>();
+
+    /**
+     * Permissions of a single user as bits by Command ordinal.
+     *
+     * @param specified commands the user has a permission set for.
+     * @param allowed   which of the specified commands are allowed.
+     */
+    record Grants(long specified, long allowed) {
+
+        static final Grants NONE = new Grants(0, 0);
+
+        /**
+         * Names that are not commands are dropped.
+         */
+        static Grants of(Map<String, Boolean> permissions) {
+            Grants grants = NONE;
+            for (Map.Entry<String, Boolean> permission : permissions.entrySet()) {
+                Command command = commandOf(permission.getKey());
+                if (command == null || permission.getValue() == null) {
+                    log.warn("Ignoring permission {}.", permission);
+                    continue;
+                }
+                grants = grants.with(command, permission.getValue());
+            }
+            return grants;
+        }
+
+        /**
+         * @return whether the command is allowed or null if the user has no permission for it.
+         */
+        Boolean get(Command command) {
+            long bit = 1L << command.ordinal();
+            if ((specified & bit) == 0) {
+                return null;
+            }
+            return (allowed & bit) != 0;
+        }
+
+        Grants with(Command command, boolean enable) {
+            long bit = 1L << command.ordinal();
+            return new Grants(specified | bit, enable ? allowed | bit : allowed & ~bit);
+        }
+
+        /**
+         * @return the permissions in the form they are stored in the database.
+         */
+        Map<String, Boolean> toMap() {
+            Map<String, Boolean> map = new HashMap<>();
+            for (Command command : Command.values()) {
+                Boolean allowed = get(command);
+                if (allowed != null) {
+                    map.put(command.name().toLowerCase(Locale.ROOT), allowed);
+                }
+            }
+            return map;
+        }
+    }
+
+    public PermissionStore(DatabaseHandler databaseHandler) {
+        this.databaseHandler = databaseHandler;
+    }
+
+    /**
+     * Replaces everything in the store with the permissions in the database.
+     */
+    public void load() {
+        ConcurrentHashMap<String, Grants> loaded = new ConcurrentHashMap<>();
+        databaseHandler.getPermissions().forEach((user, permissions) ->
+                loaded.put(user.toLowerCase(Locale.ROOT), Grants.of(permissions)));
+        this.grants = loaded;
+        log.info("Permissions initialized. {} users with permissions.", loaded.size());
+    }
+
+    /**
+     * @return whether the user is allowed to use the command, or null if the user has no permission
+     * set for it.
+     */
+    public Boolean get(String user, Command command) {
+        return grants.getOrDefault(user.toLowerCase(Locale.ROOT), Grants.NONE).get(command);
+    }
+
+    /**
+     * Stores the permission in the database first and only keeps it in memory if that worked.
+     *
+     * @return false if the database write failed, nothing is changed then.
+     */
+    public synchronized boolean set(String user, Command command, boolean enable) {
+        String key = user.toLowerCase(Locale.ROOT);
+        Grants updated = grants.getOrDefault(key, Grants.NONE).with(command, enable);
+        if (!databaseHandler.setPermissions(user, updated.toMap())) {
+            return false;
+        }
+        grants.put(key, updated);
+        return true;
+    }
+
+    /**
+     * @return the command with the name or null if there is none.
+     */
+    public static Command commandOf(String name) {
+        try {
+            return Command.valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -1,78 +1,109 @@
 package chatbot.dao.db
 
+import chatbot.Metrics
 import chatbot.message.LoggableMessage
 import chatbot.message.TimeoutMessage
+import chatbot.singleton.Config
 import chatbot.singleton.SharedState
+import chatbot.utils.LogSpool
 import chatbot.utils.log
 import chatbot.utils.warnSql
 
+import org.postgresql.PGConnection
+import java.io.StringReader
 import java.sql.Connection
 import java.sql.SQLException
-import java.util.concurrent.LinkedBlockingDeque
-import java.util.concurrent.TimeUnit
 
 
-private val queue: LinkedBlockingDeque<LoggableMessage> = LinkedBlockingDeque()
-
-class Postgres : Database, Runnable {
-    private var lastFailed: Boolean = false
+class Postgres(private val spool: LogSpool.Cursor, private val deadLetters: DeadLetters) : Database, Runnable {
+    override val health = SinkHealth("postgres")
+    private val rowFailures = RowFailures("postgres", deadLetters)
     private var running: Boolean = true
+    private val batchSize = Config.getDbBatchSize()
+    private val batchDelay = Config.getDbBatchDelay()
 
     private fun getConn(): Connection = postgresInstance.ds.connection
 
-    override fun recordMessage(message: LoggableMessage) {
-        queue.addLast(message)
-    }
-
     override fun run() {
         log.info("Started ${this.javaClass}")
 
-        while (SharedState.getInstance().isBotStillRunning && !Thread.currentThread().isInterrupted && running) {
-            val message: LoggableMessage = queue.pollFirst(1, TimeUnit.SECONDS) ?: continue
-
-            if (!logMessage(message)) {
-                queue.addFirst(message) // add it back if the insert failed.
+        // messages that failed to insert stay in the batch and are retried before anything newer,
+        // the spool is only committed once the whole batch is written.
+        val batch = ArrayList<LoggableMessage>(batchSize)
+        try {
+            while (SharedState.getInstance().isBotStillRunning && !Thread.currentThread().isInterrupted && running) {
+                try {
+                    if (batch.isEmpty() && !spool.poll(batch, batchSize, batchDelay)) {
+                        continue
+                    }
 
-                if (queue.size > 10000) {
-                    log.error("Queue has reached high capacity ${queue.size}")
+                    deadLetterInvalidUids(batch)
+                    if (batch.isEmpty() || insertBatch(batch)) {
+                        spool.commit()
+                        rowFailures.clear()
+                        health.succeeded()
+                    } else {
+                        Thread.sleep(health.failed().toMillis())
+                    }
+                } catch (e: InterruptedException) {
+                    throw e
+                } catch (e: Exception) {
+                    log.error("Unexpected postgres sink error", e)
+                    Thread.sleep(health.failed().toMillis())
                 }
-                lastFailed = true
-            } else {
-                lastFailed = false
-            }
-
-            if (lastFailed) {
-                Thread.sleep(500)
             }
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
         }
 
         log.info("Shut down ${this.javaClass}")
     }
 
-    private fun logMessage(message: LoggableMessage): Boolean {
+    /**
+     * The user id column is an integer, a message without a numeric user id can never be written.
+     */
+    private fun deadLetterInvalidUids(batch: MutableList<LoggableMessage>) {
+        batch.removeIf { message ->
+            if (message.uid?.toIntOrNull() != null) {
+                return@removeIf false
+            }
+            deadLetters.add("postgres", message, "invalid user id ${message.uid}")
+            true
+        }
+    }
+
+    /**
+     * Writes the messages and their full lines with COPY in one transaction. If COPY fails the same
+     * transaction is tried with batched inserts, and if that fails too the messages are inserted
+     * one at a time so a message that can't be inserted is moved to the dead letters instead of
+     * blocking the rest. Inserted and dead lettered messages are removed from the batch.
+     *
+     * @return true if nothing is left to retry.
+     */
+    private fun insertBatch(batch: MutableList<LoggableMessage>): Boolean {
+        val start = System.nanoTime()
+        val online = SharedState.getInstance().online.get()
         try {
             getConn().use { conn ->
-                conn.prepareStatement(
-                    "INSERT INTO chat_logs.logs.messages(time, username, userid, message, online_status, subscribed, uuid) VALUES (?,?,?,?,?,?,?)"
-                ).use { stmt ->
-                    stmt.setTimestamp(1, message.timestamp)
-                    stmt.setString(2, message.sender)
-                    stmt.setInt(3, message.uid.toInt())
-                    stmt.setString(4, message.stringMessage)
-                    stmt.setBoolean(5, SharedState.getInstance().online.get())
-                    stmt.setBoolean(6, message.isSubscribed)
-                    stmt.setString(7, message.uuid)
-                    stmt.executeUpdate()
-                }
-
-                conn.prepareStatement("INSERT INTO chat_logs.logs.full_messages(uuid, full_message) values (?,?)")
-                    .use { stmt ->
-                        stmt.setString(1, message.uuid)
-                        stmt.setString(2, message.fullMsg)
-                        stmt.executeUpdate()
+                conn.autoCommit = false
+                try {
+                    for (write in listOf(::copy, ::insert)) {
+                        try {
+                            write(conn, batch, online)
+                            conn.commit()
+                            Metrics.DB_BATCH_ROWS.inc("postgres", batch.size.toLong())
+                            Metrics.DB_COMMIT_TIME.inc("postgres", (System.nanoTime() - start) / 1_000_000)
+                            batch.clear()
+                            return true
+                        } catch (e: SQLException) {
+                            warnSql(e)
+                            conn.rollback()
+                        }
                     }
-
-                return true
+                } finally {
+                    conn.autoCommit = true
+                }
+                return insertEach(conn, batch, online)
             }
         } catch (e: SQLException) {
             warnSql(e)
@@ -80,6 +111,105 @@ class Postgres : Database, Runnable {
         return false
     }
 
+    private fun insertEach(conn: Connection, batch: MutableList<LoggableMessage>, online: Boolean): Boolean {
+        val iterator = batch.iterator()
+        while (iterator.hasNext()) {
+            val message = iterator.next()
+            try {
+                conn.autoCommit = false
+                try {
+                    insert(conn, listOf(message), online)
+                    conn.commit()
+                } catch (e: SQLException) {
+                    conn.rollback()
+                    throw e
+                } finally {
+                    conn.autoCommit = true
+                }
+                Metrics.DB_BATCH_ROWS.inc("postgres", 1L)
+            } catch (e: SQLException) {
+                if (!rowFailures.failed(conn, message, e)) {
+                    warnSql(e)
+                    return false
+                }
+            }
+            iterator.remove()
+        }
+        return true
+    }
+
+    private fun copy(conn: Connection, messages: List<LoggableMessage>, online: Boolean) {
+        val copyManager = conn.unwrap(PGConnection::class.java).copyAPI
+        val rows = StringBuilder(messages.size * 128)
+        val fullRows = StringBuilder(messages.size * 512)
+        for (message in messages) {
+            val uuid = message.uuid
+            // ISO-8601 in UTC with a Z, not the zoneless Timestamp.toString().
+            rows.append(message.instant).append(',')
+            csv(rows, message.sender).append(',')
+            csv(rows, message.uid).append(',')
+            csv(rows, message.stringMessage).append(',')
+            rows.append(online).append(',')
+            rows.append(message.isSubscribed).append(',')
+            csv(rows, uuid).append('\n')
+            csv(fullRows, uuid).append(',')
+            csv(fullRows, message.fullMsg).append('\n')
+        }
+        copyManager.copyIn(
+            "COPY chat_logs.logs.messages(time, username, userid, message, online_status, subscribed, uuid) FROM STDIN WITH (FORMAT csv)",
+            StringReader(rows.toString())
+        )
+        copyManager.copyIn(
+            "COPY chat_logs.logs.full_messages(uuid, full_message) FROM STDIN WITH (FORMAT csv)",
+            StringReader(fullRows.toString())
+        )
+    }
+
+    /**
+     * Quotes the value for CSV, null is written as an empty unquoted value which COPY reads as null.
+     */
+    private fun csv(sb: StringBuilder, value: String?): StringBuilder {
+        if (value == null) {
+            return sb
+        }
+        sb.append('"')
+        for (c in value) {
+            if (c == '"') {
+                sb.append('"')
+            }
+            sb.append(c)
+        }
+        return sb.append('"')
+    }
+
+    private fun insert(conn: Connection, messages: List<LoggableMessage>, online: Boolean) {
+        conn.prepareStatement(
+            "INSERT INTO chat_logs.logs.messages(time, username, userid, message, online_status, subscribed, uuid) VALUES (?,?,?,?,?,?,?)"
+        ).use { stmt ->
+            for (message in messages) {
+                stmt.setTimestamp(1, message.timestamp)
+                stmt.setString(2, message.sender)
+                stmt.setInt(3, message.uid.toInt())
+                stmt.setString(4, message.stringMessage)
+                stmt.setBoolean(5, online)
+                stmt.setBoolean(6, message.isSubscribed)
+                stmt.setString(7, message.uuid)
+                stmt.addBatch()
+            }
+            stmt.executeBatch()
+        }
+
+        conn.prepareStatement("INSERT INTO chat_logs.logs.full_messages(uuid, full_message) values (?,?)")
+            .use { stmt ->
+                for (message in messages) {
+                    stmt.setString(1, message.uuid)
+                    stmt.setString(2, message.fullMsg)
+                    stmt.addBatch()
+                }
+                stmt.executeBatch()
+            }
+    }
+
     override fun shutdown() {
         running = false
     }
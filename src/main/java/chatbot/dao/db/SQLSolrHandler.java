@@ -1,11 +1,15 @@
 package chatbot.dao.db;
 
+import chatbot.dao.db.SearchCache.Occurrence;
 import chatbot.singleton.Config;
 import chatbot.singleton.SharedState;
 import chatbot.utils.Utils;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.type.MapType;
 import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.apache.commons.dbcp2.BasicDataSource;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -13,7 +17,6 @@ import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.BaseHttpSolrClient;
-import org.apache.solr.client.solrj.impl.HttpJdkSolrClient;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
@@ -22,15 +25,19 @@ import javax.annotation.Nonnull;
 import java.io.IOException;
 import java.sql.*;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.Date;
 import java.util.*;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
 
 import static chatbot.dao.db.DatabaseKt.getMariaInstance;
+import static chatbot.dao.db.DatabaseKt.getSolrInstance;
 import static chatbot.enums.Response.INTERNAL_ERROR;
+import static chatbot.enums.Response.NO_MESSAGES;
 import static chatbot.enums.Response.TIMEOUT;
 
 public class SQLSolrHandler implements DatabaseHandler {
@@ -38,52 +45,96 @@ public class SQLSolrHandler implements DatabaseHandler {
     private final static Logger log = LogManager.getLogger(SQLSolrHandler.class);
     private final SharedState state = SharedState.getInstance();
     private final BasicDataSource source = getMariaInstance().getDs();
+    private final SearchCache searchCache;
+    private final KnownUserIndex knownUsers;
+    private final SolrClient solr;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Cache<String, Optional<UserStatsRow>> userStatsCache = CacheBuilder.newBuilder()
+            .maximumSize(Config.getUserStatsCacheSize())
+            .expireAfterWrite(Duration.ofSeconds(5))
+            .build();
     private final String EXCLUDED = " AND -message:\"!rs\" AND -message:\"!searchuser\" AND -message:\"!search\" AND -message:\"!rq\" AND -message:\"!chain\"";
 
-    public SQLSolrHandler() {
+    public SQLSolrHandler(SearchCache searchCache, KnownUserIndex knownUsers) {
+        this(searchCache, knownUsers, getSolrInstance().getClient());
     }
 
-    private Connection getConn() throws SQLException {
-        return source.getConnection();
+    /**
+     * @param solr client for every solr query, shared between threads.
+     */
+    public SQLSolrHandler(SearchCache searchCache, KnownUserIndex knownUsers, SolrClient solr) {
+        this.searchCache = searchCache;
+        this.knownUsers = knownUsers;
+        this.solr = solr;
     }
 
-    private SolrClient getSolrClient() {
-        return new HttpJdkSolrClient.Builder(Config.getSolrCredentials())
-                .withConnectionTimeout(5, TimeUnit.SECONDS)
-                .withRequestTimeout(7, TimeUnit.SECONDS)
-                .build();
+    private Connection getConn() throws SQLException {
+        return source.getConnection();
     }
 
     @Override
     public int getMessageCount(String username) {
-        try (SolrClient solr = getSolrClient()) {
+        Optional<UserStatsRow> stats = getUserStats(username);
+        if (stats.isPresent() && stats.get().messageCount() > 0) {
+            return (int) stats.get().messageCount();
+        }
+        return (int) searchCache.messageCount(username, () -> count("username:" + username)).orElse(0);
+    }
+
+    /**
+     * @return number of documents matching the query or empty if the query failed.
+     */
+    private OptionalLong count(String q) {
+        try {
             SolrQuery query = new SolrQuery();
-            query.set("q", "username:" + username);
+            query.set("q", q);
             query.set("rows", 1);
             log.debug(query.getQuery());
             QueryResponse response = solr.query(query);
-            return (int) response.getResults().getNumFound();
+            return OptionalLong.of(response.getResults().getNumFound());
 
         } catch (IOException | BaseHttpSolrClient.RemoteSolrException | SolrServerException e) {
             log.error(e.getMessage());
-            return 0;
+            return OptionalLong.empty();
         }
     }
 
     @Override
     public boolean userHasAnyMessages(String username) {
+        if (knownUsers.contains(username)) {
+            return true;
+        }
+        // not in the index yet or a stale snapshot, the database has the final say.
         try (Connection conn = getConn();
              PreparedStatement stmt = conn.prepareStatement("SELECT id from chat_stats.messages where username = ? LIMIT 1"))
         {
             stmt.setString(1, username);
             ResultSet rs = stmt.executeQuery();
-            return rs.next();
+            if (rs.next()) {
+                knownUsers.add(username);
+                return true;
+            }
         } catch (SQLException e) {
             log.error("SQLException: {}, VendorError: {}", e.getMessage(), e.getErrorCode());
         }
         return false;
     }
 
+    @Override
+    public void forEachUsername(Consumer<String> consumer) {
+        try (Connection conn = getConn();
+             PreparedStatement stmt = conn.prepareStatement("SELECT DISTINCT username FROM chat_stats.names_uids"))
+        {
+            stmt.setFetchSize(10_000);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                consumer.accept(rs.getString("username"));
+            }
+        } catch (SQLException e) {
+            log.error("SQLException: {}, VendorError: {}", e.getMessage(), e.getErrorCode());
+        }
+    }
+
     @Override
     public List<String> getModList() {
         List<String> modList = new ArrayList<>();
@@ -125,6 +176,10 @@ public class SQLSolrHandler implements DatabaseHandler {
 
     @Override
     public int getTimeoutAmount(String username) {
+        Optional<UserStatsRow> stats = getUserStats(username);
+        if (stats.isPresent()) {
+            return (int) stats.get().timeoutSeconds();
+        }
         try (Connection conn = getConn();
              PreparedStatement stmt = conn.prepareStatement("call chat_stats.sp_get_usernam(?)"))
         {
@@ -160,9 +215,28 @@ public class SQLSolrHandler implements DatabaseHandler {
 
     @Override
     public Optional<String> firstOccurrence(String msg) {
+        Optional<Occurrence> result = searchCache.firstOccurrence(msg, () -> queryFirstOccurrence(msg));
+        if (result == null) {
+            return Optional.of(INTERNAL_ERROR.toString());
+        }
+        return result.map(occurrence -> {
+            String msgName = occurrence.username();
+            // checked on every answer, a cached occurrence outlives the user opting out.
+            if (state.disabledUsers.stream().anyMatch(msgName::equalsIgnoreCase)) {
+                msgName = "<redacted>";
+            }
+            return String.format("first occurrence: %s %s: %s", formatDate(occurrence.time()), msgName,
+                    occurrence.message());
+        });
+    }
+
+    /**
+     * @return the first occurrence, empty if there is none or null if the query failed.
+     */
+    private Optional<Occurrence> queryFirstOccurrence(String msg) {
         String phrase = Utils.getSolrPattern(msg);
 
-        try (SolrClient solr = getSolrClient()) {
+        try {
             SolrQuery query = new SolrQuery();
             query.set("q", phrase + " AND -message:\"!fs\" AND -message:\"!searchuser\" AND -message:\"!search\"");
             query.set("sort", "time asc");
@@ -173,19 +247,14 @@ public class SQLSolrHandler implements DatabaseHandler {
                 return Optional.empty();
             }
             SolrDocument result = response.getResults().getFirst();
-            String message = (String) result.getFirstValue("message");
-            String msgName = (String) result.getFirstValue("username");
-            if (state.disabledUsers.stream().anyMatch(msgName::equalsIgnoreCase)) {
-                msgName = "<redacted>";
-            }
-            Date date = (Date) result.getFirstValue("time");
-
-            return Optional.of(
-                    String.format("first occurrence: %s %s: %s", formatDate(date), msgName, message));
+            return Optional.of(new Occurrence(
+                    (String) result.getFirstValue("username"),
+                    (String) result.getFirstValue("message"),
+                    (Date) result.getFirstValue("time")));
 
         } catch (IOException | BaseHttpSolrClient.RemoteSolrException | SolrServerException e) {
             log.error(e.getMessage());
-            return Optional.of(INTERNAL_ERROR.toString());
+            return null;
         }
     }
 
@@ -198,18 +267,16 @@ public class SQLSolrHandler implements DatabaseHandler {
 
     @Override
     public String firstMessage(String username) {
-        try (Connection conn = getConn();
-             PreparedStatement stmt = conn.prepareStatement("call chat_stats.sp_get_first_message(?)"))
-        {
-            stmt.setString(1, username);
-            ResultSet rs = stmt.executeQuery();
-            rs.next();
-            String convertedTime = Utils.convertTime(Instant.now().minus(rs.getTimestamp("time",
-                            Calendar.getInstance(TimeZone.getTimeZone("UTC"))).getTime(),
-                    ChronoUnit.MILLIS).toEpochMilli() / 1000);
+        try {
+            Optional<TimedMessage> found = userMessage(username, UserStatsRow::firstId,
+                    "call chat_stats.sp_get_first_message(?)");
+            if (found.isEmpty()) {
+                return NO_MESSAGES.toString();
+            }
+            TimedMessage first = found.get();
             return String.format("first message %s ago was: %s",
-                    convertedTime,
-                    rs.getString("message"));
+                    ago(first.time()),
+                    first.message());
         } catch (SQLException e) {
 
             log.error("SQLException: {}, VendorError: {}", e.getMessage(), e.getErrorCode());
@@ -219,19 +286,17 @@ public class SQLSolrHandler implements DatabaseHandler {
 
     @Override
     public String lastMessage(String username) {
-        try (Connection conn = getConn();
-             PreparedStatement stmt = conn.prepareStatement("call chat_stats.sp_get_last_message(?)"))
-        {
-            stmt.setString(1, username);
-            ResultSet rs = stmt.executeQuery();
-            rs.next();
-            String convertedTime = Utils.convertTime(Instant.now().minus(rs.getTimestamp("time",
-                    Calendar.getInstance(TimeZone.getTimeZone("UTC"))).getTime(), ChronoUnit.MILLIS).toEpochMilli() / 1000);
-            String message = rs.getString("message");
+        try {
+            Optional<TimedMessage> found = userMessage(username, UserStatsRow::lastId,
+                    "call chat_stats.sp_get_last_message(?)");
+            if (found.isEmpty()) {
+                return NO_MESSAGES.toString();
+            }
+            TimedMessage last = found.get();
             return String.format("%s's last message %s ago was: %s",
                     username,
-                    convertedTime,
-                    message);
+                    ago(last.time()),
+                    last.message());
         } catch (SQLException e) {
             log.error("SQLException: {}, VendorError: {}", e.getMessage(), e.getErrorCode());
             return INTERNAL_ERROR.toString();
@@ -240,19 +305,22 @@ public class SQLSolrHandler implements DatabaseHandler {
 
     @Override
     public String lastSeen(String username) {
-        try (Connection conn = getConn();
-             PreparedStatement stmt = conn.prepareStatement("call chat_stats.sp_get_last_message(?)"))
-        {
-            stmt.setString(1, username);
-            ResultSet rs = stmt.executeQuery();
-            rs.next();
-            String convertedTime = Utils.convertTime((Instant.now().minus(rs.getTimestamp("time",
-                            Calendar.getInstance(TimeZone.getTimeZone("UTC"))).getTime(),
-                    ChronoUnit.MILLIS).toEpochMilli() / 1000));
-
+        try {
+            Optional<UserStatsRow> stats = getUserStats(username);
+            Timestamp time;
+            if (stats.isPresent() && stats.get().lastTime() != null) {
+                time = stats.get().lastTime();
+            } else {
+                Optional<TimedMessage> last = userMessage(username, UserStatsRow::lastId,
+                        "call chat_stats.sp_get_last_message(?)");
+                if (last.isEmpty()) {
+                    return NO_MESSAGES.toString();
+                }
+                time = last.get().time();
+            }
             return String.format("%s was last seen %s ago",
                     username,
-                    convertedTime);
+                    ago(time));
 
         } catch (SQLException e) {
             log.error("SQLException: {}, VendorError: {}", e.getMessage(), e.getErrorCode());
@@ -260,9 +328,93 @@ public class SQLSolrHandler implements DatabaseHandler {
         }
     }
 
+    private record TimedMessage(Timestamp time, String message) {
+    }
+
+    /**
+     * Row of chat_stats.user_stats. Ids are 0 for users that only have timeouts.
+     */
+    private record UserStatsRow(long firstId, Timestamp firstTime, long lastId, Timestamp lastTime,
+                                long messageCount, long timeoutSeconds) {
+    }
+
+    private static Calendar utc() {
+        return Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+    }
+
+    private static String ago(Timestamp time) {
+        return Utils.convertTime((Instant.now().toEpochMilli() - time.getTime()) / 1000);
+    }
+
+    /**
+     * @return the user's stats, cached briefly as the same chatters tend to be looked up repeatedly.
+     */
+    private Optional<UserStatsRow> getUserStats(String username) {
+        Optional<UserStatsRow> cached = userStatsCache.getIfPresent(username);
+        if (cached != null) {
+            return cached;
+        }
+        Optional<UserStatsRow> stats = Optional.empty();
+        try (Connection conn = getConn();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT first_id, first_time, last_id, last_time, message_count, timeout_seconds FROM chat_stats.user_stats WHERE username = ?"))
+        {
+            stmt.setString(1, username);
+            ResultSet rs = stmt.executeQuery();
+            if (rs.next()) {
+                stats = Optional.of(new UserStatsRow(
+                        rs.getLong("first_id"),
+                        rs.getTimestamp("first_time", utc()),
+                        rs.getLong("last_id"),
+                        rs.getTimestamp("last_time", utc()),
+                        rs.getLong("message_count"),
+                        rs.getLong("timeout_seconds")));
+            }
+        } catch (SQLException e) {
+            log.error("SQLException: {}, VendorError: {}", e.getMessage(), e.getErrorCode());
+            return Optional.empty();
+        }
+        userStatsCache.put(username, stats);
+        return stats;
+    }
+
+    /**
+     * Looks the message up by the id in the user's stats, or with the stored procedure scanning the
+     * user's messages if there are no stats for the user yet.
+     *
+     * @return empty if the user's messages are not in the database yet, the user can already be
+     * known from a message that is still waiting to be written.
+     */
+    private Optional<TimedMessage> userMessage(String username, ToLongFunction<UserStatsRow> id, String fallback)
+            throws SQLException
+    {
+        Optional<UserStatsRow> stats = getUserStats(username);
+        try (Connection conn = getConn()) {
+            if (stats.isPresent() && id.applyAsLong(stats.get()) > 0) {
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "SELECT time, message FROM chat_stats.messages WHERE id = ?"))
+                {
+                    stmt.setLong(1, id.applyAsLong(stats.get()));
+                    ResultSet rs = stmt.executeQuery();
+                    if (rs.next()) {
+                        return Optional.of(new TimedMessage(rs.getTimestamp("time", utc()), rs.getString("message")));
+                    }
+                }
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(fallback)) {
+                stmt.setString(1, username);
+                ResultSet rs = stmt.executeQuery();
+                if (!rs.next()) {
+                    return Optional.empty();
+                }
+                return Optional.of(new TimedMessage(rs.getTimestamp("time", utc()), rs.getString("message")));
+            }
+        }
+    }
+
     @Override
     public Optional<String> randomSearch(String username, String msg) {
-        try (SolrClient solr = getSolrClient()) {
+        try {
             SolrQuery query = new SolrQuery();
             String fullNameStr = state.getAltsSolrString(username);
             query.set("q", fullNameStr + " AND " + Utils.getSolrPattern(msg) + EXCLUDED);
@@ -294,7 +446,7 @@ public class SQLSolrHandler implements DatabaseHandler {
 
     @Override
     public Optional<String> randomQuote(String username, String year) {
-        try (SolrClient solr = getSolrClient()) {
+        try {
             SolrQuery query = new SolrQuery();
             String fullNameStr = state.getAltsSolrString(username);
             String additional = EXCLUDED;
@@ -336,42 +488,19 @@ public class SQLSolrHandler implements DatabaseHandler {
     }
 
     @Override
-    public long search(String msg) {
-        String phrase = Utils.getSolrPattern(msg);
-        try (SolrClient solr = getSolrClient()) {
-            SolrQuery query = new SolrQuery();
-            query.set("q", phrase + " AND -username:" + Config.getTwitchUsername());
-            query.set("rows", 1);
-            log.debug(query.getQuery());
-            QueryResponse response = solr.query(query);
-            SolrDocumentList result = response.getResults();
-            return result.getNumFound();
-
-        } catch (IOException | BaseHttpSolrClient.RemoteSolrException | SolrServerException e) {
-            log.error(e.getMessage());
-            return 0;
-        }
+    public OptionalLong search(String msg) {
+        return searchCache.search(msg,
+                () -> count(Utils.getSolrPattern(msg) + " AND -username:" + Config.getTwitchUsername()));
     }
 
     @Override
-    public long searchUser(String username, String msg) {
-        String phrase = Utils.getSolrPattern(msg);
-        try (SolrClient solr = getSolrClient()) {
-            SolrQuery query = new SolrQuery();
-            query.set("q", phrase + " AND username:" + username);
-            query.set("rows", 1);
-            log.debug(query.getQuery());
-            QueryResponse response = solr.query(query);
-            SolrDocumentList result = response.getResults();
-            return result.getNumFound();
-        } catch (IOException | SolrServerException | BaseHttpSolrClient.RemoteSolrException e) {
-            log.error(e.getMessage());
-            return 0;
-        }
+    public OptionalLong searchUser(String username, String msg) {
+        return searchCache.searchUser(username, msg,
+                () -> count(Utils.getSolrPattern(msg) + " AND username:" + username));
     }
 
     public long searchTotalWords(String word) {
-        try (SolrClient solr = getSolrClient()) {
+        try {
             SolrQuery query = new SolrQuery();
             query.set("fl", "*,ttf(message," + word + ")");
             query.set("rows", 1);
@@ -498,47 +627,46 @@ public class SQLSolrHandler implements DatabaseHandler {
     }
 
     @Override
-    public void setCommandPermissionUser(String user, String command, boolean enable) {
-        Map<String, Boolean> permissions = getPersonalPermissions(user);
-        permissions.put(command, enable);
+    public boolean setPermissions(String user, Map<String, Boolean> permissions) {
         try (Connection conn = getConn();
              PreparedStatement stmt = conn.prepareStatement(
                      "CALL chat_stats.sp_set_user_permissions(?,?);"))
         {
             stmt.setString(1, user);
-            stmt.setString(2, new ObjectMapper().writeValueAsString(permissions));
+            stmt.setString(2, mapper.writeValueAsString(permissions));
             stmt.execute();
+            return true;
 
         } catch (SQLException e) {
             log.error("SQLException: {}, VendorError: {}", e.getMessage(), e.getErrorCode());
         } catch (JsonProcessingException e) {
             log.error("Error processing map to json: {}", e.getMessage());
         }
+        return false;
     }
 
     @Nonnull
     @Override
-    public Map<String, Boolean> getPersonalPermissions(String user) {
-        Map<String, Boolean> permissionMap = new HashMap<>();
+    public Map<String, Map<String, Boolean>> getPermissions() {
+        Map<String, Map<String, Boolean>> permissionMaps = new HashMap<>();
+        MapType type = TypeFactory.defaultInstance().constructMapType(HashMap.class, String.class, Boolean.class);
         try (Connection conn = getConn();
              PreparedStatement stmt = conn.prepareStatement(
-                     "CALL chat_stats.sp_get_user_permissions(?);"))
+                     "SELECT username, permissions FROM chat_stats.users_with_permissions"))
         {
-            stmt.setString(1, user);
             ResultSet resultSet = stmt.executeQuery();
-            if (!resultSet.next()) {
-                return permissionMap;
+            while (resultSet.next()) {
+                String username = resultSet.getString("username");
+                try {
+                    permissionMaps.put(username, mapper.readValue(resultSet.getString("permissions"), type));
+                } catch (JsonProcessingException e) {
+                    log.error("Error processing json for {}: {}", username, e.getMessage());
+                }
             }
-            String permissions = resultSet.getString("permissions");
-            permissionMap = new ObjectMapper().readValue(permissions,
-                    TypeFactory.defaultInstance()
-                            .constructMapType(HashMap.class, String.class, Boolean.class));
         } catch (SQLException e) {
             log.error("SQLException: {}, VendorError: {}", e.getMessage(), e.getErrorCode());
-        } catch (JsonProcessingException e) {
-            log.error("Error processing json to string: {}", e.getMessage());
         }
-        return permissionMap;
+        return permissionMaps;
     }
 
 }
@@ -0,0 +1,346 @@
+package chatbot.dao.db;
+
+import chatbot.Metrics;
+import chatbot.message.LoggableMessage;
+import chatbot.utils.Utils;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Results of the Solr search commands, kept for a while since chat tends to repeat the same query
+ * many times in a row. Counts are kept up to date by matching every logged message against the
+ * cached queries instead of dropping them whenever something new is logged.
+ */
+public class SearchCache {
+
+    private final static Logger log = LogManager.getLogger(SearchCache.class);
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}*?]+");
+    /**
+     * Left out of the first occurrence query by {@link SQLSolrHandler}, so logging them must not
+     * drop a cached miss either.
+     */
+    private static final List<String> FIRST_OCCURRENCE_EXCLUDED = List.of("-!fs", "-!searchuser", "-!search");
+
+    enum Kind {
+        SEARCH,
+        SEARCH_USER,
+        FIRST_OCCURRENCE,
+        MESSAGE_COUNT,
+    }
+
+    private record Key(Kind kind, String pattern, String username) {
+    }
+
+    /**
+     * The oldest message matching a query, kept as it was found so that whatever depends on the
+     * user, like whether their name is shown, is decided each time it is answered.
+     */
+    public record Occurrence(String username, String message, Date time) {
+    }
+
+    private static final class Entry {
+        private final Key key;
+        private final MessagePattern pattern;
+        private final AtomicLong count = new AtomicLong();
+        private volatile Optional<Occurrence> firstOccurrence = Optional.empty();
+        /**
+         * Set when a message matching a query without a first occurrence is logged.
+         */
+        private volatile boolean stale;
+
+        private Entry(Key key, MessagePattern pattern) {
+            this.key = key;
+            this.pattern = pattern;
+        }
+    }
+
+    private final String botName;
+    private final Cache<Key, Entry> cache;
+    /**
+     * Cached queries by a word every matching message has to contain, so a logged message only has
+     * to be matched against the queries that share a word with it.
+     */
+    private final ConcurrentHashMap<String, Set<Entry>> byWord = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<Entry>> byUser = new ConcurrentHashMap<>();
+    /**
+     * Queries without a plain word to index them by, checked against every message.
+     */
+    private final Set<Entry> unindexed = ConcurrentHashMap.newKeySet();
+
+    public SearchCache(String botName, int maxEntries, Duration ttl) {
+        this.botName = botName;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttl)
+                .removalListener(this::removed)
+                .build();
+    }
+
+    /**
+     * @return number of messages matching the query from users other than the bot, empty if the
+     * query failed.
+     */
+    public OptionalLong search(String msg, Supplier<OptionalLong> loader) {
+        return count(new Key(Kind.SEARCH, Utils.getSolrPattern(msg), null), msg, loader);
+    }
+
+    /**
+     * @return number of messages from the user matching the query, empty if the query failed.
+     */
+    public OptionalLong searchUser(String username, String msg, Supplier<OptionalLong> loader) {
+        return count(new Key(Kind.SEARCH_USER, Utils.getSolrPattern(msg), username.toLowerCase(Locale.ROOT)), msg,
+                loader);
+    }
+
+    public OptionalLong messageCount(String username, Supplier<OptionalLong> loader) {
+        return count(new Key(Kind.MESSAGE_COUNT, null, username.toLowerCase(Locale.ROOT)), null, loader);
+    }
+
+    /**
+     * The first occurrence of a query can't change once there is one, a query that had none is
+     * dropped when a matching message is logged.
+     *
+     * @param loader returns null if the query failed, in which case nothing is cached.
+     * @return the first occurrence, empty if there is none or null if the query failed.
+     */
+    public Optional<Occurrence> firstOccurrence(String msg, Supplier<Optional<Occurrence>> loader) {
+        Key key = new Key(Kind.FIRST_OCCURRENCE, Utils.getSolrPattern(msg), null);
+        Entry entry = cache.getIfPresent(key);
+        if (entry != null) {
+            Metrics.SEARCH_CACHE_HIT_COUNTER.inc(key.kind().name());
+            return entry.firstOccurrence;
+        }
+        Metrics.SEARCH_CACHE_MISS_COUNTER.inc(key.kind().name());
+        List<String> words = new ArrayList<>(Utils.getWordList(msg));
+        words.addAll(FIRST_OCCURRENCE_EXCLUDED);
+        entry = new Entry(key, new MessagePattern(words));
+        index(entry);
+        Optional<Occurrence> result = loader.get();
+        if (result == null || (result.isEmpty() && entry.stale)) {
+            unindex(entry);
+            return result;
+        }
+        entry.firstOccurrence = result;
+        if (result.isPresent()) {
+            unindex(entry);
+        }
+        cache.put(key, entry);
+        return result;
+    }
+
+    private OptionalLong count(Key key, String msg, Supplier<OptionalLong> loader) {
+        Entry entry = cache.getIfPresent(key);
+        if (entry != null) {
+            Metrics.SEARCH_CACHE_HIT_COUNTER.inc(key.kind().name());
+            return OptionalLong.of(entry.count.get());
+        }
+        Metrics.SEARCH_CACHE_MISS_COUNTER.inc(key.kind().name());
+        // indexed before querying so messages logged while the query runs are not missed, at worst
+        // one logged right before the query is counted twice until the entry expires.
+        entry = new Entry(key, msg == null ? MessagePattern.NONE : new MessagePattern(Utils.getWordList(msg)));
+        index(entry);
+        OptionalLong result = loader.get();
+        if (result.isEmpty()) {
+            unindex(entry);
+            return result;
+        }
+        long count = entry.count.addAndGet(result.getAsLong());
+        cache.put(key, entry);
+        return OptionalLong.of(count);
+    }
+
+    /**
+     * Updates the cached results that the logged message matches.
+     */
+    public void messageLogged(LoggableMessage message) {
+        if (byUser.isEmpty() && byWord.isEmpty() && unindexed.isEmpty()) {
+            return;
+        }
+        String username = message.getSender().toLowerCase(Locale.ROOT);
+        List<String> words = tokenize(message.getStringMessage());
+
+        Set<Entry> userEntries = byUser.get(username);
+        if (userEntries != null) {
+            for (Entry entry : userEntries) {
+                update(entry, username, words);
+            }
+        }
+        for (String word : Set.copyOf(words)) {
+            Set<Entry> entries = byWord.get(word);
+            if (entries != null) {
+                for (Entry entry : entries) {
+                    update(entry, username, words);
+                }
+            }
+        }
+        for (Entry entry : unindexed) {
+            update(entry, username, words);
+        }
+    }
+
+    private void update(Entry entry, String username, List<String> words) {
+        Key key = entry.key;
+        switch (key.kind()) {
+            case SEARCH -> {
+                if (!username.equalsIgnoreCase(botName) && entry.pattern.matches(words)) {
+                    entry.count.incrementAndGet();
+                }
+            }
+            case SEARCH_USER -> {
+                if (username.equals(key.username()) && entry.pattern.matches(words)) {
+                    entry.count.incrementAndGet();
+                }
+            }
+            case MESSAGE_COUNT -> {
+                if (username.equals(key.username())) {
+                    entry.count.incrementAndGet();
+                }
+            }
+            case FIRST_OCCURRENCE -> {
+                if (entry.firstOccurrence.isEmpty() && entry.pattern.matches(words)) {
+                    entry.stale = true;
+                    cache.invalidate(key);
+                }
+            }
+        }
+    }
+
+    private void index(Entry entry) {
+        if (entry.key.kind() == Kind.SEARCH_USER || entry.key.kind() == Kind.MESSAGE_COUNT) {
+            byUser.computeIfAbsent(entry.key.username(), k -> ConcurrentHashMap.newKeySet()).add(entry);
+        } else if (entry.pattern.indexWord() != null) {
+            byWord.computeIfAbsent(entry.pattern.indexWord(), k -> ConcurrentHashMap.newKeySet()).add(entry);
+        } else {
+            unindexed.add(entry);
+        }
+    }
+
+    private void removed(RemovalNotification<Key, Entry> notification) {
+        Entry entry = notification.getValue();
+        if (entry == null) {
+            return;
+        }
+        log.trace("Search cache dropped {} ({})", entry.key, notification.getCause());
+        unindex(entry);
+    }
+
+    private void unindex(Entry entry) {
+        if (entry.key.kind() == Kind.SEARCH_USER || entry.key.kind() == Kind.MESSAGE_COUNT) {
+            remove(byUser, entry.key.username(), entry);
+        } else if (entry.pattern.indexWord() != null) {
+            remove(byWord, entry.pattern.indexWord(), entry);
+        } else {
+            unindexed.remove(entry);
+        }
+    }
+
+    private static void remove(ConcurrentHashMap<String, Set<Entry>> index, String key, Entry entry) {
+        index.computeIfPresent(key, (k, entries) -> {
+            entries.remove(entry);
+            return entries.isEmpty() ? null : entries;
+        });
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        for (String word : TOKEN_SEPARATOR.split(text.toLowerCase(Locale.ROOT))) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Matches messages the way the Solr query made by {@link Utils#getSolrPattern(String)} from the
+     * same words would, close enough for keeping counts: words are compared case-insensitively as
+     * whole words, quoted phrases have to appear in order, words starting with - must not appear and
+     * * and ? are wildcards within a word.
+     */
+    static final class MessagePattern {
+
+        static final MessagePattern NONE = new MessagePattern(List.of());
+
+        private final List<List<Pattern>> required = new ArrayList<>();
+        private final List<List<Pattern>> excluded = new ArrayList<>();
+        private final String indexWord;
+
+        MessagePattern(List<String> wordList) {
+            String indexWord = null;
+            for (String word : wordList) {
+                boolean negated = word.startsWith("-");
+                List<String> tokens = tokenize(negated ? word.replaceAll("-", "") : word);
+                if (tokens.isEmpty()) {
+                    continue;
+                }
+                List<Pattern> phrase = new ArrayList<>();
+                for (String token : tokens) {
+                    phrase.add(Pattern.compile(token.replace("?", ".").replace("*", ".*")));
+                    if (!negated && indexWord == null && token.indexOf('*') == -1 && token.indexOf('?') == -1) {
+                        indexWord = token;
+                    }
+                }
+                (negated ? excluded : required).add(phrase);
+            }
+            this.indexWord = indexWord;
+        }
+
+        /**
+         * @return a word every matching message contains, or null if there is none without
+         * wildcards.
+         */
+        String indexWord() {
+            return indexWord;
+        }
+
+        boolean matches(List<String> words) {
+            if (required.isEmpty()) {
+                return false;
+            }
+            for (List<Pattern> phrase : required) {
+                if (!contains(words, phrase)) {
+                    return false;
+                }
+            }
+            for (List<Pattern> phrase : excluded) {
+                if (contains(words, phrase)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean contains(List<String> words, List<Pattern> phrase) {
+            outer:
+            for (int start = 0; start + phrase.size() <= words.size(); start++) {
+                for (int i = 0; i < phrase.size(); i++) {
+                    if (!phrase.get(i).matcher(words.get(start + i)).matches()) {
+                        continue outer;
+                    }
+                }
+                return true;
+            }
+            return false;
+        }
+    }
+}
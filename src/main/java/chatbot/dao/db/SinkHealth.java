@@ -0,0 +1,93 @@
+package chatbot.dao.db;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Failure tracking of one database sink. After a failure the sink waits an exponentially growing,
+ * jittered delay before trying again. After {@link #THRESHOLD} failures in a row the breaker opens
+ * and the sink waits {@link #OPEN_FOR} before a single attempt, which closes it again if it
+ * succeeds.
+ */
+public class SinkHealth {
+
+    private final static Logger log = LogManager.getLogger(SinkHealth.class);
+
+    static final int THRESHOLD = 5;
+    static final Duration BASE_DELAY = Duration.ofMillis(500);
+    static final Duration MAX_DELAY = Duration.ofSeconds(30);
+    static final Duration OPEN_FOR = Duration.ofSeconds(60);
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        /**
+         * Open for long enough, the next attempt decides whether it closes.
+         */
+        HALF_OPEN,
+    }
+
+    private final String name;
+    private final DoubleSupplier random;
+    private final LongSupplier clock;
+    private int failures;
+    private long openUntil;
+    private boolean open;
+
+    public SinkHealth(String name) {
+        this(name, () -> ThreadLocalRandom.current().nextDouble(), System::nanoTime);
+    }
+
+    SinkHealth(String name, DoubleSupplier random, LongSupplier clock) {
+        this.name = name;
+        this.random = random;
+        this.clock = clock;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized void succeeded() {
+        if (open) {
+            log.info("{} is working again after {} failures, closed the circuit breaker.", name, failures);
+        }
+        failures = 0;
+        open = false;
+    }
+
+    /**
+     * @return how long to wait before trying again.
+     */
+    public synchronized Duration failed() {
+        failures++;
+        if (failures >= THRESHOLD) {
+            if (!open) {
+                log.error("{} failed {} times in a row, opened the circuit breaker for {}s.", name, failures,
+                        OPEN_FOR.toSeconds());
+            }
+            open = true;
+            openUntil = clock.getAsLong() + OPEN_FOR.toNanos();
+            return OPEN_FOR;
+        }
+        long delay = Math.min(MAX_DELAY.toNanos(), BASE_DELAY.toNanos() << (failures - 1));
+        // half fixed and half random so sinks that failed together don't all retry at once.
+        return Duration.ofNanos(delay / 2 + (long) (random.getAsDouble() * (delay / 2)));
+    }
+
+    public synchronized State getState() {
+        if (!open) {
+            return State.CLOSED;
+        }
+        return clock.getAsLong() < openUntil ? State.OPEN : State.HALF_OPEN;
+    }
+
+    public synchronized int getFailures() {
+        return failures;
+    }
+}
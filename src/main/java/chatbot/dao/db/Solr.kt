@@ -1,82 +1,93 @@
 package chatbot.dao.db
 
+import chatbot.Metrics
 import chatbot.message.LoggableMessage
 import chatbot.singleton.Config
 import chatbot.singleton.SharedState
+import chatbot.utils.LogSpool
 import chatbot.utils.log
 import org.apache.solr.client.solrj.SolrClient
 import org.apache.solr.client.solrj.SolrServerException
 import org.apache.solr.client.solrj.impl.BaseHttpSolrClient.RemoteSolrException
 import org.apache.solr.client.solrj.impl.HttpJdkSolrClient
-import org.apache.solr.common.SolrInputDocument
 import java.io.IOException
-import java.time.Instant
-import java.time.temporal.ChronoUnit
 import java.util.concurrent.Executors
-import java.util.concurrent.LinkedBlockingQueue
 import java.util.concurrent.TimeUnit
 
-private val queue: LinkedBlockingQueue<LoggableMessage> = LinkedBlockingQueue()
-private val commitBacklog: LinkedBlockingQueue<SolrInputDocument> = LinkedBlockingQueue()
-
-class Solr : Database, Runnable {
+class Solr(private val spool: LogSpool.Cursor, deadLetters: DeadLetters) : Database, Runnable {
     private var running: Boolean = true
-    private var lastCommit: Instant = Instant.now()
+    override val health = SinkHealth("solr")
+    private val batchSize = Config.getSolrBatchSize()
+    private val batchDelay = Config.getSolrBatchDelay()
 
     private val executor = Executors.newVirtualThreadPerTaskExecutor()
 
-    private fun getConn(): SolrClient = HttpJdkSolrClient.Builder(Config.getSolrCredentials())
+    private val client: SolrClient = HttpJdkSolrClient.Builder(Config.getSolrCredentials())
         .withConnectionTimeout(5, TimeUnit.SECONDS)
         .withRequestTimeout(10, TimeUnit.SECONDS)
         .withExecutor(executor)
         .build()
 
-
-    override fun recordMessage(message: LoggableMessage) {
-        queue.add(message)
-    }
+    private val indexer = SolrIndexer(client, deadLetters)
 
     override fun run() {
         log.info("Started ${this.javaClass}")
 
-        while (SharedState.getInstance().isBotStillRunning && !Thread.currentThread().isInterrupted && running) {
-            queue.poll(1, TimeUnit.SECONDS)?.let {
-                val document = SolrInputDocument()
-                document.addField("id", it.uuid)
-                document.addField("time", it.instant.toString())
-                document.addField("username", it.sender)
-                document.addField("message", it.stringMessage)
-
-                commitBacklog.add(document)
-            }
-
-            // single inserts are not good for solr, need to do them in batches.
-            if (commitBacklog.isNotEmpty() && lastCommit.plus(10, ChronoUnit.SECONDS).isBefore(Instant.now())) {
+        // single inserts are not good for solr, a batch is sent once it is full or has waited for
+        // the batch delay. failed batches are retried before anything newer.
+        val batch = ArrayList<LoggableMessage>(batchSize)
+        try {
+            while (SharedState.getInstance().isBotStillRunning && !Thread.currentThread().isInterrupted && running) {
                 try {
-                    val conn = getConn()
-                    conn.use { solr ->
-                        var toAdd = ArrayList<SolrInputDocument>()
-                        toAdd.addAll(commitBacklog)
-                        var add = solr.add(toAdd, 1000)
-                        log.debug("Update took ${add.elapsedTime}ms, added ${toAdd.size}")
-                        commitBacklog.removeAll(toAdd)
+                    if (batch.isEmpty() && !spool.poll(batch, batchSize, batchDelay)) {
+                        continue
                     }
-                } catch (e: IOException) {
-                    log.warn("Solr error: ${e.message}")
-                } catch (e: SolrServerException) {
-                    log.warn("Solr error: ${e.message}")
-                } catch (e: RemoteSolrException) {
-                    log.warn("Solr error: ${e.message}")
-                } finally {
-                    lastCommit = Instant.now()
+
+                    if (index(batch)) {
+                        spool.commit()
+                        health.succeeded()
+                    } else {
+                        Thread.sleep(health.failed().toMillis())
+                    }
+                } catch (e: InterruptedException) {
+                    throw e
+                } catch (e: Exception) {
+                    log.error("Unexpected solr sink error", e)
+                    Thread.sleep(health.failed().toMillis())
                 }
             }
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+        } finally {
+            client.close()
+            executor.shutdown()
         }
-
         log.info("Shut down ${this.javaClass}")
     }
 
+    /**
+     * @return true if the batch was sent, it is cleared then.
+     */
+    private fun index(batch: MutableList<LoggableMessage>): Boolean {
+        val start = System.nanoTime()
+        try {
+            indexer.index(batch)
+            log.debug("Added {} messages to solr in {}ms", batch.size, (System.nanoTime() - start) / 1_000_000)
+            Metrics.DB_BATCH_ROWS.inc("solr", batch.size.toLong())
+            Metrics.DB_COMMIT_TIME.inc("solr", (System.nanoTime() - start) / 1_000_000)
+            batch.clear()
+            return true
+        } catch (e: IOException) {
+            log.warn("Solr error: ${e.message}")
+        } catch (e: SolrServerException) {
+            log.warn("Solr error: ${e.message}")
+        } catch (e: RemoteSolrException) {
+            log.warn("Solr error: ${e.message}")
+        }
+        return false
+    }
+
     override fun shutdown() {
         running = false
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,95 @@
+package chatbot.dao.db
+
+import chatbot.message.LoggableMessage
+import com.fasterxml.jackson.core.JsonFactory
+import com.fasterxml.jackson.core.StreamWriteFeature
+import org.apache.solr.client.solrj.SolrClient
+import org.apache.solr.client.solrj.SolrRequest
+import org.apache.solr.client.solrj.impl.BaseHttpSolrClient.RemoteSolrException
+import org.apache.solr.client.solrj.request.GenericSolrRequest
+import org.apache.solr.client.solrj.request.RequestWriter
+import org.apache.solr.common.params.ModifiableSolrParams
+import java.io.OutputStream
+
+private val json: JsonFactory = JsonFactory.builder().disable(StreamWriteFeature.AUTO_CLOSE_TARGET).build()
+
+/**
+ * Sends messages to Solr as JSON update requests that are written straight from the messages,
+ * split into chunks of about [maxChunkBytes]. A chunk Solr rejects as a bad request is sent again
+ * one message at a time so only the messages it can't index are moved to the dead letters.
+ */
+class SolrIndexer(
+    private val client: SolrClient,
+    private val deadLetters: DeadLetters,
+    private val maxChunkBytes: Int = MAX_CHUNK_BYTES
+) {
+
+    fun index(messages: List<LoggableMessage>) {
+        var from = 0
+        var size = 0
+        for (i in messages.indices) {
+            val estimate = estimateBytes(messages[i])
+            if (i > from && size + estimate > maxChunkBytes) {
+                send(messages.subList(from, i))
+                from = i
+                size = 0
+            }
+            size += estimate
+        }
+        if (from < messages.size) {
+            send(messages.subList(from, messages.size))
+        }
+    }
+
+    private fun send(chunk: List<LoggableMessage>) {
+        try {
+            client.request(updateRequest(chunk))
+        } catch (e: RemoteSolrException) {
+            if (e.code() != 400) {
+                throw e
+            }
+            if (chunk.size == 1) {
+                deadLetters.add("solr", chunk[0], e.message)
+                return
+            }
+            // adding a document again replaces it, so the ones that did get in don't matter.
+            chunk.forEach { send(listOf(it)) }
+        }
+    }
+
+    private fun updateRequest(chunk: List<LoggableMessage>): GenericSolrRequest {
+        val params = ModifiableSolrParams()
+        params.set("commitWithin", COMMIT_WITHIN_MS)
+        val request = GenericSolrRequest(SolrRequest.METHOD.POST, "/update", params)
+        request.setContentWriter(object : RequestWriter.ContentWriter {
+            override fun write(os: OutputStream) {
+                json.createGenerator(os).use { generator ->
+                    generator.writeStartArray()
+                    for (message in chunk) {
+                        generator.writeStartObject()
+                        generator.writeStringField("id", message.uuid)
+                        generator.writeStringField("time", message.instant.toString())
+                        generator.writeStringField("username", message.sender)
+                        generator.writeStringField("message", message.stringMessage)
+                        generator.writeEndObject()
+                    }
+                    generator.writeEndArray()
+                }
+            }
+
+            override fun getContentType() = "application/json"
+        })
+        return request
+    }
+
+    companion object {
+        const val MAX_CHUNK_BYTES = 1024 * 1024
+        private const val COMMIT_WITHIN_MS = 1000
+
+        /**
+         * Upper bound of the JSON written for the message, assuming 3 bytes for every character.
+         */
+        private fun estimateBytes(message: LoggableMessage): Int =
+            128 + 3 * ((message.sender?.length ?: 0) + (message.stringMessage?.length ?: 0))
+    }
+}
@@ -0,0 +1,171 @@
+package chatbot.dao.db
+
+import chatbot.utils.log
+import chatbot.utils.warnSql
+import java.sql.Connection
+import java.sql.SQLException
+import java.sql.Timestamp
+import java.sql.Types
+import java.time.Duration
+
+/**
+ * Keeps chat_stats.user_stats up to date. Changes are collected per user in memory and written as
+ * one batch every [flushInterval] or once [maxPending] users have changes, instead of a write per
+ * message.
+ *
+ * The counts are approximate: changes not flushed yet are lost if the bot crashes, and a batch the
+ * spool hands to Maria again after a crash is counted again.
+ */
+class UserStats(
+    private val flushInterval: Duration = Duration.ofSeconds(2),
+    private val maxPending: Int = 1000,
+    private val connection: () -> Connection = { mariaInstance.ds.connection },
+) {
+    private class Delta {
+        var firstId: Long = 0
+        var firstTime: Timestamp? = null
+        var lastId: Long = 0
+        var lastTime: Timestamp? = null
+        var count: Long = 0
+        var timeoutSeconds: Long = 0
+
+        fun message(id: Long, time: Timestamp) {
+            if (firstId == 0L || id < firstId) {
+                firstId = id
+                firstTime = time
+            }
+            if (id > lastId) {
+                lastId = id
+                lastTime = time
+            }
+            count++
+        }
+
+        fun merge(other: Delta) {
+            if (other.firstId != 0L && (firstId == 0L || other.firstId < firstId)) {
+                firstId = other.firstId
+                firstTime = other.firstTime
+            }
+            if (other.lastId > lastId) {
+                lastId = other.lastId
+                lastTime = other.lastTime
+            }
+            count += other.count
+            timeoutSeconds += other.timeoutSeconds
+        }
+    }
+
+    private var pending = HashMap<String, Delta>()
+    private var lastFlush = System.nanoTime()
+
+    @Synchronized
+    fun messageLogged(username: String, id: Long, time: Timestamp) {
+        pending.getOrPut(username) { Delta() }.message(id, time)
+    }
+
+    @Synchronized
+    fun timeoutAdded(username: String, seconds: Int) {
+        pending.getOrPut(username) { Delta() }.timeoutSeconds += seconds
+    }
+
+    fun flushIfDue() {
+        val due = synchronized(this) {
+            pending.size >= maxPending || (pending.isNotEmpty() && System.nanoTime() - lastFlush >= flushInterval.toNanos())
+        }
+        if (due) {
+            flush()
+        }
+    }
+
+    /**
+     * Writes everything collected so far. On failure the changes are kept for the next flush.
+     */
+    fun flush(): Boolean {
+        val batch = synchronized(this) {
+            lastFlush = System.nanoTime()
+            if (pending.isEmpty()) {
+                return true
+            }
+            pending.also { pending = HashMap() }
+        }
+        if (write(batch)) {
+            return true
+        }
+        synchronized(this) {
+            batch.forEach { (username, delta) -> pending.merge(username, delta) { a, b -> a.also { it.merge(b) } } }
+        }
+        return false
+    }
+
+    private fun write(batch: Map<String, Delta>): Boolean {
+        val start = System.nanoTime()
+        try {
+            connection().use { conn ->
+                conn.autoCommit = false
+                try {
+                    conn.prepareStatement(SEED).use { stmt ->
+                        for ((username, delta) in batch) {
+                            stmt.setLong(1, delta.timeoutSeconds)
+                            stmt.setString(2, username)
+                            stmt.addBatch()
+                        }
+                        stmt.executeBatch()
+                    }
+                    conn.prepareStatement(UPSERT).use { stmt ->
+                        for ((username, delta) in batch) {
+                            stmt.setString(1, username)
+                            if (delta.firstId == 0L) {
+                                stmt.setNull(2, Types.INTEGER)
+                                stmt.setNull(3, Types.TIMESTAMP)
+                                stmt.setNull(4, Types.INTEGER)
+                                stmt.setNull(5, Types.TIMESTAMP)
+                            } else {
+                                stmt.setLong(2, delta.firstId)
+                                stmt.setTimestamp(3, delta.firstTime)
+                                stmt.setLong(4, delta.lastId)
+                                stmt.setTimestamp(5, delta.lastTime)
+                            }
+                            stmt.setLong(6, delta.count)
+                            stmt.setLong(7, delta.timeoutSeconds)
+                            stmt.addBatch()
+                        }
+                        stmt.executeBatch()
+                    }
+                    conn.commit()
+                } catch (e: SQLException) {
+                    conn.rollback()
+                    throw e
+                } finally {
+                    conn.autoCommit = true
+                }
+            }
+            log.debug("Wrote stats for {} users in {}ms.", batch.size, (System.nanoTime() - start) / 1_000_000)
+            return true
+        } catch (e: SQLException) {
+            warnSql(e)
+        }
+        return false
+    }
+
+    private companion object {
+        // a user without a row yet may have timeouts from before the table existed, the row starts
+        // from the total in users without what this batch adds, as that is already in there.
+        const val SEED = """
+            INSERT IGNORE INTO chat_stats.user_stats(username, timeout_seconds)
+            SELECT username, GREATEST(timeout - ?, 0) FROM chat_stats.users WHERE username = ?
+            """
+
+        // the times are assigned before the ids as the conditions read the already updated values.
+        const val UPSERT = """
+            INSERT INTO chat_stats.user_stats(username, first_id, first_time, last_id, last_time, message_count, timeout_seconds)
+            VALUES (?,?,?,?,?,?,?)
+            ON DUPLICATE KEY UPDATE
+                first_time = IF(VALUES(first_id) IS NOT NULL AND (first_id IS NULL OR VALUES(first_id) < first_id), VALUES(first_time), first_time),
+                first_id = IF(VALUES(first_id) IS NOT NULL AND (first_id IS NULL OR VALUES(first_id) < first_id), VALUES(first_id), first_id),
+                last_time = IF(VALUES(last_id) IS NOT NULL AND (last_id IS NULL OR VALUES(last_id) > last_id), VALUES(last_time), last_time),
+                last_id = IF(VALUES(last_id) IS NOT NULL AND (last_id IS NULL OR VALUES(last_id) > last_id), VALUES(last_id), last_id),
+                message_count = message_count + VALUES(message_count),
+                timeout_seconds = timeout_seconds + VALUES(timeout_seconds)
+            """
+    }
+}
@@ -1,6 +1,7 @@
 package chatbot.enums
 
 import chatbot.enums.Command.Feature.*
+import java.time.Duration
 import java.util.*
 
 public enum class Command {
@@ -25,16 +26,16 @@ public enum class Command {
     LOG(ONLINE, SELF, OTHERS),
     LOGS(LOG),
 
-    RQ(SELF, OTHERS, OPT_OUT),
-    RS(SELF, OPT_OUT),
+    RQ(SELF, OTHERS, OPT_OUT, SOLR),
+    RS(SELF, OPT_OUT, SOLR),
 
     ADDDISABLED(SELF),
     REMDISABLED(SELF),
 
-    FS,
+    FS(SOLR),
 
-    SEARCH(NO_ARGS),
-    SEARCHUSER(SELF, OTHERS),
+    SEARCH(NO_ARGS, SOLR),
+    SEARCHUSER(SELF, OTHERS, SOLR),
 
     ADDALT,
     NAMBAN,
@@ -55,6 +56,22 @@ public enum class Command {
     val canOptOut: Boolean
     val isNoArgs: Boolean
 
+    /**
+     * Aliases share the limits of the command they are an alias of.
+     */
+    val canonical: Command
+
+    /**
+     * How many of this command may run at the same time. Solr queries are limited the most as a few
+     * of them can take the full request timeout.
+     */
+    val maxConcurrent: Int
+
+    /**
+     * Time the command has to respond before the next command of the same user is let through.
+     */
+    val timeout: Duration
+
     constructor(vararg features: Feature) {
         var featureSet: EnumSet<Feature> = EnumSet.noneOf(Feature::class.java)
 
@@ -68,6 +85,18 @@ public enum class Command {
         this.isAdminOnly = featureSet.contains(ADMIN_ONLY)
         this.canOptOut = featureSet.contains(OPT_OUT)
         this.isNoArgs = featureSet.contains(NO_ARGS)
+        this.canonical = this
+
+        if (featureSet.contains(SOLR)) {
+            this.maxConcurrent = 2
+            this.timeout = Duration.ofSeconds(10)
+        } else if (isAdminOnly) {
+            this.maxConcurrent = 1
+            this.timeout = Duration.ofSeconds(30)
+        } else {
+            this.maxConcurrent = 4
+            this.timeout = Duration.ofSeconds(5)
+        }
     }
 
     constructor(alias: Command) {
@@ -77,16 +106,15 @@ public enum class Command {
         this.isAdminOnly = alias.isAdminOnly
         this.canOptOut = alias.canOptOut
         this.isNoArgs = alias.isNoArgs
+        this.canonical = alias
+        this.maxConcurrent = alias.maxConcurrent
+        this.timeout = alias.timeout
     }
 
     fun isOptedOut(username: String, optOutList: MutableSet<String>): Boolean {
         return canOptOut && optOutList.contains(username)
     }
 
-    fun isUserCommandSpecified(userPermissionMap: MutableMap<String, Boolean>): Boolean? {
-        return userPermissionMap.getOrDefault(toString().lowercase(), null)
-    }
-
     internal enum class Feature {
         ONLINE,
         SELF,
@@ -94,5 +122,6 @@ public enum class Command {
         ADMIN_ONLY,
         OPT_OUT,
         NO_ARGS,
+        SOLR,
     }
 }
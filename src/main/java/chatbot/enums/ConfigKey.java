@@ -25,6 +25,28 @@ public enum ConfigKey {
     TEST_MODE,
     NAM_INFLUX_ADDRESS,
     NAM_INFLUX_TOKEN,
+    NAM_NIO_CONNECTOR,
+    NAM_QUEUE_WAIT_STRATEGY,
+    NAM_COMMAND_QUEUE_CAPACITY,
+    NAM_SENDING_QUEUE_CAPACITY,
+    NAM_MESSAGE_LOG_QUEUE_CAPACITY,
+    NAM_TIMEOUT_QUEUE_CAPACITY,
+    NAM_HOT_STANDBY,
+    NAM_SEARCH_CACHE_SIZE,
+    NAM_SEARCH_CACHE_TTL,
+    NAM_KNOWN_USERS_SNAPSHOT,
+    NAM_KNOWN_USERS_EXPECTED,
+    NAM_USER_STATS_CACHE_SIZE,
+    NAM_SEND_MAX_AGE,
+    NAM_DB_BATCH_SIZE,
+    NAM_DB_BATCH_DELAY,
+    NAM_SPOOL_DIR,
+    NAM_SPOOL_SEGMENT_SIZE,
+    NAM_SPOOL_SYNC_INTERVAL,
+    NAM_SPOOL_MAX_SIZE,
+    NAM_DEAD_LETTER_FILE,
+    NAM_SOLR_BATCH_SIZE,
+    NAM_SOLR_BATCH_DELAY,
     ;
 
     public final boolean sensitive;
@@ -0,0 +1,20 @@
+package chatbot.enums;
+
+/**
+ * When a second IRC connection is kept next to the one in use.
+ */
+public enum HotStandby {
+    /**
+     * Single connection, reconnecting drops everything sent while disconnected.
+     */
+    OFF,
+    /**
+     * A second connection is joined when the server asks to reconnect and replaces the first one
+     * once it is in the channel.
+     */
+    RECONNECT,
+    /**
+     * A second connection is always kept joined and takes over when the first one drops.
+     */
+    PERMANENT,
+}
@@ -0,0 +1,19 @@
+package chatbot.enums;
+
+/**
+ * What a {@link chatbot.utils.MessageQueue} does with a message added while it is full.
+ */
+public enum OverflowPolicy {
+    /**
+     * Waits until there is space.
+     */
+    BLOCK,
+    /**
+     * Drops the oldest queued message to make room.
+     */
+    DROP_OLDEST,
+    /**
+     * Writes the message to a file and reads it back in order once the queue has been drained.
+     */
+    SPILL_TO_DISK,
+}
@@ -4,6 +4,7 @@ public enum Response {
     INTERNAL_ERROR("internal error Deadlole"),
     NO_MESSAGES("no messages found PEEPERS"),
     TIMEOUT("query timeout, try again SLUDGE"),
+    BUSY("too many of those running, try again in a bit SLUDGE"),
 
     ;
 
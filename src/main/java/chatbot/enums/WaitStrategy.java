@@ -0,0 +1,23 @@
+package chatbot.enums;
+
+/**
+ * How a thread waits for a {@link chatbot.utils.RingBuffer} to get an element or free space.
+ */
+public enum WaitStrategy {
+    /**
+     * Parks on a condition that is signalled by the other side. Lowest CPU use, highest latency.
+     */
+    BLOCKING,
+    /**
+     * Spins, then yields, then sleeps in short intervals without needing a signal.
+     */
+    SLEEPING,
+    /**
+     * Spins, then yields the thread. Keeps a core busy while waiting.
+     */
+    YIELDING,
+    /**
+     * Only spins. For dedicated cores.
+     */
+    BUSY_SPIN,
+}
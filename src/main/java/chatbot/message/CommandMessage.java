@@ -2,6 +2,7 @@ package chatbot.message;
 
 import chatbot.enums.Command;
 import chatbot.enums.Response;
+import chatbot.utils.CommandRecognizer;
 import chatbot.utils.Utils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -13,12 +14,19 @@ public class CommandMessage implements Message {
     private final String sender;
     private final String message;
     private String response;
+    private Command command;
+    private volatile boolean expired;
 
     public CommandMessage(String sender, String message) {
         this.sender = sender;
         this.message = message;
     }
 
+    public CommandMessage(String sender, String message, Command command) {
+        this(sender, message);
+        this.command = command;
+    }
+
     @Override
     public String getSender() {
         return sender;
@@ -39,20 +47,21 @@ public class CommandMessage implements Message {
      * @return Command or null if the message didn't contain a recognizable command.
      */
     public Command getCommand() {
-        if (message.startsWith("!")) {
-            String cmdName = message.toLowerCase()
-                    .replaceAll("\uDB40\uDC00", "")
-                    .stripTrailing()
-                    .split(" ")[0]
-                    .substring(1);
-            if (!cmdName.isEmpty()) {
-                try {
-                    return Command.valueOf(cmdName.toUpperCase());
-                } catch (IllegalArgumentException ignored) {
-                }
-            }
+        if (command == null) {
+            command = CommandRecognizer.recognize(message);
         }
-        return null;
+        return command;
+    }
+
+    /**
+     * Marks the command as having run out of time, responses to it are no longer sent.
+     */
+    public void expire() {
+        expired = true;
+    }
+
+    public boolean isExpired() {
+        return expired;
     }
 
     public CommandMessage setResponse(String response) {
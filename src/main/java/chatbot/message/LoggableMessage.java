@@ -19,6 +19,10 @@ public class LoggableMessage implements Message {
     private final String fullMsg;
 
     private final long twitchTimeMillis;
+    /**
+     * Computed on first use, every sink needs it and it hashes the full message.
+     */
+    private String uuid;
 
     public LoggableMessage(String sender, String uid, String message, boolean subscribed,
             boolean whisper, String fullMsg, String twitchTimestamp)
@@ -77,7 +81,12 @@ public class LoggableMessage implements Message {
     }
 
     public String getUUID() {
-        return UUID.nameUUIDFromBytes(uuidString().getBytes(StandardCharsets.UTF_8)).toString();
+        String uuid = this.uuid;
+        if (uuid == null) {
+            uuid = UUID.nameUUIDFromBytes(uuidString().getBytes(StandardCharsets.UTF_8)).toString();
+            this.uuid = uuid;
+        }
+        return uuid;
     }
 
     public boolean isWhisper() {
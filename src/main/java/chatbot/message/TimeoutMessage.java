@@ -1,7 +1,7 @@
 package chatbot.message;
 
 import java.time.Instant;
-import java.time.temporal.ChronoUnit;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -12,17 +12,19 @@ public class TimeoutMessage implements Message {
     private final String username;
     private final String userid;
     private Instant timeout;
+    private long startNanos;
     private int length;
 
     public TimeoutMessage(String username, String userid, int length) {
         this.username = username;
         this.timeout = Instant.now();
+        this.startNanos = System.nanoTime();
         this.length = length;
         this.userid = userid;
     }
 
     public boolean hasExpired() {
-        return timeout.plus(length, ChronoUnit.SECONDS).isBefore(Instant.now());
+        return System.nanoTime() - startNanos > TimeUnit.SECONDS.toNanos(length);
     }
 
     /**
@@ -39,6 +41,7 @@ public class TimeoutMessage implements Message {
         this.length = length;
         log.info("Set {}'s {}s timeout to {}s.", username, prevlength, length);
         this.timeout = Instant.now();
+        this.startNanos = System.nanoTime();
     }
 
     public String getUsername() {
@@ -53,6 +56,13 @@ public class TimeoutMessage implements Message {
         return userid;
     }
 
+    /**
+     * @return System.nanoTime() of when the timeout started or was last reset.
+     */
+    public long getStartNanos() {
+        return startNanos;
+    }
+
     @Override
     public String toString() {
         return "Timeout{" +
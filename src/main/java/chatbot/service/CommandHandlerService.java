@@ -3,11 +3,13 @@ package chatbot.service;
 import chatbot.ConsoleMain;
 import chatbot.Metrics;
 import chatbot.dao.db.DatabaseHandler;
+import chatbot.dao.db.PermissionStore;
 import chatbot.enums.Command;
 import chatbot.enums.Response;
 import chatbot.message.*;
 import chatbot.singleton.Config;
 import chatbot.singleton.SharedState;
+import chatbot.utils.OrderedDispatcher;
 import chatbot.utils.Utils;
 import com.google.common.util.concurrent.AbstractExecutionThreadService;
 import org.apache.logging.log4j.LogManager;
@@ -16,34 +18,50 @@ import org.apache.logging.log4j.Logger;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class CommandHandlerService extends AbstractExecutionThreadService {
 
     private final static Logger log = LogManager.getLogger(CommandHandlerService.class);
 
-    private final HashMap<String, Instant> banned = new HashMap<>();
-    private final HashMap<String, Instant> manualBanned = new HashMap<>();
+    private final ConcurrentHashMap<String, Instant> banned = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Instant> manualBanned = new ConcurrentHashMap<>();
     private final String website = Config.getBotWebsite();
     private final String botName = Config.getTwitchUsername();
     private final String admin = Config.getBotAdmin();
     private final String channel = Config.getChannelToJoin();
     private final List<Instant> previousMessageTimes = new ArrayList<>();
     private final DatabaseHandler databaseHandler;
+    private final PermissionStore permissionStore;
     private final SharedState state = SharedState.getInstance();
-    private Instant lastCommandTime = Instant.now().minus(30, ChronoUnit.SECONDS);
-    private HashSet<String> admins = new HashSet<>();
-    private HashSet<String> mods = new HashSet<>();
+    private final AtomicReference<Instant> lastCommandTime = new AtomicReference<>(Instant.now().minus(30, ChronoUnit.SECONDS));
+    /**
+     * Commands run on virtual threads, one at a time for each requester so their responses stay in
+     * order.
+     */
+    private final OrderedDispatcher dispatcher = new OrderedDispatcher("command");
+    private final EnumMap<Command, Semaphore> permits = new EnumMap<>(Command.class);
+    private volatile Set<String> admins = new HashSet<>();
+    private volatile Set<String> mods = new HashSet<>();
     private String previousMessage = "";
 
     public CommandHandlerService(DatabaseHandler databaseHandler) {
         this.databaseHandler = databaseHandler;
-        refreshLists(new SimpleMessage("Startup", ""));
+        this.permissionStore = new PermissionStore(databaseHandler);
+        for (Command command : Command.values()) {
+            permits.put(command, new Semaphore(command.getMaxConcurrent()));
+        }
+        refreshLists();
     }
 
     @Override
     protected void shutDown() {
+        dispatcher.close();
         log.debug("{} stopped.", CommandHandlerService.class);
     }
 
@@ -64,26 +82,55 @@ public class CommandHandlerService extends AbstractExecutionThreadService {
                 log.error("Unexpected message type in commandqueue {}", message);
                 continue;
             }
-            handleCommand(commandMessage);
+            dispatch(commandMessage);
         }
     }
 
-    private void handleCommand(CommandMessage message) {
+    private void dispatch(CommandMessage message) {
         Command command = message.getCommand();
         if (command == null) {
             return;
         }
 
         log.info("{} used {} with {}.", message.getSender(), command, message.getStringMessage());
-        long start = System.nanoTime();
 
         if (!isAllowed(message)) {
             log.info("{} not allowed to use command {}", message.getSender(), command);
             Metrics.COMMAND_NOT_ALLOWED_COUNTER.inc(command.name());
             return;
         }
+        //set before the command finishes so the cooldown holds while it runs, the ignore list commands
+        //check it themselves.
+        if (command != Command.ADDDISABLED && command != Command.REMDISABLED) {
+            lastCommandTime.set(Instant.now());
+        }
+
+        long start = System.nanoTime();
+        dispatcher.submit(message.getSender().toLowerCase(), permits.get(command.getCanonical()), command.getTimeout(),
+                        () -> handleCommand(message),
+                        message::expire)
+                .thenAccept(outcome -> {
+                    switch (outcome) {
+                        case DONE -> {
+                            lastCommandTime.set(Instant.now());
+                            Metrics.COMMAND_COUNTER.inc(command.name(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                        }
+                        case FAILED -> log.error("{} failed for {}.", command, message.getSender());
+                        case TIMED_OUT -> {
+                            log.warn("{} from {} did not finish in {}.", command, message.getSender(), command.getTimeout());
+                            Metrics.COMMAND_TIMEOUT_COUNTER.inc(command.name());
+                        }
+                        case REJECTED -> {
+                            log.warn("{} already running {} times, told {} to try again.", command, command.getMaxConcurrent(), message.getSender());
+                            Metrics.COMMAND_REJECTED_COUNTER.inc(command.name());
+                            respond(message.setResponse("@%s, %s".formatted(message.getSender(), Response.BUSY)));
+                        }
+                    }
+                });
+    }
 
-        switch (command) {
+    private void handleCommand(CommandMessage message) {
+        switch (message.getCommand()) {
             case NAMMERS -> topNammers(message);
             case NAMPING -> ping(message);
             case NAMBAN -> ban(message);
@@ -107,8 +154,18 @@ public class CommandHandlerService extends AbstractExecutionThreadService {
             case LASTSEEN, LS -> lastSeen(message);
             case MCOUNT -> messageCount(message);
         }
-        lastCommandTime = Instant.now();
-        Metrics.COMMAND_COUNTER.inc(command.name(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Sends the response unless the command already ran out of time, as the requester's next
+     * command may have answered by then.
+     */
+    private void respond(CommandMessage message) {
+        if (message.isExpired()) {
+            log.info("Dropped late response to {}: {}", message.getSender(), message.getStringMessage());
+            return;
+        }
+        state.sendingBlockingQueue.add(message);
     }
 
     private void setCommandPermissionUser(CommandMessage message) {
@@ -117,37 +174,46 @@ public class CommandHandlerService extends AbstractExecutionThreadService {
         if (commandName == null || bool == null) {
             return;
         }
-        databaseHandler.setCommandPermissionUser(message.getUsername(), commandName, Boolean.parseBoolean(bool));
+        Command command = PermissionStore.commandOf(commandName);
+        if (command == null) {
+            log.info("{} tried to set permissions for unknown command {}.", message.getSender(), commandName);
+            return;
+        }
+        if (!permissionStore.set(message.getUsername(), command, Boolean.parseBoolean(bool))) {
+            respond(message.setResponse("@%s, %s".formatted(message.getSender(), Response.INTERNAL_ERROR)));
+            return;
+        }
 
-        state.sendingBlockingQueue.add(message.setResponse("@%s, set command %s permissions for %s to %s.".formatted(
+        respond(message.setResponse("@%s, set command %s permissions for %s to %s.".formatted(
                 message.getSender(),
                 commandName,
                 message.getUsername(),
                 Boolean.parseBoolean(bool))));
     }
 
-    public void refreshLists(Message message) {
-        if (message.getSender().equals("Startup") || admins.stream()
-                .anyMatch(message.getSender()::equalsIgnoreCase))
-        {
-            initializeMods();
-            initializeDisabled();
-            initializeAlts();
-            initializeBlacklist();
-            if (!message.getSender().equals("Startup")) {
-                state.sendingBlockingQueue.add(new SimpleMessage(message.getSender(), "Lists refreshed HACKERMANS"));
-            }
+    private void refreshLists(CommandMessage message) {
+        if (admins.stream().anyMatch(message.getSender()::equalsIgnoreCase)) {
+            refreshLists();
+            respond(message.setResponse("Lists refreshed HACKERMANS"));
         }
     }
 
+    private void refreshLists() {
+        initializeMods();
+        permissionStore.load();
+        initializeDisabled();
+        initializeAlts();
+        initializeBlacklist();
+    }
+
     private void namCommands(CommandMessage message) {
-        state.sendingBlockingQueue.add(message.setResponse("@%s, commands for this bot: %s/commands".formatted(message.getSender(), website)));
+        respond(message.setResponse("@%s, commands for this bot: %s/commands".formatted(message.getSender(), website)));
 
     }
 
     private void ban(CommandMessage message) {
         manualBanned.put(message.getUsername(), Instant.now());
-        state.sendingBlockingQueue.add(message.setResponse("Banned %s from using the bot for 1h.".formatted(message.getUsername())));
+        respond(message.setResponse("Banned %s from using the bot for 1h.".formatted(message.getUsername())));
     }
 
     private void names(CommandMessage message) {
@@ -156,7 +222,7 @@ public class CommandHandlerService extends AbstractExecutionThreadService {
 
         Optional<List<String>> optionalNameList = databaseHandler.getAlternateNames(message.getUsername());
         if (optionalNameList.isEmpty()) {
-            state.sendingBlockingQueue.add(message.setResponse("@%s, multiple users have had that name PepeSpin".formatted(message.getSender())));
+            respond(message.setResponse("@%s, multiple users have had that name PepeSpin".formatted(message.getSender())));
             return;
         }
         if (!optionalNameList.get().isEmpty()) {
@@ -164,9 +230,9 @@ public class CommandHandlerService extends AbstractExecutionThreadService {
                 names.append(name).append(", ");
             }
             names.setLength(names.length() - 2);
-            state.sendingBlockingQueue.add(message.setResponse(names.toString()));
+            respond(message.setResponse(names.toString()));
         } else {
-            state.sendingBlockingQueue.add(message.setResponse("@%s, no alternate names found in logs PEEPERS".formatted(message.getSender())));
+            respond(message.setResponse("@%s, no alternate names found in logs PEEPERS".formatted(message.getSender())));
         }
     }
 
@@ -176,11 +242,11 @@ public class CommandHandlerService extends AbstractExecutionThreadService {
             return;
         }
         int choice = ThreadLocalRandom.current().nextInt(choices.length);
-        state.sendingBlockingQueue.add(message.setResponse(String.format("@%s, I choose %s", message.getSender(), choices[choice])));
+        respond(message.setResponse(String.format("@%s, I choose %s", message.getSender(), choices[choice])));
     }
 
     private void ping(CommandMessage message) {
-        state.sendingBlockingQueue.add(message.setResponse(String.format(
+        respond(message.setResponse(String.format(
                 "NamBot online for %s | %d messages sent | %d messages logged | %d timeouts logged, of which %d were permabans.",
                 (Utils.convertTime(Instant.now().minus(ConsoleMain.getStartTime().toEpochMilli(), ChronoUnit.MILLIS).toEpochMilli() / 1000)),
                 state.getSentMessageCount(), state.getMessageCount(), state.getTimeoutCount(),
@@ -189,34 +255,38 @@ public class CommandHandlerService extends AbstractExecutionThreadService {
     }
 
     private void searchUser(CommandMessage message) {
-        long count = databaseHandler.searchUser(message.getUsername(),
+        OptionalLong count = databaseHandler.searchUser(message.getUsername(),
                 message.getMessageWithoutUsername());
-        if (count == 0) {
-            state.sendingBlockingQueue.add(message.setResponse("@%s, %s".formatted(message.getSender(), Response.NO_MESSAGES)));
+        if (count.isEmpty()) {
+            respond(message.setResponse("@%s, %s".formatted(message.getSender(), Response.INTERNAL_ERROR)));
+        } else if (count.getAsLong() == 0) {
+            respond(message.setResponse("@%s, %s".formatted(message.getSender(), Response.NO_MESSAGES)));
         } else {
-            state.sendingBlockingQueue.add(message.setResponse("@%s, %s has used %s in %d messages".formatted(
+            respond(message.setResponse("@%s, %s has used %s in %d messages".formatted(
                     message.getSender(),
                     message.getUsername(),
                     Utils.getWordList(message.getMessageWithoutUsername()),
-                    count)));
+                    count.getAsLong())));
         }
     }
 
     private void search(CommandMessage message) {
-        long count = databaseHandler.search(message.getMessageWithoutCommand());
-        if (count == 0) {
-            state.sendingBlockingQueue.add(message.setResponse("@%s, %s".formatted(message.getSender(), Response.NO_MESSAGES)));
+        OptionalLong count = databaseHandler.search(message.getMessageWithoutCommand());
+        if (count.isEmpty()) {
+            respond(message.setResponse("@%s, %s".formatted(message.getSender(), Response.INTERNAL_ERROR)));
+        } else if (count.getAsLong() == 0) {
+            respond(message.setResponse("@%s, %s".formatted(message.getSender(), Response.NO_MESSAGES)));
         } else {
-            state.sendingBlockingQueue.add(message.setResponse(
+            respond(message.setResponse(
                     "@%s found %s in %d rows.".formatted(
                             message.getSender(),
                             Utils.getWordList(message.getMessageWithoutCommand()),
-                            count)));
+                            count.getAsLong())));
         }
     }
 
     private void firstOccurrence(CommandMessage message) {
-        state.sendingBlockingQueue.add(message.setResponse(
+        respond(message.setResponse(
                 "@%s, %s".formatted(
                         message.getSender(),
                         databaseHandler
@@ -230,10 +300,11 @@ public class CommandHandlerService extends AbstractExecutionThreadService {
         if (!result.startsWith("[")) {
             result = "%s, %s".formatted(message.getSender(), result);
         }
-        state.sendingBlockingQueue.add(message.setResponse(result));
+        respond(message.setResponse(result));
     }
 
     private void randomQuote(CommandMessage message) {
+        // checked first, for known users it is an index lookup and unknown ones rarely have a quote.
         if (sendIfNoMessages(message)) {
             return;
         }
@@ -242,12 +313,12 @@ public class CommandHandlerService extends AbstractExecutionThreadService {
         if (!result.startsWith("[")) {
             result = "%s, %s".formatted(message.getSender(), result);
         }
-        state.sendingBlockingQueue.add(message.setResponse(result));
+        respond(message.setResponse(result));
     }
 
-    private boolean throwIfBot(String username) {
-        if (username.equalsIgnoreCase(botName)) {
-            state.sendingBlockingQueue.add(new SimpleMessage("isBot", "PepeSpin"));
+    private boolean throwIfBot(CommandMessage message) {
+        if (message.getUsername().equalsIgnoreCase(botName)) {
+            respond(message.setResponse("PepeSpin"));
             return true;
         }
         return false;
@@ -269,7 +340,7 @@ public class CommandHandlerService extends AbstractExecutionThreadService {
                 response = String.format("%s has spent %s in the shadow realm.", message.getUsername(),
                         Utils.convertTime(timeout));
             }
-            state.sendingBlockingQueue.add(message.setResponse(response));
+            respond(message.setResponse(response));
 
         }
     }
@@ -280,10 +351,13 @@ public class CommandHandlerService extends AbstractExecutionThreadService {
         }
 
         String messageString = databaseHandler.firstMessage(message.getUsername());
-        if (message.getSender().equalsIgnoreCase(message.getUsername())) {
-            state.sendingBlockingQueue.add(message.setResponse("@%s, your %s".formatted(message.getSender(), messageString)));
+        if (messageString.equals(Response.NO_MESSAGES.toString())) {
+            // the user's first message is not written to the database yet.
+            respond(message.setResponse("@%s, %s".formatted(message.getSender(), Response.NO_MESSAGES)));
+        } else if (message.getSender().equalsIgnoreCase(message.getUsername())) {
+            respond(message.setResponse("@%s, your %s".formatted(message.getSender(), messageString)));
         } else {
-            state.sendingBlockingQueue.add(message.setResponse("@%s, %s's %s".formatted(message.getSender(), message.getUsername(), messageString)));
+            respond(message.setResponse("@%s, %s's %s".formatted(message.getSender(), message.getUsername(), messageString)));
         }
     }
 
@@ -291,7 +365,7 @@ public class CommandHandlerService extends AbstractExecutionThreadService {
         if (sendIfNoMessages(message)) {
             return;
         }
-        state.sendingBlockingQueue.add(
+        respond(
                 message.setResponse("@%s, %s".formatted(message.getSender(),
                         databaseHandler.lastMessage(message.getUsername()))));
     }
@@ -301,21 +375,21 @@ public class CommandHandlerService extends AbstractExecutionThreadService {
             return;
         }
 
-        state.sendingBlockingQueue.add(message.setResponse("@%s, %s".formatted(message.getSender(),
+        respond(message.setResponse("@%s, %s".formatted(message.getSender(),
                 databaseHandler.lastSeen(message.getUsername()))));
     }
 
     private boolean sendIfNoMessages(CommandMessage message) {
         if (!databaseHandler.userHasAnyMessages(message.getUsername())) {
             log.info("Did not find any messages for user {}", message.getUsername());
-            state.sendingBlockingQueue.add(message.setResponse("@%s, %s".formatted(message.getSender(), Response.NO_MESSAGES)));
+            respond(message.setResponse("@%s, %s".formatted(message.getSender(), Response.NO_MESSAGES)));
             return true;
         }
         return false;
     }
 
     private void topNammers(CommandMessage message) {
-        state.sendingBlockingQueue.add(
+        respond(
                 message.setResponse(databaseHandler.getTopTimeouts()
                         .orElse("@%s, %s".formatted(message.getSender(), Response.INTERNAL_ERROR))));
     }
@@ -323,23 +397,24 @@ public class CommandHandlerService extends AbstractExecutionThreadService {
     private void messageCount(CommandMessage message) {
         int count = databaseHandler.getMessageCount(message.getUsername());
         if (count == 0) {
-            state.sendingBlockingQueue.add(message.setResponse("@%s, %s".formatted(message.getSender(), Response.NO_MESSAGES)));
+            respond(message.setResponse("@%s, %s".formatted(message.getSender(), Response.NO_MESSAGES)));
             return;
         }
         if (message.getSender().equalsIgnoreCase(message.getUsername())) {
-            state.sendingBlockingQueue.add(message.setResponse("@%s, you have sent %s messages in this chat".formatted(message.getSender(), count)));
+            respond(message.setResponse("@%s, you have sent %s messages in this chat".formatted(message.getSender(), count)));
         } else {
-            state.sendingBlockingQueue.add(message.setResponse("@%s, %s has sent %s messages in this chat".formatted(message.getSender(), message.getUsername(), count)));
+            respond(message.setResponse("@%s, %s has sent %s messages in this chat".formatted(message.getSender(), message.getUsername(), count)));
         }
     }
 
     private void initializeMods() {
-        this.mods = new HashSet<>();
-        this.admins = new HashSet<>();
-        mods.addAll(databaseHandler.getModList());
+        Set<String> mods = new HashSet<>(databaseHandler.getModList());
+        Set<String> admins = new HashSet<>();
         admins.add(admin);
         admins.add("Autoban");
         admins.add(channel.replace("#", ""));
+        this.mods = mods;
+        this.admins = admins;
         log.info("Initialized mods list {} | admins {}.", mods, admins);
     }
 
@@ -362,14 +437,13 @@ public class CommandHandlerService extends AbstractExecutionThreadService {
         log.info("{} adding {} to {}'s alt list", message.getSender(), alt, main);
         if (!databaseHandler.addAlt(main, alt)) {
             log.error("Adding alt was unsuccessful: {} - {}.", main, alt);
-            state.sendingBlockingQueue.add(message.setResponse(Response.INTERNAL_ERROR));
+            respond(message.setResponse(Response.INTERNAL_ERROR));
             return;
         }
         state.mains.put(alt, main);
         state.mains.putIfAbsent(main, main);
-        state.alts.putIfAbsent(main, new ArrayList<>());
-        state.alts.get(main).add(alt);
-        state.sendingBlockingQueue.add(message.setResponse("@" + message.getSender() + ", added " + alt + " as " + main + "'s alt account."));
+        state.alts.computeIfAbsent(main, k -> new CopyOnWriteArrayList<>()).add(alt);
+        respond(message.setResponse("@" + message.getSender() + ", added " + alt + " as " + main + "'s alt account."));
     }
 
     void addDisabled(CommandMessage message) {
@@ -382,10 +456,10 @@ public class CommandHandlerService extends AbstractExecutionThreadService {
 
         if (!message.getSender().equals("Autoban") && (
                 mods.stream().anyMatch(message.getSender()::equalsIgnoreCase) || (
-                        lastCommandTime.plus(10, ChronoUnit.SECONDS).isBefore(Instant.now())
+                        lastCommandTime.get().plus(10, ChronoUnit.SECONDS).isBefore(Instant.now())
                                 && state.online.get())))
         {
-            state.sendingBlockingQueue.add(
+            respond(
                     message.setResponse("@" + message.getSender() + ", added " + message.getUsername() + " to ignore list."));
         }
         log.info("{} added {} to disabled list", message.getSender(), message.getUsername());
@@ -396,11 +470,11 @@ public class CommandHandlerService extends AbstractExecutionThreadService {
             return;
         }
         state.disabledUsers.remove(message.getUsername());
-        if (mods.contains(message.getSender().toLowerCase()) || lastCommandTime.plus(10,
+        if (mods.contains(message.getSender().toLowerCase()) || lastCommandTime.get().plus(10,
                         ChronoUnit.SECONDS)
                 .isBefore(Instant.now()))
         {
-            state.sendingBlockingQueue.add(message.setResponse("@" + message.getSender() + ", removed " + message.getUsername() + " from ignore list."));
+            respond(message.setResponse("@" + message.getSender() + ", removed " + message.getUsername() + " from ignore list."));
         }
         databaseHandler.removeDisabled(message.getUsername());
         log.info("{} removed {} from disabled list", message.getSender(), message.getUsername());
@@ -417,7 +491,7 @@ public class CommandHandlerService extends AbstractExecutionThreadService {
                 message.getUsername(), logSite,
                 message.getUsername());
 
-        state.sendingBlockingQueue.add(message.setResponse(response));
+        respond(message.setResponse(response));
     }
 
     private void initializeBlacklist() {
@@ -443,8 +517,8 @@ public class CommandHandlerService extends AbstractExecutionThreadService {
     }
 
     private void initializeAlts() {
-        state.mains = new HashMap<>();
-        state.alts = new HashMap<>();
+        ConcurrentHashMap<String, String> mains = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, List<String>> alts = new ConcurrentHashMap<>();
 
         List<String> mainsAltsCsv = databaseHandler.getAltsList();
 
@@ -453,15 +527,16 @@ public class CommandHandlerService extends AbstractExecutionThreadService {
             String main = values[0];
             String alt = values[1];
 
-            state.mains.putIfAbsent(alt, main);
-            state.mains.putIfAbsent(main, main);
-            state.alts.putIfAbsent(main, new ArrayList<>());
-            state.alts.get(main).add(alt);
+            mains.putIfAbsent(alt, main);
+            mains.putIfAbsent(main, main);
+            alts.computeIfAbsent(main, k -> new CopyOnWriteArrayList<>()).add(alt);
         }
-        log.info("Initialized alts list. {} users with alts.", state.alts.size());
+        state.mains = mains;
+        state.alts = alts;
+        log.info("Initialized alts list. {} users with alts.", alts.size());
     }
 
-    private boolean checkOneManSpam(String from) {
+    private synchronized boolean checkOneManSpam(String from) {
         if (!previousMessage.equals(from)) {
             previousMessage = from;
             previousMessageTimes.clear();
@@ -496,7 +571,7 @@ public class CommandHandlerService extends AbstractExecutionThreadService {
         }
 
         //10 second cooldown
-        if (lastCommandTime.plus(10, ChronoUnit.SECONDS).isAfter(Instant.now())
+        if (lastCommandTime.get().plus(10, ChronoUnit.SECONDS).isAfter(Instant.now())
                 && admins.stream().noneMatch(from::equalsIgnoreCase)
                 //These commands have their own logic for cooldown.
                 && command != Command.ADDDISABLED && command != Command.REMDISABLED)
@@ -508,13 +583,13 @@ public class CommandHandlerService extends AbstractExecutionThreadService {
         //new spammer check
         if (checkOneManSpam(from)) {
             banned.put(from, Instant.now());
-            state.sendingBlockingQueue.add(
+            respond(
                     message.setResponse("@" + from
                             + ", stop one man spamming. Banned from using commands for 10 minutes peepoD"));
             return false;
         }
 
-        if (throwIfBot(username)) {
+        if (throwIfBot(message)) {
             return false;
         }
 
@@ -527,9 +602,9 @@ public class CommandHandlerService extends AbstractExecutionThreadService {
         }
 
         if (command.isOptedOut(username, state.disabledUsers)) {
-            state.sendingBlockingQueue.add(message.setResponse("@" + from + ", that user has been removed from the " + command
+            respond(message.setResponse("@" + from + ", that user has been removed from the " + command
                     + " command. Type !adddisabled to remove yourself or !remdisabled to re-enable commands."));
-            lastCommandTime = Instant.now();
+            lastCommandTime.set(Instant.now());
             return false;
         }
 
@@ -537,9 +612,8 @@ public class CommandHandlerService extends AbstractExecutionThreadService {
             return true;
         }
 
-        //check database for user specific command permissions
-        Map<String, Boolean> userPermissionMap = databaseHandler.getPersonalPermissions(from);
-        Boolean specified = command.isUserCommandSpecified(userPermissionMap);
+        //user specific command permissions
+        Boolean specified = permissionStore.get(from, command);
         if (specified != null) {
             log.info("User {} command specific permission was {}.", from, specified);
             return specified;
@@ -558,22 +632,24 @@ public class CommandHandlerService extends AbstractExecutionThreadService {
 
     private boolean isBanned(String from) {
         //previous spammer check
-        if (banned.containsKey(from.toLowerCase())) {
-            if (banned.get(from).plus(600, ChronoUnit.SECONDS).isAfter(Instant.now())) {
+        Instant bannedAt = banned.get(from.toLowerCase());
+        if (bannedAt != null) {
+            if (bannedAt.plus(600, ChronoUnit.SECONDS).isAfter(Instant.now())) {
                 log.info("Banned user {} attempted to use a command.", from);
                 return true;
             } else {
-                banned.remove(from);
+                banned.remove(from.toLowerCase(), bannedAt);
             }
         }
 
         //manually banned check
-        if (manualBanned.containsKey(from.toLowerCase())) {
-            if (manualBanned.get(from).plus(3600, ChronoUnit.SECONDS).isAfter(Instant.now())) {
+        Instant manualBannedAt = manualBanned.get(from.toLowerCase());
+        if (manualBannedAt != null) {
+            if (manualBannedAt.plus(3600, ChronoUnit.SECONDS).isAfter(Instant.now())) {
                 log.info("Manually banned user {} attempted to use a command.", from);
                 return true;
             } else {
-                manualBanned.remove(from);
+                manualBanned.remove(from.toLowerCase(), manualBannedAt);
             }
         }
         return false;
@@ -4,9 +4,11 @@ import chatbot.ConsoleMain;
 import chatbot.Metrics;
 import chatbot.connector.MessageConnector;
 import chatbot.connector.container.IncomingMessage;
+import chatbot.enums.Command;
 import chatbot.message.*;
 import chatbot.singleton.Config;
 import chatbot.singleton.SharedState;
+import chatbot.utils.CommandRecognizer;
 import com.google.common.util.concurrent.AbstractExecutionThreadService;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -42,7 +44,7 @@ public class ListenerService extends AbstractExecutionThreadService {
             if (output == null) {
                 break;
             }
-            IncomingMessage incomingMessage = new IncomingMessage(output);
+            IncomingMessage incomingMessage = IncomingMessage.parseLocal(output);
             log.trace(incomingMessage);
 
             switch (incomingMessage.getCommand()) {
@@ -50,8 +52,8 @@ public class ListenerService extends AbstractExecutionThreadService {
                 case "PRIVMSG" -> handleRegularMessage(incomingMessage);
                 case "WHISPER" -> handleWhisper(incomingMessage);
                 case "CLEARCHAT" -> handleTimeout(incomingMessage);
-                case "USERSTATE" -> log.info("Message sent successfully.");
-                case "001", "002", "003", "004", "353", "366", "372", "375", "376", "CAP" -> log.info(incomingMessage.original);
+                case "USERSTATE" -> handleUserState(incomingMessage);
+                case "001", "002", "003", "004", "353", "366", "372", "375", "376", "CAP" -> log.info(incomingMessage.getOriginal());
                 case "USERNOTICE", "CLEARMSG", "PART", "JOIN" -> handleIgnored(incomingMessage);
                 case "RECONNECT" -> {
                     log.info("Reconnect issued.");
@@ -73,18 +75,18 @@ public class ListenerService extends AbstractExecutionThreadService {
     }
 
     private void handleIgnored(IncomingMessage incomingMessage) {
-        log.trace("Ignored: %s".formatted(incomingMessage));
+        log.trace("Ignored: {}", incomingMessage);
     }
 
     private void handleTimeout(IncomingMessage incomingMessage) {
-        if (incomingMessage.tagsMap.get("target-user-id") == null) {
+        String userid = incomingMessage.getTag("target-user-id");
+        if (userid == null) {
             log.info("Chat was cleared");
             return;
         }
-        String name = incomingMessage.params;
-        String userid = incomingMessage.tagsMap.get("target-user-id");
-        String banString = incomingMessage.tagsMap.get("ban-duration");
-        String twitchTimestamp = incomingMessage.tagsMap.getOrDefault("tmi-sent-ts", String.valueOf(Instant.now().toEpochMilli()));
+        String name = incomingMessage.getParams();
+        String banString = incomingMessage.getTag("ban-duration");
+        String twitchTimestamp = getTwitchTimestamp(incomingMessage);
 
         if (banString == null) {
             log.debug("{} permabanned.", name);
@@ -92,7 +94,7 @@ public class ListenerService extends AbstractExecutionThreadService {
                     new CommandMessage("Autoban", "!adddisabled " + name));
             state.messageLogBlockingQueue.add(
                     new LoggableMessage(name, userid, "User was permanently banned.", false, false,
-                            incomingMessage.original, twitchTimestamp));
+                            incomingMessage.getOriginal(), twitchTimestamp));
             state.timeoutBlockingQueue.add(new TimeoutMessage(name, userid, 121059319));
             state.increasePermabanCount();
             Metrics.PERMABAN_COUNTER.inc();
@@ -107,34 +109,40 @@ public class ListenerService extends AbstractExecutionThreadService {
     private void handleRegularMessage(IncomingMessage incomingMessage) {
 
         String name = incomingMessage.getName();
-        String userid = incomingMessage.tagsMap.get("user-id");
-        boolean subscribed = incomingMessage.tagsMap.get("subscriber").equals("1");
+        String userid = incomingMessage.getTag("user-id");
+        boolean subscribed = incomingMessage.tagEquals("subscriber", "1");
 
-        String outputMSG = incomingMessage.params;
+        String outputMSG = incomingMessage.getParams();
         if (outputMSG.startsWith("\u0001ACTION ")) {
             outputMSG = outputMSG.replaceAll("\u0001", "");
             outputMSG = outputMSG.replaceFirst("ACTION", "/me");
         }
 
-        String twitchTimestamp = incomingMessage.tagsMap.getOrDefault("tmi-sent-ts", String.valueOf(Instant.now().toEpochMilli()));
+        String twitchTimestamp = getTwitchTimestamp(incomingMessage);
         state.messageLogBlockingQueue.add(
-                new LoggableMessage(name, userid, outputMSG, subscribed, false, incomingMessage.original, twitchTimestamp));
-        state.commandHandlerBlockingQueue.add(new CommandMessage(name, outputMSG));
+                new LoggableMessage(name, userid, outputMSG, subscribed, false, incomingMessage.getOriginal(), twitchTimestamp));
+        Command command = CommandRecognizer.recognize(outputMSG);
+        if (command != null) {
+            state.commandHandlerBlockingQueue.add(new CommandMessage(name, outputMSG, command));
+        } else {
+            Metrics.FILTERED_COUNTER.inc();
+        }
 
-        //records a timeout with a 0-second duration to prevent timeoutlist exploting.
-        state.timeoutBlockingQueue.add(new TimeoutMessage(name, userid, 0));
+        //a tracked timeout is dropped if the user speaks during it to prevent timeoutlist exploiting.
+        state.recordSpoke(userid);
+        state.messageReceived();
         Metrics.MESSAGE_COUNTER.inc();
     }
 
     private void handleWhisper(IncomingMessage incomingMessage) {
-        String name = incomingMessage.tagsMap.get("display-name");
-        String message = incomingMessage.params;
+        String name = incomingMessage.getTag("display-name");
+        String message = incomingMessage.getParams();
         log.info("User {} whispered {}.", name, message);
         Metrics.WHISPER_COUNTER.inc();
 
-        String twitchTimestamp = incomingMessage.tagsMap.getOrDefault("tmi-sent-ts", String.valueOf(Instant.now().toEpochMilli()));
+        String twitchTimestamp = getTwitchTimestamp(incomingMessage);
         state.messageLogBlockingQueue.add(
-                new LoggableMessage(name, "NULL", message, false, true, incomingMessage.original, twitchTimestamp));
+                new LoggableMessage(name, "NULL", message, false, true, incomingMessage.getOriginal(), twitchTimestamp));
 
         if (name.equalsIgnoreCase(Config.getBotAdmin())) {
             String[] commandSplit = message.split(" ");
@@ -146,13 +154,24 @@ public class ListenerService extends AbstractExecutionThreadService {
                 case "/shutdown" -> state.stop();
                 case "/send" -> {
                     message = message.substring("/send".length()).trim();
-                    state.sendingBlockingQueue.add(new SimpleMessage(name, message));
+                    // the sending queue blocks when full, which would stop this thread answering PINGs.
+                    if (!state.sendingBlockingQueue.offer(new SimpleMessage(name, message))) {
+                        log.warn("Sending queue is full, dropped /send from {}: {}", name, message);
+                    }
                 }
                 case "/restart" -> reconnect();
             }
         }
     }
 
+    private String getTwitchTimestamp(IncomingMessage incomingMessage) {
+        String twitchTimestamp = incomingMessage.getTag("tmi-sent-ts");
+        if (twitchTimestamp == null) {
+            return String.valueOf(Instant.now().toEpochMilli());
+        }
+        return twitchTimestamp;
+    }
+
     private String getOutput() {
         try {
             return messageConnector.getMessage();
@@ -162,6 +181,18 @@ public class ListenerService extends AbstractExecutionThreadService {
         }
     }
 
+    /**
+     * Sent after joining and after every message the bot sends, with the bot's badges in the channel.
+     */
+    private void handleUserState(IncomingMessage incomingMessage) {
+        log.info("Message sent successfully.");
+        boolean moderator = incomingMessage.tagEquals("mod", "1")
+                || incomingMessage.getTag("badges", "").contains("broadcaster/");
+        if (state.moderator.getAndSet(moderator) != moderator) {
+            log.info("Bot is {} in {}.", moderator ? "a moderator" : "not a moderator", Config.getChannelToJoin());
+        }
+    }
+
     private void handlePing() {
         try {
             messageConnector.sendMessage("PONG :tmi.twitch.tv\r\n");
@@ -1,6 +1,8 @@
 package chatbot.service;
 
 import chatbot.dao.db.Database;
+import chatbot.dao.db.KnownUserIndex;
+import chatbot.dao.db.SearchCache;
 import chatbot.message.LoggableMessage;
 import chatbot.message.Message;
 import chatbot.message.PoisonMessage;
@@ -10,17 +12,27 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 public class MessageLoggerService extends AbstractExecutionThreadService {
 
     private final static Logger log = LogManager.getLogger(MessageLoggerService.class);
+    /**
+     * Maximum number of messages taken from the queue at once.
+     */
+    private static final int BATCH_SIZE = 256;
 
     private final Database database;
+    private final SearchCache searchCache;
+    private final KnownUserIndex knownUsers;
     private final SharedState state = SharedState.getInstance();
 
-    public MessageLoggerService(Database database) {
+    public MessageLoggerService(Database database, SearchCache searchCache, KnownUserIndex knownUsers) {
         this.database = database;
+        this.searchCache = searchCache;
+        this.knownUsers = knownUsers;
     }
 
     @Override
@@ -35,28 +47,36 @@ public class MessageLoggerService extends AbstractExecutionThreadService {
 
     @Override
     public void run() throws InterruptedException {
+        List<Message> batch = new ArrayList<>(BATCH_SIZE);
         while (state.isBotStillRunning()) {
-            Message message = state.messageLogBlockingQueue.poll(5, TimeUnit.MINUTES);
-            if (message == null) {
+            Message first = state.messageLogBlockingQueue.poll(5, TimeUnit.MINUTES);
+            if (first == null) {
                 continue;
             }
+            batch.clear();
+            batch.add(first);
+            state.messageLogBlockingQueue.drainTo(batch, BATCH_SIZE - 1);
 
-            if (message instanceof PoisonMessage) {
-                log.debug("{} poisoned.", MessageLoggerService.class);
-                break;
-            }
-            if (!(message instanceof LoggableMessage loggableMessage)) {
-                log.error("Unexpected message type in messagelogger queue {}", message);
-                continue;
+            for (Message message : batch) {
+                if (message instanceof PoisonMessage) {
+                    log.debug("{} poisoned.", MessageLoggerService.class);
+                    return;
+                }
+                if (!(message instanceof LoggableMessage loggableMessage)) {
+                    log.error("Unexpected message type in messagelogger queue {}", message);
+                    continue;
+                }
+                log.trace("{} received a message: {}", MessageLoggerService.class, loggableMessage);
+                if (loggableMessage.isWhisper()) {
+                    database.recordWhisper(loggableMessage);
+                } else {
+                    database.recordMessage(loggableMessage);
+                    searchCache.messageLogged(loggableMessage);
+                    knownUsers.add(loggableMessage.getSender());
+                    state.increaseMessageCount();
+                }
             }
             state.lastMessageTime.set(Instant.now());
-            log.trace("{} received a message: {}", MessageLoggerService.class, loggableMessage);
-            if (loggableMessage.isWhisper()) {
-                database.recordWhisper(loggableMessage);
-            } else {
-                database.recordMessage(loggableMessage);
-                state.increaseMessageCount();
-            }
         }
     }
 }
@@ -7,6 +7,8 @@ import chatbot.message.Message;
 import chatbot.message.PoisonMessage;
 import chatbot.singleton.Config;
 import chatbot.singleton.SharedState;
+import chatbot.utils.SendScheduler;
+import chatbot.utils.SkeletonPattern;
 import chatbot.utils.Utils;
 import com.google.common.util.concurrent.AbstractExecutionThreadService;
 import org.apache.logging.log4j.LogManager;
@@ -14,11 +16,24 @@ import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 public class SenderService extends AbstractExecutionThreadService {
 
     private final static Logger log = LogManager.getLogger(SenderService.class);
 
+    /**
+     * Longest chat message sent, longer ones are split.
+     */
+    private static final int MAX_LENGTH = 400;
+    /**
+     * Most messages a single response is split into, the rest is cut off.
+     */
+    private static final int MAX_PARTS = 4;
+
     private final SharedState state = SharedState.getInstance();
     private final String channel = Config.getChannelToJoin();
     private final MessageConnector messageConnector;
@@ -39,77 +54,115 @@ public class SenderService extends AbstractExecutionThreadService {
 
     @Override
     public void run() throws InterruptedException {
-        while (state.isBotStillRunning()) {
-            Message message = state.sendingBlockingQueue.take();
+        // stopped with stopAsync on reconnect, the queue and scheduler are kept for the next
+        // connection.
+        SendScheduler scheduler = state.sendScheduler;
+        while (isRunning() && state.isBotStillRunning()) {
+            long wait = scheduler.nanosUntilNext();
+            Message message = state.sendingBlockingQueue.poll(wait < 0 ? TimeUnit.SECONDS.toNanos(1) : wait,
+                    TimeUnit.NANOSECONDS);
             if (message instanceof PoisonMessage) {
                 log.debug("{} poisoned.", SenderService.class);
                 break;
             }
-            log.debug("Received message from sendingQueue: {}", message);
-            sendToChannel(message);
+            if (message != null) {
+                log.debug("Received message from sendingQueue: {}", message);
+                schedule(message);
+            }
+            // everything released together goes out in one write.
+            List<SendScheduler.Outgoing> ready = new ArrayList<>();
+            SendScheduler.Outgoing next;
+            while ((next = scheduler.poll()) != null) {
+                ready.add(next);
+            }
+            if (!ready.isEmpty()) {
+                sendToChannel(ready);
+            }
         }
     }
 
-    public void sendUserMessageToServer(String msg) {
+    public void sendUserMessagesToServer(List<String> lines) {
         if (Config.isTestMode()) {
-            log.info("Test mode is enabled. Did not send message: {} to {}", msg, channel);
+            log.info("Test mode is enabled. Did not send messages: {} to {}", lines, channel);
             return;
         }
-        sendToServer(msg);
+        sendToServer(lines);
     }
 
     public void sendToServer(String msg) {
-        if (!msg.endsWith("\r\n")) {
-            msg += "\r\n";
+        sendToServer(List.of(msg));
+    }
+
+    /**
+     * Sends the lines to the server with a single write and flush.
+     */
+    public void sendToServer(List<String> lines) {
+        List<String> terminated = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            terminated.add(line.endsWith("\r\n") ? line : line + "\r\n");
         }
+        long start = System.nanoTime();
         try {
-            messageConnector.sendMessage(msg);
+            messageConnector.sendMessages(terminated);
+            Metrics.SEND_WRITE_MICROS.inc(null, (System.nanoTime() - start) / 1000);
+            Metrics.SEND_BATCH_SIZE.inc(null, (long) terminated.size());
         } catch (IOException e) {
-            log.error("Error sending message {} to {}: {}", msg, channel, e.getMessage());
+            log.error("Error sending messages {} to {}: {}", terminated, channel, e.getMessage());
+            Metrics.LOST_MESSAGE_COUNTER.inc("sending", (long) terminated.size());
         }
     }
 
-    public void sendToChannel(Message message) {
+    /**
+     * Cleans the whole message once and adds it to the scheduler, split into several parts if it is
+     * too long for one chat message.
+     */
+    private void schedule(Message message) {
         String msg = message.getStringMessage();
-        msg = cleanMessage(msg);
         if (msg == null) {
             return;
         }
-        if (!msg.endsWith("\r\n")) {
-            msg += "\r\n";
+        msg = cleanMessage(msg.stripTrailing());
+        for (String part : Utils.splitMessage(msg, MAX_LENGTH, MAX_PARTS)) {
+            state.sendScheduler.add(message, part);
         }
-        String uneditedMessage = msg;
-        if (msg.startsWith("/w ")) {
-            msg = ("PRIVMSG #jtv :" + msg);
-        } else {
-            msg = ("PRIVMSG " + channel + " :" + msg);
-        }
-        log.info("Sent: {}", msg.stripTrailing());
-        sendUserMessageToServer(msg);
-        state.increaseSentMessageCount();
-        //logs sent bot messages to database.
-        state.messageLogBlockingQueue.add(
-                new LoggableMessage(Config.getTwitchUsername().toLowerCase(), Config.getTwitchUID(),
-                        uneditedMessage, true, false,
-                        "responding-to:" + message.getSender() + ",message:" + uneditedMessage, String.valueOf(Instant.now().toEpochMilli())));
-
-        Metrics.SENT_COUNTER.inc();
     }
 
-    private String cleanMessage(String msg) {
-        String cleanedMsg = msg;
-        for (String phrase : state.blacklist) {
-            cleanedMsg = escapeBlacklisted(cleanedMsg, phrase, true);
+    public void sendToChannel(List<SendScheduler.Outgoing> messages) {
+        List<String> lines = new ArrayList<>(messages.size());
+        List<LoggableMessage> sent = new ArrayList<>(messages.size());
+        for (SendScheduler.Outgoing outgoing : messages) {
+            Message message = outgoing.message();
+            String msg = outgoing.text();
+            if (!msg.endsWith("\r\n")) {
+                msg += "\r\n";
+            }
+            String uneditedMessage = msg;
+            if (msg.startsWith("/w ")) {
+                msg = ("PRIVMSG #jtv :" + msg);
+            } else {
+                msg = ("PRIVMSG " + channel + " :" + msg);
+            }
+            log.info("Sent: {}", msg.stripTrailing());
+            lines.add(msg);
+            sent.add(new LoggableMessage(Config.getTwitchUsername().toLowerCase(), Config.getTwitchUID(),
+                    uneditedMessage, true, false,
+                    "responding-to:" + message.getSender() + ",message:" + uneditedMessage, String.valueOf(Instant.now().toEpochMilli())));
+        }
+        if (lines.isEmpty()) {
+            return;
         }
-        for (String phrase : state.textBlacklist) {
-            cleanedMsg = escapeBlacklisted(cleanedMsg, phrase, false);
+        sendUserMessagesToServer(lines);
+        for (LoggableMessage message : sent) {
+            state.increaseSentMessageCount();
+            //logs sent bot messages to database.
+            state.messageLogBlockingQueue.add(message);
+            Metrics.SENT_COUNTER.inc();
         }
-        cleanedMsg = replaceWords(cleanedMsg);
+    }
 
-        if (cleanedMsg.length() >= 400) { //280
-            cleanedMsg = cleanedMsg.substring(0, 398);
-            cleanedMsg += "..";
-        }
+    private String cleanMessage(String msg) {
+        String cleanedMsg = state.blacklist.get().escape(msg);
+        cleanedMsg = replaceWords(cleanedMsg);
         cleanedMsg = cleanSymbols(cleanedMsg);
         return cleanedMsg;
     }
@@ -136,27 +189,33 @@ public class SenderService extends AbstractExecutionThreadService {
         return msg;
     }
 
-    private static final String[] bigReplacelist = {
-            "\\b[cĆćĈĉČčĊċÇçḈḉȻȼꞒꞓꟄꞔƇƈɕ]+[ÓóÒòŎŏÔôỐốỒồỖỗỔổǑǒÖöȪȫŐőÕõṌṍṎṏȬȭȮȯO͘o͘ȰȱØøǾǿǪǫǬǭŌōṒṓṐṑỎỏȌȍȎȏƠơỚớỜờỠỡỞởỢợỌọỘộO̩o̩Ò̩ò̩Ó̩ó̩ƟɵꝊꝋꝌꝍⱺＯｏ0]{2,}[nŃńǸǹŇňÑñṄṅŅņṆṇṊṋṈṉN̈n̈ƝɲŊŋꞐꞑꞤꞥᵰᶇɳȵꬻꬼИиПпＮｎ]+[sŚśṤṥŜŝŠšṦṧṠṡŞşṢṣṨṩȘșS̩s̩ꞨꞩⱾȿꟅʂᶊᵴ]*",
-            "\\b(?!(?i)night|nogra|ngl)([sŚśṤṥŜŝŠšṦṧṠṡŞşṢṣṨṩȘșS̩s̩ꞨꞩⱾȿꟅʂᶊᵴ][a4ÁáÀàĂăẮắẰằẴẵẲẳÂâẤấẦầẪẫẨẩǍǎÅåǺǻÄäǞǟÃãȦȧǠǡĄąĄ́ą́Ą̃ą̃ĀāĀ̀ā̀ẢảȀȁA̋a̋ȂȃẠạẶặẬậḀḁȺⱥꞺꞻᶏẚＡａ][nŃńǸǹŇňÑñṄṅŅņṆṇṊṋṈṉN̈n̈ƝɲŊŋꞐꞑꞤꞥᵰᶇɳȵꬻꬼИиПпＮｎ][dĎďḊḋḐḑD̦d̦ḌḍḒḓḎḏĐđÐðƉɖƊɗᵭᶁᶑȡ])*[nŃńǸǹŇňÑñṄṅŅņṆṇṊṋṈṉN̈n̈ƝɲŊŋꞐꞑꞤꞥᵰᶇɳȵꬻꬼИиПпＮｎ]+[❗‼️i⁉️Ííi̇́Ììi̇̀ĬĭÎîǏǐÏïḮḯĨĩi̇̃ĮįĮ́į̇́Į̃į̇̃ĪīĪ̀ī̀ỈỉȈȉI̋i̋ȊȋỊịꞼꞽḬḭƗɨᶖİiIıＩｉ1lĺľļḷḹl̃ḽḻłŀƚꝉⱡɫɬꞎꬷꬸꬹᶅɭȴＬｌoÓóÒòŎŏÔôỐốỒồỖỗỔổǑǒÖöȪȫŐőÕõṌṍṎṏȬȭȮȯO͘o͘ȰȱØøǾǿǪǫǬǭŌōṒṓṐṑỎỏȌȍȎȏƠơỚớỜờỠỡỞởỢợỌọỘộO̩o̩Ò̩ò̩Ó̩ó̩ƟɵꝊꝋꝌꝍⱺＯｏІіa4ÁáÀàĂăẮắẰằẴẵẲẳÂâẤấẦầẪẫẨẩǍǎÅåǺǻÄäǞǟÃãȦȧǠǡĄąĄ́ą́Ą̃ą̃ĀāĀ̀ā̀ẢảȀȁA̋a̋ȂȃẠạẶặẬậḀḁȺⱥꞺꞻᶏẚＡａ]*[\uD83C\uDD71️gǴǵĞğĜĝǦǧĠġG̃g̃ĢģḠḡǤǥꞠꞡƓɠᶃꬶＧｇqꝖꝗꝘꝙɋʠ]+(l[e3ЄєЕеÉéÈèĔĕÊêẾếỀềỄễỂểÊ̄ê̄Ê̌ê̌ĚěËëẼẽĖėĖ́ė́Ė̃ė̃ȨȩḜḝĘęĘ́ę́Ę̃ę̃ĒēḖḗḔḕẺẻȄȅE̋e̋ȆȇẸẹỆệḘḙḚḛɆɇE̩e̩È̩è̩É̩é̩ᶒⱸꬴꬳＥｅ]+t+|[e3ЄєЕеÉéÈèĔĕÊêẾếỀềỄễỂểÊ̄ê̄Ê̌ê̌ĚěËëẼẽĖėĖ́ė́Ė̃ė̃ȨȩḜḝĘęĘ́ę́Ę̃ę̃ĒēḖḗḔḕẺẻȄȅE̋e̋ȆȇẸẹỆệḘḙḚḛɆɇE̩e̩È̩è̩É̩é̩ᶒⱸꬴꬳＥｅa4ÁáÀàĂăẮắẰằẴẵẲẳÂâẤấẦầẪẫẨẩǍǎÅåǺǻÄäǞǟÃãȦȧǠǡĄąĄ́ą́Ą̃ą̃ĀāĀ̀ā̀ẢảȀȁA̋a̋ȂȃẠạẶặẬậḀḁȺⱥꞺꞻᶏẚＡａ]*[rŔŕŘřṘṙŖŗȐȑȒȓṚṛṜṝṞṟR̃r̃ɌɍꞦꞧⱤɽᵲᶉꭉ]*|n[ÓóÒòŎŏÔôỐốỒồỖỗỔổǑǒÖöȪȫŐőÕõṌṍṎṏȬȭȮȯO͘o͘ȰȱØøǾǿǪǫǬǭŌōṒṓṐṑỎỏȌȍȎȏƠơỚớỜờỠỡỞởỢợỌọỘộO̩o̩Ò̩ò̩Ó̩ó̩ƟɵꝊꝋꝌꝍⱺＯｏ0]+[gǴǵĞğĜĝǦǧĠġG̃g̃ĢģḠḡǤǥꞠꞡƓɠᶃꬶＧｇqꝖꝗꝘꝙɋʠ]+|[a4ÁáÀàĂăẮắẰằẴẵẲẳÂâẤấẦầẪẫẨẩǍǎÅåǺǻÄäǞǟÃãȦȧǠǡĄąĄ́ą́Ą̃ą̃ĀāĀ̀ā̀ẢảȀȁA̋a̋ȂȃẠạẶặẬậḀḁȺⱥꞺꞻᶏẚＡａ]*)*[sŚśṤṥŜŝŠšṦṧṠṡŞşṢṣṨṩȘșS̩s̩ꞨꞩⱾȿꟅʂᶊᵴ]*",
-            "[fḞḟƑƒꞘꞙᵮᶂ]+[aÁáÀàĂăẮắẰằẴẵẲẳÂâẤấẦầẪẫẨẩǍǎÅåǺǻÄäǞǟÃãȦȧǠǡĄąĄ́ą́Ą̃ą̃ĀāĀ̀ā̀ẢảȀȁA̋a̋ȂȃẠạẶặẬậḀḁȺⱥꞺꞻᶏẚＡａ4@]+[gǴǵĞğĜĝǦǧĠġG̃g̃ĢģḠḡǤǥꞠꞡƓɠᶃꬶＧｇqꝖꝗꝘꝙɋʠ]+([ÓóÒòŎŏÔôỐốỒồỖỗỔổǑǒÖöȪȫŐőÕõṌṍṎṏȬȭȮȯO͘o͘ȰȱØøǾǿǪǫǬǭŌōṒṓṐṑỎỏȌȍȎȏƠơỚớỜờỠỡỞởỢợỌọỘộO̩o̩Ò̩ò̩Ó̩ó̩ƟɵꝊꝋꝌꝍⱺＯｏ0e3ЄєЕеÉéÈèĔĕÊêẾếỀềỄễỂểÊ̄ê̄Ê̌ê̌ĚěËëẼẽĖėĖ́ė́Ė̃ė̃ȨȩḜḝĘęĘ́ę́Ę̃ę̃ĒēḖḗḔḕẺẻȄȅE̋e̋ȆȇẸẹỆệḘḙḚḛɆɇE̩e̩È̩è̩É̩é̩ᶒⱸꬴꬳＥｅiÍíi̇́Ììi̇̀ĬĭÎîǏǐÏïḮḯĨĩi̇̃ĮįĮ́į̇́Į̃į̇̃ĪīĪ̀ī̀ỈỉȈȉI̋i̋ȊȋỊịꞼꞽḬḭƗɨᶖİiIıＩｉ1lĺľļḷḹl̃ḽḻłŀƚꝉⱡɫɬꞎꬷꬸꬹᶅɭȴＬｌ]+[tŤťṪṫŢţṬṭȚțṰṱṮṯŦŧȾⱦƬƭƮʈT̈ẗᵵƫȶ]+([rŔŕŘřṘṙŖŗȐȑȒȓṚṛṜṝṞṟR̃r̃ɌɍꞦꞧⱤɽᵲᶉꭉ]+[yÝýỲỳŶŷY̊ẙŸÿỸỹẎẏȲȳỶỷỴỵɎɏƳƴỾỿ]+|[rŔŕŘřṘṙŖŗȐȑȒȓṚṛṜṝṞṟR̃r̃ɌɍꞦꞧⱤɽᵲᶉꭉ]+[❗❕‼️i⁉️Ííi̇́Ììi̇̀ĬĭÎîǏǐÏïḮḯĨĩi̇̃ĮįĮ́į̇́Į̃į̇̃ĪīĪ̀ī̀ỈỉȈȉI̋i̋ȊȋỊịꞼꞽḬḭƗɨᶖİiIıＩｉ1lĺľļḷḹl̃ḽḻłŀƚꝉⱡɫɬꞎꬷꬸꬹᶅɭȴＬｌ]+[e3ЄєЕеÉéÈèĔĕÊêẾếỀềỄễỂểÊ̄ê̄Ê̌ê̌ĚěËëẼẽĖėĖ́ė́Ė̃ė̃ȨȩḜḝĘęĘ́ę́Ę̃ę̃ĒēḖḗḔḕẺẻȄȅE̋e̋ȆȇẸẹỆệḘḙḚḛɆɇE̩e̩È̩è̩É̩é̩ᶒⱸꬴꬳＥｅ]+)?)?[sŚśṤṥŜŝŠšṦṧṠṡŞşṢṣṨṩȘșS̩s̩ꞨꞩⱾȿꟅʂᶊᵴ]*",
-            "\\b[tŤťṪṫŢţṬṭȚțṰṱṮṯŦŧȾⱦƬƭƮʈT̈ẗᵵƫȶ]+[rŔŕŘřṘṙŖŗȐȑȒȓṚṛṜṝṞṟR̃r̃ɌɍꞦꞧⱤɽᵲᶉꭉ]+[aÁáÀàĂăẮắẰằẴẵẲẳÂâẤấẦầẪẫẨẩǍǎÅåǺǻÄäǞǟÃãȦȧǠǡĄąĄ́ą́Ą̃ą̃ĀāĀ̀ā̀ẢảȀȁA̋a̋ȂȃẠạẶặẬậḀḁȺⱥꞺꞻᶏẚＡａ4]+[nŃńǸǹŇňÑñṄṅŅņṆṇṊṋṈṉN̈n̈ƝɲŊŋꞐꞑꞤꞥᵰᶇɳȵꬻꬼИиПпＮｎ]+([❗❕‼️i⁉️Ííi̇́Ììi̇̀ĬĭÎîǏǐÏïḮḯĨĩi̇̃ĮįĮ́į̇́Į̃į̇̃ĪīĪ̀ī̀ỈỉȈȉI̋i̋ȊȋỊịꞼꞽḬḭƗɨᶖİiIıＩｉ1lĺľļḷḹl̃ḽḻłŀƚꝉⱡɫɬꞎꬷꬸꬹᶅɭȴＬｌ]+[e3ЄєЕеÉéÈèĔĕÊêẾếỀềỄễỂểÊ̄ê̄Ê̌ê̌ĚěËëẼẽĖėĖ́ė́Ė̃ė̃ȨȩḜḝĘęĘ́ę́Ę̃ę̃ĒēḖḗḔḕẺẻȄȅE̋e̋ȆȇẸẹỆệḘḙḚḛɆɇE̩e̩È̩è̩É̩é̩ᶒⱸꬴꬳＥｅ]+|[yÝýỲỳŶŷY̊ẙŸÿỸỹẎẏȲȳỶỷỴỵɎɏƳƴỾỿ]+|[e3ЄєЕеÉéÈèĔĕÊêẾếỀềỄễỂểÊ̄ê̄Ê̌ê̌ĚěËëẼẽĖėĖ́ė́Ė̃ė̃ȨȩḜḝĘęĘ́ę́Ę̃ę̃ĒēḖḗḔḕẺẻȄȅE̋e̋ȆȇẸẹỆệḘḙḚḛɆɇE̩e̩È̩è̩É̩é̩ᶒⱸꬴꬳＥｅ]+[rŔŕŘřṘṙŖŗȐȑȒȓṚṛṜṝṞṟR̃r̃ɌɍꞦꞧⱤɽᵲᶉꭉ]+)[sŚśṤṥŜŝŠšṦṧṠṡŞşṢṣṨṩȘșS̩s̩ꞨꞩⱾȿꟅʂᶊᵴ]*",
-            "\\b[kḰḱǨǩĶķḲḳḴḵƘƙⱩⱪᶄꝀꝁꝂꝃꝄꝅꞢꞣ]+[❗❕‼️i⁉️Ííi̇́Ììi̇̀ĬĭÎîǏǐÏïḮḯĨĩi̇̃ĮįĮ́į̇́Į̃į̇̃ĪīĪ̀ī̀ỈỉȈȉI̋i̋ȊȋỊịꞼꞽḬḭƗɨᶖİiIıＩｉ1lĺľļḷḹl̃ḽḻłŀƚꝉⱡɫɬꞎꬷꬸꬹᶅɭȴＬｌyÝýỲỳŶŷY̊ẙŸÿỸỹẎẏȲȳỶỷỴỵɎɏƳƴỾỿ]+[kḰḱǨǩĶķḲḳḴḵƘƙⱩⱪᶄꝀꝁꝂꝃꝄꝅꞢꞣ]+[e3ЄєЕеÉéÈèĔĕÊêẾếỀềỄễỂểÊ̄ê̄Ê̌ê̌ĚěËëẼẽĖėĖ́ė́Ė̃ė̃ȨȩḜḝĘęĘ́ę́Ę̃ę̃ĒēḖḗḔḕẺẻȄȅE̋e̋ȆȇẸẹỆệḘḙḚḛɆɇE̩e̩È̩è̩É̩é̩ᶒⱸꬴꬳＥｅ]([rŔŕŘřṘṙŖŗȐȑȒȓṚṛṜṝṞṟR̃r̃ɌɍꞦꞧⱤɽᵲᶉꭉ]+[yÝýỲỳŶŷY̊ẙŸÿỸỹẎẏȲȳỶỷỴỵɎɏƳƴỾỿ]+|[rŔŕŘřṘṙŖŗȐȑȒȓṚṛṜṝṞṟR̃r̃ɌɍꞦꞧⱤɽᵲᶉꭉ]+[‼️❗❕i⁉️Ííi̇́Ììi̇̀ĬĭÎîǏǐÏïḮḯĨĩi̇̃ĮįĮ́į̇́Į̃į̇̃ĪīĪ̀ī̀ỈỉȈȉI̋i̋ȊȋỊịꞼꞽḬḭƗɨᶖİiIıＩｉ1lĺľļḷḹl̃ḽḻłŀƚꝉⱡɫɬꞎꬷꬸꬹᶅɭȴＬｌ]+[e3ЄєЕеÉéÈèĔĕÊêẾếỀềỄễỂểÊ̄ê̄Ê̌ê̌ĚěËëẼẽĖėĖ́ė́Ė̃ė̃ȨȩḜḝĘęĘ́ę́Ę̃ę̃ĒēḖḗḔḕẺẻȄȅE̋e̋ȆȇẸẹỆệḘḙḚḛɆɇE̩e̩È̩è̩É̩é̩ᶒⱸꬴꬳＥｅ]+)?[sŚśṤṥŜŝŠšṦṧṠṡŞşṢṣṨṩȘșS̩s̩ꞨꞩⱾȿꟅʂᶊᵴ]*",
+    /**
+     * Matched against the message folded with {@link chatbot.utils.Confusables}, which maps look-alike
+     * characters and diacritics to the plain letters used here.
+     */
+    private static final SkeletonPattern[] bigReplacelist = {
+            SkeletonPattern.compile("\\bc+oo+n+s*"),
+            SkeletonPattern.compile("\\b(sand)*n+[ilao]*g+(le+t+|[ea]*r*|no+g+|a*)*s*")
+                    .unlessStartsWith("night", "nogra", "ngl"),
+            SkeletonPattern.compile("f+a+g+([oeil]+t+(r+y+|r+[il]+e+)?)?s*"),
+            SkeletonPattern.compile("\\bt+r+a+n+([il]+e+|y+|e+r+)s*"),
+            SkeletonPattern.compile("\\bk+[ily]+k+e(r+y+|r+[il]+e+)?s*"),
     };
 
     private String replaceWords(String msg) {
         String cleanedMessage = msg;
-        for (String blacklisted : bigReplacelist) {
+        for (SkeletonPattern blacklisted : bigReplacelist) {
             String oldMessage = cleanedMessage;
-            cleanedMessage = cleanedMessage.replaceAll(blacklisted, "BADWORD");
+            cleanedMessage = blacklisted.replaceAll(cleanedMessage, "BADWORD");
             if (!oldMessage.equals(cleanedMessage)) {
-                log.info("blacklist match '{}' for message '{}'", blacklisted, msg);
+                log.info("blacklist match '{}' for message '{}'", blacklisted.pattern(), msg);
                 Metrics.BLACKLIST_COUNTER.inc("bigList");
             }
         }
-        if (!state.replaceList.get().isEmpty()) {
+        Pattern replaceList = state.replaceList.get();
+        if (replaceList != null) {
             String oldMessage = cleanedMessage;
-            cleanedMessage = cleanedMessage.replaceAll("(?i)" + state.replaceList.get(), "BANME");
+            cleanedMessage = replaceList.matcher(cleanedMessage).replaceAll("BANME");
             if (!oldMessage.equals(cleanedMessage)) {
                 Metrics.BLACKLIST_COUNTER.inc("replaceList");
             }
@@ -165,16 +224,17 @@ public class SenderService extends AbstractExecutionThreadService {
         return cleanedMessage;
     }
 
-    private String escapeBlacklisted(String msg, String phrase, boolean onlyWord) {
-        String replacedMsg = msg + " ";
-        String regex;
-        if (onlyWord) {
-            regex = "\\b(?i)" + phrase + "\\b";
-        } else {
-            regex = "(?i)" + phrase;
-        }
-        replacedMsg = replacedMsg.replaceAll(regex, Utils.addZws(phrase));
-        return replacedMsg.stripTrailing();
+    /**
+     * @return lines that log in to the Twitch IRC server and join the channel.
+     */
+    public static List<String> handshake() {
+        return List.of(
+                "PASS " + Config.getTwitchOauth() + "\r\n",
+                "NICK " + Config.getTwitchUsername() + "\r\n",
+                "USER nambot\r\n",
+                "JOIN " + Config.getChannelToJoin() + "\r\n",
+                "CAP REQ :twitch.tv/membership\r\n",
+                "CAP REQ :twitch.tv/tags twitch.tv/commands\r\n");
     }
 
     /**
@@ -184,12 +244,7 @@ public class SenderService extends AbstractExecutionThreadService {
      */
     public void connect() throws IOException {
         log.info("Attempting to connect.");
-        sendToServer("PASS " + Config.getTwitchOauth() + "\r\n");
-        sendToServer("NICK " + Config.getTwitchUsername() + "\r\n");
-        sendToServer("USER nambot\r\n");
-        sendToServer("JOIN " + channel + "\r\n");
-        sendToServer("CAP REQ :twitch.tv/membership\r\n");
-        sendToServer("CAP REQ :twitch.tv/tags twitch.tv/commands\r\n");
+        sendToServer(handshake());
         log.info("Credentials sent.");
 
         state.lastPing.set(Instant.now());
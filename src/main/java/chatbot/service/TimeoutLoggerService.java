@@ -6,6 +6,8 @@ import chatbot.message.PoisonMessage;
 import chatbot.message.TimeoutMessage;
 import chatbot.singleton.SharedState;
 import com.google.common.util.concurrent.AbstractExecutionThreadService;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -13,8 +15,10 @@ import org.apache.logging.log4j.Logger;
 public class TimeoutLoggerService extends AbstractExecutionThreadService {
 
   private final static Logger log = LogManager.getLogger(TimeoutLoggerService.class);
+  private static final int BATCH_SIZE = 64;
   private final Database databaseHandler;
   private final SharedState state = SharedState.getInstance();
+  private long lastPrune = System.nanoTime();
 
   public TimeoutLoggerService(Database database) {
     this.databaseHandler = database;
@@ -32,13 +36,23 @@ public class TimeoutLoggerService extends AbstractExecutionThreadService {
 
   @Override
   public void run() throws InterruptedException {
+    List<Message> batch = new ArrayList<>(BATCH_SIZE);
 
     while (state.isBotStillRunning()) {
-      Message message = state.timeoutBlockingQueue.poll(3, TimeUnit.SECONDS);
-      if (message != null) {
+      long wait = state.timeouts.nanosUntilNextExpiry(System.nanoTime());
+      if (wait < 0 || wait > TimeUnit.SECONDS.toNanos(3)) {
+        wait = TimeUnit.SECONDS.toNanos(3);
+      }
+      Message first = state.timeoutBlockingQueue.poll(wait, TimeUnit.NANOSECONDS);
+      batch.clear();
+      if (first != null) {
+        batch.add(first);
+        state.timeoutBlockingQueue.drainTo(batch, BATCH_SIZE - 1);
+      }
+      for (Message message : batch) {
         if (message instanceof PoisonMessage) {
           log.debug("{} poisoned.", TimeoutLoggerService.class);
-          break;
+          return;
         }
         if (!(message instanceof TimeoutMessage timeout)) {
           log.error("Unexpected message type in timeout queue {}", message);
@@ -52,30 +66,56 @@ public class TimeoutLoggerService extends AbstractExecutionThreadService {
 
         // adding to timeout list is only active while the stream is offline.
         if (timeout.getLength() > 0 && !state.online.get() && !active) {
-          state.timeouts.add(timeout);
+          state.timeouts.schedule(timeout);
         }
       }
-      checkForExpiredTimeouts();
+      state.timeouts.advance(System.nanoTime(), this::timeoutExpired);
+      pruneLastSpoke();
     }
   }
 
-  private void checkForExpiredTimeouts() {
-    for (TimeoutMessage timeout : state.timeouts) {
-      if (timeout.hasExpired()) {
-        if (state.timeouts.remove(timeout) && timeout.getLength() > 0) {
-          databaseHandler.addNamListTimeout(timeout);
-        }
-      }
+  private void timeoutExpired(TimeoutMessage timeout) {
+    if (state.hasSpokenSince(timeout.getUserid(), timeout.getStartNanos())) {
+      // the user was untimeouted or their timeout was shortened.
+      log.info("{} spoke during their {}s timeout, not adding it.", timeout.getUsername(),
+          timeout.getLength());
+      return;
     }
+    databaseHandler.addNamListTimeout(timeout);
   }
 
   private boolean isTimeoutForUserAlreadyActive(TimeoutMessage timeout) {
-    for (TimeoutMessage tempTimeout : state.timeouts) {
-      if (tempTimeout.getUsername().equalsIgnoreCase(timeout.getUsername())) {
-        tempTimeout.resetTimeout(timeout.getLength());
-        return true;
-      }
+    TimeoutMessage tempTimeout = state.timeouts.get(timeout);
+    if (tempTimeout == null) {
+      return false;
     }
-    return false;
+    if (state.hasSpokenSince(tempTimeout.getUserid(), tempTimeout.getStartNanos())) {
+      state.timeouts.cancel(tempTimeout);
+      return false;
+    }
+    tempTimeout.resetTimeout(timeout.getLength());
+    state.timeouts.reschedule(tempTimeout);
+    return true;
+  }
+
+  /**
+   * Only messages sent after a tracked timeout started matter, so older entries are removed once a
+   * minute to keep the table from growing with every chatter.
+   */
+  private void pruneLastSpoke() {
+    long now = System.nanoTime();
+    if (now - lastPrune < TimeUnit.MINUTES.toNanos(1)) {
+      return;
+    }
+    lastPrune = now;
+    state.timeouts.removeIf(
+        timeout -> state.hasSpokenSince(timeout.getUserid(), timeout.getStartNanos()));
+    long[] cutoff = {now - TimeUnit.MINUTES.toNanos(1)};
+    state.timeouts.forEach(timeout -> {
+      if (timeout.getStartNanos() - cutoff[0] < 0) {
+        cutoff[0] = timeout.getStartNanos();
+      }
+    });
+    state.lastSpoke.values().removeIf(spoke -> spoke - cutoff[0] < 0);
   }
 }
@@ -2,11 +2,15 @@ package chatbot.singleton;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
 
 import chatbot.enums.ConfigKey;
+import chatbot.enums.HotStandby;
+import chatbot.enums.WaitStrategy;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -137,4 +141,157 @@ public class Config {
     public static String getInfluxAddress() {
         return configMap.get(NAM_INFLUX_ADDRESS);
     }
+
+    public static boolean isNioConnector() {
+        return Boolean.parseBoolean(configMap.get(NAM_NIO_CONNECTOR));
+    }
+
+    /**
+     * @param key             one of the queue capacity keys.
+     * @param defaultCapacity used when the key is not set or not a positive number.
+     */
+    public static int getQueueCapacity(ConfigKey key, int defaultCapacity) {
+        return getPositiveInt(key, defaultCapacity);
+    }
+
+    public static int getSearchCacheSize() {
+        return getPositiveInt(NAM_SEARCH_CACHE_SIZE, 1000);
+    }
+
+    /**
+     * @return how long search results are cached for, in seconds.
+     */
+    public static int getSearchCacheTtl() {
+        return getPositiveInt(NAM_SEARCH_CACHE_TTL, 600);
+    }
+
+    public static Path getKnownUsersSnapshot() {
+        String path = configMap.get(NAM_KNOWN_USERS_SNAPSHOT);
+        return Path.of(path == null ? "data/known-users.snapshot" : path);
+    }
+
+    public static int getKnownUsersExpected() {
+        return getPositiveInt(NAM_KNOWN_USERS_EXPECTED, 2_000_000);
+    }
+
+    /**
+     * @return how many users' stats are kept in memory for a few seconds after being looked up.
+     */
+    public static int getUserStatsCacheSize() {
+        return getPositiveInt(NAM_USER_STATS_CACHE_SIZE, 1000);
+    }
+
+    /**
+     * @return how long a message may wait to be sent to chat before it is dropped.
+     */
+    public static Duration getSendMaxAge() {
+        return Duration.ofSeconds(getPositiveInt(NAM_SEND_MAX_AGE, 30));
+    }
+
+    /**
+     * @return most messages written to a database in one transaction.
+     */
+    public static int getDbBatchSize() {
+        return getPositiveInt(NAM_DB_BATCH_SIZE, 500);
+    }
+
+    /**
+     * @return how long to wait for more messages to fill a database batch, in milliseconds.
+     */
+    public static Duration getDbBatchDelay() {
+        return Duration.ofMillis(getPositiveInt(NAM_DB_BATCH_DELAY, 50));
+    }
+
+    /**
+     * @return most messages sent to solr in one update.
+     */
+    public static int getSolrBatchSize() {
+        return getPositiveInt(NAM_SOLR_BATCH_SIZE, 500);
+    }
+
+    /**
+     * @return how long to wait for more messages to fill a solr update, in milliseconds.
+     */
+    public static Duration getSolrBatchDelay() {
+        return Duration.ofMillis(getPositiveInt(NAM_SOLR_BATCH_DELAY, 2000));
+    }
+
+    /**
+     * @return where messages are kept until every database sink has written them.
+     */
+    public static Path getSpoolDir() {
+        String path = configMap.get(NAM_SPOOL_DIR);
+        return Path.of(path == null ? "data/spool" : path);
+    }
+
+    /**
+     * @return size of a spool segment file, in bytes.
+     */
+    public static int getSpoolSegmentSize() {
+        return getPositiveInt(NAM_SPOOL_SEGMENT_SIZE, 64) * 1024 * 1024;
+    }
+
+    /**
+     * @return size the spool may grow to while a sink is behind, in bytes.
+     */
+    public static long getSpoolMaxSize() {
+        return getPositiveInt(NAM_SPOOL_MAX_SIZE, 4096) * 1024L * 1024L;
+    }
+
+    /**
+     * @return how often the spool is forced to disk, in milliseconds.
+     */
+    public static Duration getSpoolSyncInterval() {
+        return Duration.ofMillis(getPositiveInt(NAM_SPOOL_SYNC_INTERVAL, 1000));
+    }
+
+    /**
+     * @return where messages the database sinks gave up on are written.
+     */
+    public static Path getDeadLetterFile() {
+        String path = configMap.get(NAM_DEAD_LETTER_FILE);
+        return Path.of(path == null ? "data/dead-letters.tsv" : path);
+    }
+
+    private static int getPositiveInt(ConfigKey key, int defaultValue) {
+        String configured = configMap.get(key);
+        if (configured == null) {
+            return defaultValue;
+        }
+        try {
+            int value = Integer.parseInt(configured.trim());
+            if (value > 0) {
+                return value;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        log.error("Invalid {} {}, using {}", key, configured, defaultValue);
+        return defaultValue;
+    }
+
+    public static HotStandby getHotStandby() {
+        String hotStandby = configMap.get(NAM_HOT_STANDBY);
+        if (hotStandby == null) {
+            return HotStandby.OFF;
+        }
+        try {
+            return HotStandby.valueOf(hotStandby.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            log.error("Unknown hot standby mode {}, using {}", hotStandby, HotStandby.OFF);
+            return HotStandby.OFF;
+        }
+    }
+
+    public static WaitStrategy getQueueWaitStrategy() {
+        String strategy = configMap.get(NAM_QUEUE_WAIT_STRATEGY);
+        if (strategy == null) {
+            return WaitStrategy.BLOCKING;
+        }
+        try {
+            return WaitStrategy.valueOf(strategy.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            log.error("Unknown queue wait strategy {}, using {}", strategy, WaitStrategy.BLOCKING);
+            return WaitStrategy.BLOCKING;
+        }
+    }
 }
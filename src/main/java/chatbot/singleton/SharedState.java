@@ -1,23 +1,31 @@
 package chatbot.singleton;
 
 import chatbot.ConsoleMain;
+import chatbot.Metrics;
+import chatbot.enums.OverflowPolicy;
 import chatbot.message.Message;
 import chatbot.message.PoisonMessage;
-import chatbot.message.TimeoutMessage;
+import chatbot.utils.BlacklistMatcher;
+import chatbot.utils.MessageQueue;
+import chatbot.utils.SendScheduler;
+import chatbot.utils.TimeoutWheel;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.time.Instant;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+
+import static chatbot.enums.ConfigKey.*;
 
 public class SharedState {
 
@@ -30,30 +38,76 @@ public class SharedState {
     private final AtomicInteger sentMessageCount = new AtomicInteger(0);
     private final AtomicInteger timeoutCount = new AtomicInteger(0);
     private final AtomicInteger permabanCount = new AtomicInteger(0);
+    /**
+     * System.nanoTime() of when the connection was closed, 0 once a message has been received on
+     * the next one.
+     */
+    private final AtomicLong disconnectedAt = new AtomicLong();
     public AtomicReference<Instant> lastPing = new AtomicReference<>(Instant.EPOCH);
     public AtomicReference<Instant> lastMessageTime = new AtomicReference<>(Instant.EPOCH);
     public AtomicBoolean online = new AtomicBoolean();
-    public CopyOnWriteArrayList<String> blacklist = new CopyOnWriteArrayList<>();
-    public CopyOnWriteArrayList<String> textBlacklist = new CopyOnWriteArrayList<>();
-    public AtomicReference<String> replaceList = new AtomicReference<>();
+    /**
+     * Built once per refresh, swapped as a whole so senders never see a partially updated list.
+     */
+    public final AtomicReference<BlacklistMatcher> blacklist = new AtomicReference<>(BlacklistMatcher.EMPTY);
+    /**
+     * Case-insensitive alternation of the replace list, null if it is empty.
+     */
+    public final AtomicReference<Pattern> replaceList = new AtomicReference<>();
     public Set<String> disabledUsers = ConcurrentHashMap.newKeySet();
-    public final LinkedBlockingQueue<TimeoutMessage> timeouts = new LinkedBlockingQueue<>();
-    public HashMap<String, List<String>> alts = new HashMap<>();
-    public HashMap<String, String> mains = new HashMap<>();
-    public BlockingQueue<Message> commandHandlerBlockingQueue = new LinkedBlockingQueue<>();
+    /**
+     * Timeouts tracked while the stream is offline, added to the timeout list when they expire.
+     */
+    public final TimeoutWheel timeouts = new TimeoutWheel();
+    /**
+     * System.nanoTime() of the latest chat message for each user-id. Used instead of queueing a
+     * zero-length timeout for every message to know if a tracked timeout was lifted early.
+     */
+    public final ConcurrentHashMap<String, Long> lastSpoke = new ConcurrentHashMap<>();
+    /**
+     * Replaced as a whole when refreshed, commands reading these run concurrently.
+     */
+    public volatile Map<String, List<String>> alts = new ConcurrentHashMap<>();
+    public volatile Map<String, String> mains = new ConcurrentHashMap<>();
+    /**
+     * Commands are only useful while they are recent, the oldest ones are dropped when full.
+     */
+    public BlockingQueue<Message> commandHandlerBlockingQueue = newQueue("command",
+            Config.getQueueCapacity(NAM_COMMAND_QUEUE_CAPACITY, 256), OverflowPolicy.DROP_OLDEST);
+    /**
+     * Whether the bot is a moderator in the channel, from the latest USERSTATE.
+     */
+    public final AtomicBoolean moderator = new AtomicBoolean();
+    /**
+     * Messages taken from the sending queue waiting for the rate limit. Kept here so they survive
+     * a reconnect like the queue.
+     */
+    public final SendScheduler sendScheduler = new SendScheduler(Config.getSendMaxAge(), moderator::get);
     /**
      * Queue for sending messages to chat.
      */
-    public BlockingQueue<Message> sendingBlockingQueue = new LinkedBlockingQueue<>();
+    public BlockingQueue<Message> sendingBlockingQueue = newQueue("sending",
+            Config.getQueueCapacity(NAM_SENDING_QUEUE_CAPACITY, 256), OverflowPolicy.BLOCK);
+    /**
+     * Queue for database logging. Only waits for the append to the log spool, which keeps up with
+     * slow databases, so it drops instead of making the IRC listener wait.
+     */
+    public BlockingQueue<Message> messageLogBlockingQueue = newQueue("messagelog",
+            Config.getQueueCapacity(NAM_MESSAGE_LOG_QUEUE_CAPACITY, 1 << 16), OverflowPolicy.DROP_OLDEST);
     /**
-     * Queue for database logging.
+     * Filled by the IRC listener, which must not wait on it or it stops answering PINGs. Dropped
+     * timeouts are counted in the queue metrics.
      */
-    public BlockingQueue<Message> messageLogBlockingQueue = new LinkedBlockingQueue<>();
-    public BlockingQueue<Message> timeoutBlockingQueue = new LinkedBlockingQueue<>();
+    public BlockingQueue<Message> timeoutBlockingQueue = newQueue("timeout",
+            Config.getQueueCapacity(NAM_TIMEOUT_QUEUE_CAPACITY, 4096), OverflowPolicy.DROP_OLDEST);
 
     private SharedState() {
     }
 
+    private static BlockingQueue<Message> newQueue(String name, int capacity, OverflowPolicy policy) {
+        return new MessageQueue(name, capacity, policy, Config.getQueueWaitStrategy());
+    }
+
     public static SharedState getInstance() {
         if (instance == null) {
             instance = new SharedState();
@@ -96,9 +150,27 @@ public class SharedState {
     public void setBlacklist(List<String> blacklist, List<String> textBlacklist,
             String replaceList)
     {
-        this.replaceList.set(replaceList);
-        this.blacklist.addAll(blacklist);
-        this.textBlacklist.addAll(textBlacklist);
+        this.replaceList.set(replaceList.isEmpty() ? null : Pattern.compile("(?i)" + replaceList));
+        this.blacklist.set(BlacklistMatcher.of(blacklist, textBlacklist));
+    }
+
+    public void recordSpoke(String userid) {
+        if (userid != null) {
+            lastSpoke.put(userid, System.nanoTime());
+        }
+    }
+
+    /**
+     * @param userid user to check.
+     * @param nanos  System.nanoTime() to compare against.
+     * @return true if the user has sent a message after the given time.
+     */
+    public boolean hasSpokenSince(String userid, long nanos) {
+        if (userid == null) {
+            return false;
+        }
+        Long spoke = lastSpoke.get(userid);
+        return spoke != null && spoke - nanos > 0;
     }
 
     public void setDisabledUsers(Set<String> disabledUsers) {
@@ -107,11 +179,9 @@ public class SharedState {
 
     public String getAltsSolrString(String username) {
         username = username.toLowerCase();
-        if (!mains.containsKey(username)) {
-            return "username:" + username.toLowerCase();
-        }
+        Map<String, List<String>> alts = this.alts;
         String main = mains.get(username);
-        if (main == null) {
+        if (main == null || !alts.containsKey(main)) {
             return "username:" + username.toLowerCase();
         }
         StringBuilder sb = new StringBuilder();
@@ -155,16 +225,53 @@ public class SharedState {
 
     public void poisonQueues() {
         log.info("Poisoning queues.");
-        commandHandlerBlockingQueue.add(new PoisonMessage());
-        sendingBlockingQueue.add(new PoisonMessage());
-        messageLogBlockingQueue.add(new PoisonMessage());
-        timeoutBlockingQueue.add(new PoisonMessage());
+        poison(commandHandlerBlockingQueue);
+        poison(sendingBlockingQueue);
+        poison(messageLogBlockingQueue);
+        poison(timeoutBlockingQueue);
     }
 
-    public void clearQueues() {
-        commandHandlerBlockingQueue.clear();
-        sendingBlockingQueue.clear();
-        messageLogBlockingQueue.clear();
-        timeoutBlockingQueue.clear();
+    /**
+     * Adds a poison message after everything already queued. Consumers stop at it, so if the queue
+     * stays full its contents are dropped to make room for it.
+     */
+    private void poison(BlockingQueue<Message> queue) {
+        try {
+            if (queue.offer(new PoisonMessage(), 5, TimeUnit.SECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.warn("Queue still full, dropping {} messages to poison it.", queue.size());
+        Metrics.LOST_MESSAGE_COUNTER.inc("shutdown", (long) queue.size());
+        queue.clear();
+        queue.offer(new PoisonMessage());
+    }
+
+    /**
+     * Called when the IRC connection is closed. Queued messages are kept for the next connection.
+     */
+    public void disconnected() {
+        if (disconnectedAt.compareAndSet(0, System.nanoTime())) {
+            log.info("Disconnected with {} commands, {} messages to send and {} messages to log queued.",
+                    commandHandlerBlockingQueue.size(), sendingBlockingQueue.size(),
+                    messageLogBlockingQueue.size());
+        }
+    }
+
+    /**
+     * Called for every chat message, records how long it took to get one after a reconnect.
+     */
+    public void messageReceived() {
+        if (disconnectedAt.get() == 0) {
+            return;
+        }
+        long disconnected = disconnectedAt.getAndSet(0);
+        if (disconnected != 0) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - disconnected);
+            log.info("First message received {}ms after disconnecting.", millis);
+            Metrics.RECONNECT_TIME.inc(null, millis);
+        }
     }
 }
@@ -0,0 +1,218 @@
+package chatbot.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+
+/**
+ * Finds blacklisted phrases in a message in a single pass with an Aho-Corasick automaton built once
+ * from the blacklist. Matching ignores case. Word phrases only match between word boundaries like
+ * {@code \b} in a regex, text phrases match anywhere.
+ */
+public class BlacklistMatcher {
+
+    public static final BlacklistMatcher EMPTY = new BlacklistMatcher(List.of(), List.of());
+
+    private final char[][] keys;
+    private final int[][] next;
+    private final int[] fail;
+    /**
+     * Lengths of the phrases ending at each node including the ones reached through fail links,
+     * negative for word phrases.
+     */
+    private final int[][] outputs;
+
+    private BlacklistMatcher(Collection<String> words, Collection<String> texts) {
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<List<Integer>> out = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        out.add(new ArrayList<>());
+        for (String word : words) {
+            insert(trie, out, word, true);
+        }
+        for (String text : texts) {
+            insert(trie, out, text, false);
+        }
+
+        int size = trie.size();
+        keys = new char[size][];
+        next = new int[size][];
+        fail = new int[size];
+        outputs = new int[size][];
+        for (int node = 0; node < size; node++) {
+            TreeMap<Character, Integer> children = trie.get(node);
+            keys[node] = new char[children.size()];
+            next[node] = new int[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> child : children.entrySet()) {
+                keys[node][i] = child.getKey();
+                next[node][i] = child.getValue();
+                i++;
+            }
+        }
+
+        // breadth first so the fail target of a node is always finished before the node.
+        Queue<Integer> queue = new ArrayDeque<>();
+        outputs[0] = new int[0];
+        for (int child : next[0]) {
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            List<Integer> lengths = out.get(node);
+            int[] inherited = outputs[fail[node]];
+            int[] merged = new int[lengths.size() + inherited.length];
+            for (int i = 0; i < lengths.size(); i++) {
+                merged[i] = lengths.get(i);
+            }
+            System.arraycopy(inherited, 0, merged, lengths.size(), inherited.length);
+            outputs[node] = merged;
+            for (int i = 0; i < keys[node].length; i++) {
+                int child = next[node][i];
+                fail[child] = node == 0 ? 0 : step(fail[node], keys[node][i]);
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * @param words phrases that only match as whole words.
+     * @param texts phrases that match anywhere, also inside words.
+     */
+    public static BlacklistMatcher of(Collection<String> words, Collection<String> texts) {
+        if (words.isEmpty() && texts.isEmpty()) {
+            return EMPTY;
+        }
+        return new BlacklistMatcher(words, texts);
+    }
+
+    private static void insert(List<TreeMap<Character, Integer>> trie, List<List<Integer>> out,
+            String phrase, boolean word)
+    {
+        if (phrase == null || phrase.isEmpty()) {
+            return;
+        }
+        int node = 0;
+        for (int i = 0; i < phrase.length(); i++) {
+            char c = fold(phrase.charAt(i));
+            Integer child = trie.get(node).get(c);
+            if (child == null) {
+                child = trie.size();
+                trie.add(new TreeMap<>());
+                out.add(new ArrayList<>());
+                trie.get(node).put(c, child);
+            }
+            node = child;
+        }
+        int length = word ? -phrase.length() : phrase.length();
+        if (!out.get(node).contains(length)) {
+            out.get(node).add(length);
+        }
+    }
+
+    /**
+     * Follows fail links from the given node until there is a transition for c.
+     */
+    private int step(int node, char c) {
+        while (true) {
+            int child = child(node, c);
+            if (child >= 0) {
+                return child;
+            }
+            if (node == 0) {
+                return 0;
+            }
+            node = fail[node];
+        }
+    }
+
+    private int child(int node, char c) {
+        char[] k = keys[node];
+        int low = 0;
+        int high = k.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (k[mid] < c) {
+                low = mid + 1;
+            } else if (k[mid] > c) {
+                high = mid - 1;
+            } else {
+                return next[node][mid];
+            }
+        }
+        return -1;
+    }
+
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private static boolean isWordChar(String s, int index) {
+        if (index < 0 || index >= s.length()) {
+            return false;
+        }
+        char c = s.charAt(index);
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    private static boolean isBoundary(String s, int index) {
+        return isWordChar(s, index - 1) != isWordChar(s, index);
+    }
+
+    public boolean isEmpty() {
+        return this == EMPTY;
+    }
+
+    /**
+     * Inserts a zero width space after the first character of every blacklisted phrase in the
+     * message. Where matches overlap the one starting first wins, then the longest.
+     *
+     * @return the message itself if nothing matched.
+     */
+    public String escape(String msg) {
+        if (isEmpty()) {
+            return msg;
+        }
+        int[] longest = null;
+        int node = 0;
+        for (int i = 0; i < msg.length(); i++) {
+            char c = fold(msg.charAt(i));
+            int child;
+            while ((child = child(node, c)) < 0 && node != 0) {
+                node = fail[node];
+            }
+            node = Math.max(child, 0);
+            for (int length : outputs[node]) {
+                boolean word = length < 0;
+                length = Math.abs(length);
+                int start = i + 1 - length;
+                if (word && (!isBoundary(msg, start) || !isBoundary(msg, i + 1))) {
+                    continue;
+                }
+                if (longest == null) {
+                    longest = new int[msg.length()];
+                }
+                longest[start] = Math.max(longest[start], length);
+            }
+        }
+        if (longest == null) {
+            return msg;
+        }
+        StringBuilder sb = new StringBuilder(msg.length() + 16);
+        int i = 0;
+        while (i < msg.length()) {
+            if (longest[i] > 0) {
+                sb.append(Utils.addZws(msg.substring(i, i + longest[i])));
+                i += longest[i];
+            } else {
+                sb.append(msg.charAt(i));
+                i++;
+            }
+        }
+        return sb.toString();
+    }
+}
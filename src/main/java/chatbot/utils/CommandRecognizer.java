@@ -0,0 +1,94 @@
+package chatbot.utils;
+
+import chatbot.enums.Command;
+
+import java.util.Locale;
+
+/**
+ * Recognizes a leading "!command" in a chat message without allocating. The names of all
+ * {@link Command} values, aliases included, are compiled once into a trie over the letters A-Z.
+ */
+public final class CommandRecognizer {
+
+    private static final char ZWS_HIGH = '\uDB40';
+    private static final char ZWS_LOW = '\uDC00';
+    private static final Node root = build();
+
+    private CommandRecognizer() {
+    }
+
+    private static final class Node {
+        private final Node[] next = new Node[26];
+        private Command command;
+    }
+
+    private static Node build() {
+        Node root = new Node();
+        for (Command command : Command.values()) {
+            Node node = root;
+            for (char c : command.name().toUpperCase(Locale.ROOT).toCharArray()) {
+                int index = c - 'A';
+                if (node.next[index] == null) {
+                    node.next[index] = new Node();
+                }
+                node = node.next[index];
+            }
+            node.command = command;
+        }
+        return root;
+    }
+
+    /**
+     * Finds the command a message starts with. The command name is case-insensitive, may contain
+     * zero-width spaces and has to be followed by a space or the end of the message.
+     *
+     * @param message chat message
+     * @return Command or null if the message didn't start with a recognizable command.
+     */
+    public static Command recognize(String message) {
+        if (message.isEmpty() || message.charAt(0) != '!') {
+            return null;
+        }
+        Node node = root;
+        int length = message.length();
+        for (int i = 1; i < length; i++) {
+            char c = message.charAt(i);
+            if (c == ZWS_HIGH && i + 1 < length && message.charAt(i + 1) == ZWS_LOW) {
+                i++;
+                continue;
+            }
+            if (c == ' ') {
+                break;
+            }
+            if (Character.isWhitespace(c)) {
+                // trailing whitespace ends the command, anything else makes it unknown.
+                if (isBlank(message, i)) {
+                    break;
+                }
+                return null;
+            }
+            if (c >= 'a' && c <= 'z') {
+                c -= 'a' - 'A';
+            } else if (c < 'A' || c > 'Z') {
+                return null;
+            }
+            node = node.next[c - 'A'];
+            if (node == null) {
+                return null;
+            }
+        }
+        return node.command;
+    }
+
+    private static boolean isBlank(String message, int from) {
+        for (int i = from; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (c == ZWS_HIGH && i + 1 < message.length() && message.charAt(i + 1) == ZWS_LOW) {
+                i++;
+            } else if (!Character.isWhitespace(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,98 @@
+package chatbot.utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.Map.entry;
+
+/**
+ * Folds look-alike characters, diacritics and letter-like digits and symbols to plain lowercase
+ * letters so filters can be written against the folded skeleton instead of listing every variant.
+ * The table was generated from the character classes of the old slur regexes in SenderService.
+ */
+public class Confusables {
+
+    /**
+     * Written in place of characters outside the basic multilingual plane that have no folding.
+     */
+    public static final char UNKNOWN = '\uFFFD';
+
+    private static final Map<Character, String> TABLE = Map.ofEntries(
+            entry('a', "a4ÁáÀàĂăẮắẰằẴẵẲẳÂâẤấẦầẪẫẨẩǍǎÅåǺǻÄäǞǟÃãȦȧǠǡĄąĀāẢảȀȁAȂȃẠạẶặẬậḀḁȺⱥꞺꞻᶏẚＡａ@"),
+            entry('c', "cĆćĈĉČčĊċÇçḈḉȻȼꞒꞓꟄꞔƇƈɕ"),
+            entry('d', "dĎďḊḋḐḑDḌḍḒḓḎḏĐđÐðƉɖƊɗᵭᶁᶑȡ"),
+            entry('e', "e3ЄєЕеÉéÈèĔĕÊêẾếỀềỄễỂểĚěËëẼẽĖėȨȩḜḝĘęĒēḖḗḔḕẺẻȄȅEȆȇẸẹỆệḘḙḚḛɆɇᶒⱸꬴꬳＥｅ"),
+            entry('f', "fḞḟƑƒꞘꞙᵮᶂ"),
+            entry('g', "\uD83C\uDD71gǴǵĞğĜĝǦǧĠġGĢģḠḡǤǥꞠꞡƓɠᶃꬶＧｇqꝖꝗꝘꝙɋʠ"),
+            entry('i', "❗‼❕i⁉ÍíÌìĬĭÎîǏǐÏïḮḯĨĩĮįĪīỈỉȈȉIȊȋỊịꞼꞽḬḭƗɨᶖİıＩｉ1Іі"),
+            entry('k', "kḰḱǨǩĶķḲḳḴḵƘƙⱩⱪᶄꝀꝁꝂꝃꝄꝅꞢꞣ"),
+            entry('l', "lĺľļḷḹḽḻłŀƚꝉⱡɫɬꞎꬷꬸꬹᶅɭȴＬｌ"),
+            entry('n', "nŃńǸǹŇňÑñṄṅŅņṆṇṊṋṈṉNƝɲŊŋꞐꞑꞤꞥᵰᶇɳȵꬻꬼИиПпＮｎ"),
+            entry('o', "ÓóÒòŎŏÔôỐốỒồỖỗỔổǑǒÖöȪȫŐőÕõṌṍṎṏȬȭȮȯOoȰȱØøǾǿǪǫǬǭŌōṒṓṐṑỎỏȌȍȎȏƠơỚớỜờỠỡỞởỢợỌọỘộƟɵꝊꝋꝌꝍⱺＯｏ0"),
+            entry('r', "rŔŕŘřṘṙŖŗȐȑȒȓṚṛṜṝṞṟRɌɍꞦꞧⱤɽᵲᶉꭉ"),
+            entry('s', "sŚśṤṥŜŝŠšṦṧṠṡŞşṢṣṨṩȘșSꞨꞩⱾȿꟅʂᶊᵴ"),
+            entry('t', "tŤťṪṫŢţṬṭȚțṰṱṮṯŦŧȾⱦƬƭƮʈTẗᵵƫȶ"),
+            entry('y', "yÝýỲỳŶŷYẙŸÿỸỹẎẏȲȳỶỷỴỵɎɏƳƴỾỿ")
+    );
+
+    private static final char[] BMP = new char[Character.MAX_VALUE + 1];
+    private static final Map<Integer, Character> SUPPLEMENTARY = new HashMap<>();
+
+    static {
+        TABLE.forEach((letter, variants) -> variants.codePoints().forEach(cp -> {
+            if (Character.isBmpCodePoint(cp)) {
+                BMP[cp] = letter;
+            } else {
+                SUPPLEMENTARY.put(cp, letter);
+            }
+        }));
+    }
+
+    /**
+     * Text folded one character per code point. Combining marks and variation selectors are dropped
+     * and belong to the character before them.
+     *
+     * @param text    folded text.
+     * @param offsets index in the original string of each folded character, with the length of
+     *                the original string as the last element.
+     */
+    public record Folded(String text, int[] offsets) {
+    }
+
+    public static char fold(int codePoint) {
+        if (Character.isBmpCodePoint(codePoint)) {
+            char c = BMP[codePoint];
+            if (c != 0) {
+                return c;
+            }
+            int lower = Character.toLowerCase(codePoint);
+            c = BMP[lower];
+            return c != 0 ? c : (char) lower;
+        }
+        Character c = SUPPLEMENTARY.get(codePoint);
+        return c != null ? c : UNKNOWN;
+    }
+
+    public static Folded fold(String text) {
+        StringBuilder folded = new StringBuilder(text.length());
+        int[] offsets = new int[text.length() + 1];
+        int i = 0;
+        while (i < text.length()) {
+            int cp = text.codePointAt(i);
+            if (!isMark(cp) || folded.isEmpty()) {
+                offsets[folded.length()] = i;
+                folded.append(fold(cp));
+            }
+            i += Character.charCount(cp);
+        }
+        offsets[folded.length()] = text.length();
+        return new Folded(folded.toString(), Arrays.copyOf(offsets, folded.length() + 1));
+    }
+
+    private static boolean isMark(int codePoint) {
+        int type = Character.getType(codePoint);
+        return type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK
+                || type == Character.COMBINING_SPACING_MARK;
+    }
+}
@@ -0,0 +1,47 @@
+package chatbot.utils;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers keys seen during a sliding window of time, bounded by a maximum number of keys. Not
+ * thread safe.
+ */
+public class DedupWindow {
+
+    private record Seen(String key, long nanos) {
+    }
+
+    private final long windowNanos;
+    private final int maxKeys;
+    private final Set<String> keys = new HashSet<>();
+    private final ArrayDeque<Seen> order = new ArrayDeque<>();
+
+    public DedupWindow(long window, TimeUnit unit, int maxKeys) {
+        this.windowNanos = unit.toNanos(window);
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * @param key      key to check.
+     * @param nowNanos current System.nanoTime().
+     * @return true if the key was not seen during the window, after which it is remembered.
+     */
+    public boolean firstSeen(String key, long nowNanos) {
+        while (!order.isEmpty()
+                && (order.size() >= maxKeys || nowNanos - order.peekFirst().nanos() > windowNanos)) {
+            keys.remove(order.pollFirst().key());
+        }
+        if (!keys.add(key)) {
+            return false;
+        }
+        order.addLast(new Seen(key, nowNanos));
+        return true;
+    }
+
+    public int size() {
+        return keys.size();
+    }
+}
@@ -0,0 +1,419 @@
+package chatbot.utils;
+
+import chatbot.Metrics;
+import chatbot.message.LoggableMessage;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of messages that the database sinks read from, so messages they have not
+ * written yet survive a crash or restart. Every sink has a {@link Cursor} that it commits once
+ * what it read is written to its database, and the next run continues from the committed
+ * position.
+ * <p>
+ * The log is split into memory-mapped segment files named after the position they start at. An
+ * appended message is in the page cache as soon as {@link #append(LoggableMessage)} returns, which
+ * is enough to survive the JVM dying. {@link #sync()} forces it to disk and saves the cursors, it is
+ * meant to be called periodically so one fsync covers everything appended since the last one.
+ * Segments are deleted once every cursor is past them.
+ * <p>
+ * The segments together are kept under a maximum size. When a sink falls so far behind that a new
+ * segment would go over it, the oldest segments are deleted anyway and the sinks that had not read
+ * them lose those messages.
+ * <p>
+ * A record is the length and CRC32 of the payload followed by the payload. A length of 0 is the
+ * end of what was written, so a torn record at the end of the last segment is found on startup and
+ * overwritten. A length of -1 means the rest of the segment is unused.
+ */
+public class LogSpool implements AutoCloseable {
+
+    private final static Logger log = LogManager.getLogger(LogSpool.class);
+
+    private static final int HEADER = 2 * Integer.BYTES;
+    private static final int SKIP = -1;
+    private static final String SUFFIX = ".seg";
+    private static final String CURSORS = "cursors";
+
+    private record Segment(long base, Path path, MappedByteBuffer buffer) {
+        int capacity() {
+            return buffer.capacity();
+        }
+
+        long end() {
+            return base + capacity();
+        }
+    }
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final long maxBytes;
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final Map<String, Long> saved = new LinkedHashMap<>();
+    private final Map<String, Cursor> cursors = new LinkedHashMap<>();
+    private final CRC32 crc = new CRC32();
+    private long tail;
+    private long synced;
+    private boolean cursorsChanged;
+
+    public LogSpool(Path dir, int segmentBytes) throws IOException {
+        this(dir, segmentBytes, Long.MAX_VALUE);
+    }
+
+    /**
+     * Opens the spool in the directory, continuing after the last complete record of a previous
+     * run.
+     *
+     * @param segmentBytes size of a segment file, larger messages get a segment of their own.
+     * @param maxBytes     size of all segments above which the oldest are dropped, the segment
+     *                     being written is always kept.
+     */
+    public LogSpool(Path dir, int segmentBytes, long maxBytes) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(dir);
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path path : files.filter(p -> p.getFileName().toString().endsWith(SUFFIX)).toList()) {
+                String name = path.getFileName().toString();
+                long base = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+                segments.put(base, map(path, base, (int) Files.size(path)));
+            }
+        }
+        readCursors();
+        if (segments.isEmpty()) {
+            long start = saved.values().stream().mapToLong(Long::longValue).max().orElse(0);
+            newSegment(start, segmentBytes);
+        } else {
+            recover(segments.lastEntry().getValue());
+        }
+        synced = tail;
+    }
+
+    private static Path segmentPath(Path dir, long base) {
+        return dir.resolve(String.format("%020d%s", base, SUFFIX));
+    }
+
+    private static Segment map(Path path, long base, int capacity) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE))
+        {
+            return new Segment(base, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+        }
+    }
+
+    private void newSegment(long base, int capacity) throws IOException {
+        segments.put(base, map(segmentPath(dir, base), base, capacity));
+        tail = base;
+    }
+
+    /**
+     * Finds the end of the last complete record in the segment, and clears anything after it that
+     * was only partly written.
+     */
+    private void recover(Segment segment) throws IOException {
+        MappedByteBuffer buffer = segment.buffer();
+        int offset = 0;
+        while (offset + HEADER <= segment.capacity()) {
+            int length = buffer.getInt(offset);
+            if (length == SKIP) {
+                newSegment(segment.end(), segmentBytes);
+                return;
+            }
+            if (length <= 0 || offset + HEADER + length > segment.capacity()
+                    || checksum(buffer, offset + HEADER, length) != buffer.getInt(offset + Integer.BYTES))
+            {
+                if (length != 0) {
+                    log.warn("Dropped a partly written record at {} in {}", offset, segment.path());
+                    for (int i = offset; i < segment.capacity(); i++) {
+                        buffer.put(i, (byte) 0);
+                    }
+                }
+                break;
+            }
+            offset += HEADER + length;
+        }
+        tail = segment.base() + offset;
+        if (offset + HEADER > segment.capacity()) {
+            newSegment(segment.end(), segmentBytes);
+        }
+    }
+
+    private int checksum(MappedByteBuffer buffer, int offset, int length) {
+        crc.reset();
+        crc.update(buffer.slice(offset, length));
+        return (int) crc.getValue();
+    }
+
+    private void readCursors() throws IOException {
+        Path path = dir.resolve(CURSORS);
+        if (!Files.exists(path)) {
+            return;
+        }
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            String[] parts = line.split(" ");
+            if (parts.length == 2) {
+                saved.put(parts[0], Long.parseLong(parts[1]));
+            }
+        }
+    }
+
+    /**
+     * @return the cursor of the sink, starting where it last committed or at the oldest message
+     * kept if it never has.
+     */
+    public synchronized Cursor cursor(String name) {
+        return cursors.computeIfAbsent(name, n -> {
+            long start = Math.max(saved.getOrDefault(n, 0L), segments.firstKey());
+            Cursor cursor = new Cursor(n, Math.min(start, tail));
+            if (cursor.committed < tail) {
+                log.info("{} has {} bytes of spooled messages from a previous run.", n, tail - cursor.committed);
+            }
+            return cursor;
+        });
+    }
+
+    /**
+     * Writes the message to the end of the log and wakes the cursors waiting for it.
+     */
+    public synchronized void append(LoggableMessage message) throws IOException {
+        byte[] payload = MessageSpill.toBytes(message);
+        Segment segment = segments.lastEntry().getValue();
+        int offset = (int) (tail - segment.base());
+        if (offset + HEADER + payload.length > segment.capacity()) {
+            if (offset + HEADER <= segment.capacity()) {
+                segment.buffer().putInt(offset, SKIP);
+            }
+            newSegment(segment.end(), Math.max(segmentBytes, HEADER + payload.length));
+            dropOverMaxSize();
+            segment = segments.lastEntry().getValue();
+            offset = 0;
+        }
+        MappedByteBuffer buffer = segment.buffer();
+        buffer.put(offset + HEADER, payload);
+        crc.reset();
+        crc.update(payload);
+        buffer.putInt(offset + Integer.BYTES, (int) crc.getValue());
+        // the length goes last so a record is never seen with a length before its payload is there.
+        buffer.putInt(offset, payload.length);
+        tail += HEADER + payload.length;
+        notifyAll();
+    }
+
+    /**
+     * Forces what was appended since the last call to disk, saves the committed cursor positions
+     * and deletes segments every cursor is past.
+     */
+    public synchronized void sync() throws IOException {
+        for (Segment segment : segments.tailMap(segments.floorKey(synced), true).values()) {
+            long from = Math.max(synced, segment.base());
+            long to = Math.min(tail, segment.end());
+            if (to > from) {
+                segment.buffer().force((int) (from - segment.base()), (int) (to - from));
+            }
+        }
+        synced = tail;
+
+        if (cursorsChanged) {
+            StringBuilder sb = new StringBuilder();
+            for (Cursor cursor : cursors.values()) {
+                sb.append(cursor.name).append(' ').append(cursor.committed).append('\n');
+            }
+            Path tmp = dir.resolve(CURSORS + ".tmp");
+            Files.writeString(tmp, sb, StandardCharsets.UTF_8);
+            Files.move(tmp, dir.resolve(CURSORS), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            cursorsChanged = false;
+        }
+
+        long done = cursors.values().stream().mapToLong(cursor -> cursor.committed).min().orElse(tail);
+        while (segments.size() > 1 && segments.firstEntry().getValue().end() <= done) {
+            Segment segment = segments.pollFirstEntry().getValue();
+            Files.deleteIfExists(segment.path());
+            log.debug("Deleted spool segment {}", segment.path());
+        }
+    }
+
+    private void dropOverMaxSize() throws IOException {
+        while (segments.size() > 1 && sizeBytes() > maxBytes) {
+            Segment segment = segments.pollFirstEntry().getValue();
+            Files.deleteIfExists(segment.path());
+            long first = segments.firstKey();
+            for (Cursor cursor : cursors.values()) {
+                if (cursor.committed < first) {
+                    log.error("Spool is over {} bytes, dropped {} bytes of messages {} had not written.", maxBytes,
+                            first - cursor.committed, cursor.name);
+                    Metrics.SPOOL_DROPPED_BYTES.inc(cursor.name, first - cursor.committed);
+                    cursor.committed = first;
+                    cursor.position = Math.max(cursor.position, first);
+                    cursorsChanged = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return size of the segment files.
+     */
+    public synchronized long sizeBytes() {
+        return segments.lastEntry().getValue().end() - segments.firstKey();
+    }
+
+    /**
+     * @return bytes appended that the slowest cursor has not committed.
+     */
+    public synchronized long pendingBytes() {
+        return tail - cursors.values().stream().mapToLong(cursor -> cursor.committed).min().orElse(tail);
+    }
+
+    /**
+     * @return bytes appended that each cursor has not committed, by cursor name.
+     */
+    public synchronized Map<String, Long> lagBytes() {
+        Map<String, Long> lag = new LinkedHashMap<>();
+        for (Cursor cursor : cursors.values()) {
+            lag.put(cursor.name, tail - cursor.committed);
+        }
+        return lag;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        sync();
+    }
+
+    /**
+     * Read position of one sink. Reading moves past messages without committing them, if the
+     * sink stops before {@link #commit()} the next run reads them again.
+     */
+    public class Cursor {
+
+        private final String name;
+        private long position;
+        private long committed;
+
+        private Cursor(String name, long start) {
+            this.name = name;
+            this.position = start;
+            this.committed = start;
+        }
+
+        /**
+         * Waits up to a second for a message, then keeps adding messages until there are max in
+         * the list or max delay has passed since the first one.
+         *
+         * @return false if nothing was added.
+         */
+        public boolean poll(List<LoggableMessage> into, int max, Duration maxDelay)
+                throws InterruptedException, IOException
+        {
+            List<byte[]> records = new ArrayList<>();
+            synchronized (LogSpool.this) {
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+                while (position >= tail) {
+                    long wait = deadline - System.nanoTime();
+                    if (wait <= 0) {
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(LogSpool.this, wait);
+                }
+                deadline = System.nanoTime() + maxDelay.toNanos();
+                while (records.size() < max) {
+                    if (position < tail) {
+                        byte[] record = next();
+                        if (record != null) {
+                            records.add(record);
+                        }
+                        continue;
+                    }
+                    long wait = deadline - System.nanoTime();
+                    if (wait <= 0) {
+                        break;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(LogSpool.this, wait);
+                }
+            }
+            boolean added = false;
+            for (byte[] record : records) {
+                try {
+                    into.add(MessageSpill.fromBytes(record));
+                    added = true;
+                } catch (IOException | RuntimeException e) {
+                    log.error("Skipped a spooled message {} can't read: {}", name, e.toString());
+                    Metrics.LOST_MESSAGE_COUNTER.inc(name);
+                }
+            }
+            return added;
+        }
+
+        /**
+         * @return the payload of the record at the position, moving past it, or null if only
+         * broken records were left. Records that fail their checksum are skipped, the rest of the
+         * segment if the length can't be trusted.
+         */
+        private byte[] next() {
+            while (position < tail) {
+                Map.Entry<Long, Segment> entry = segments.floorEntry(position);
+                if (entry == null || entry.getValue().end() <= position) {
+                    // the segment was deleted by hand, continue with the next one.
+                    position = segments.ceilingKey(position);
+                    continue;
+                }
+                Segment segment = entry.getValue();
+                int offset = (int) (position - segment.base());
+                int length = offset + HEADER <= segment.capacity() ? segment.buffer().getInt(offset) : SKIP;
+                if (length == SKIP) {
+                    position = segment.end();
+                    continue;
+                }
+                if (length <= 0 || offset + HEADER + length > segment.capacity()) {
+                    log.error("Skipped the rest of {} after a record with length {} at {}.", segment.path(), length,
+                            offset);
+                    Metrics.LOST_MESSAGE_COUNTER.inc(name);
+                    position = Math.min(segment.end(), tail);
+                    continue;
+                }
+                position += HEADER + length;
+                MappedByteBuffer buffer = segment.buffer();
+                if (checksum(buffer, offset + HEADER, length) != buffer.getInt(offset + Integer.BYTES)) {
+                    log.error("Skipped a record with a bad checksum at {} in {}.", offset, segment.path());
+                    Metrics.LOST_MESSAGE_COUNTER.inc(name);
+                    continue;
+                }
+                byte[] payload = new byte[length];
+                buffer.get(offset + HEADER, payload);
+                return payload;
+            }
+            return null;
+        }
+
+        /**
+         * Marks everything read so far as written to the sink.
+         */
+        public void commit() {
+            synchronized (LogSpool.this) {
+                if (committed != position) {
+                    committed = position;
+                    cursorsChanged = true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package chatbot.utils;
+
+import chatbot.Metrics;
+import chatbot.enums.OverflowPolicy;
+import chatbot.enums.WaitStrategy;
+import chatbot.message.LoggableMessage;
+import chatbot.message.Message;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Bounded {@link RingBuffer} of messages where {@link #add(Message)} never fails, what happens when
+ * it is full is decided by the {@link OverflowPolicy}. Every dropped or spilled message is counted
+ * in metrics with the name of the queue.
+ */
+public class MessageQueue extends RingBuffer<Message> {
+
+    private final static Logger log = LogManager.getLogger(MessageQueue.class);
+
+    private final String name;
+    private final OverflowPolicy policy;
+    private final MessageSpill spill;
+
+    public MessageQueue(String name, int capacity, OverflowPolicy policy, WaitStrategy waitStrategy) {
+        this(name, capacity, policy, waitStrategy, Path.of("spill", name + ".spill"));
+    }
+
+    /**
+     * @param spillFile where messages are written with {@link OverflowPolicy#SPILL_TO_DISK}.
+     */
+    public MessageQueue(String name, int capacity, OverflowPolicy policy, WaitStrategy waitStrategy,
+            Path spillFile)
+    {
+        super(capacity, waitStrategy);
+        this.name = name;
+        this.policy = policy;
+        this.spill = policy == OverflowPolicy.SPILL_TO_DISK ? new MessageSpill(spillFile) : null;
+        if (spill != null && !spill.isEmpty()) {
+            log.info("Reading messages spilled to {} by a previous run.", spillFile);
+        }
+    }
+
+    @Override
+    public boolean add(Message message) {
+        switch (policy) {
+            case BLOCK -> {
+                try {
+                    put(message);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    shed(message);
+                    return false;
+                }
+            }
+            case DROP_OLDEST -> {
+                while (!offer(message)) {
+                    Message oldest = super.poll();
+                    if (oldest != null) {
+                        shed(oldest);
+                    }
+                }
+            }
+            case SPILL_TO_DISK -> {
+                synchronized (spill) {
+                    // once spilling, everything goes through the file until it is read back to
+                    // keep the order.
+                    if (spill.isEmpty() && offer(message)) {
+                        return true;
+                    }
+                    spill(message);
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Message poll() {
+        Message message = super.poll();
+        if (message == null && spill != null && refill()) {
+            message = super.poll();
+        }
+        return message;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        if (!super.isEmpty()) {
+            return false;
+        }
+        if (spill == null) {
+            return true;
+        }
+        synchronized (spill) {
+            return spill.isEmpty();
+        }
+    }
+
+    @Override
+    public void clear() {
+        while (super.poll() != null) {
+            // drop everything in the buffer.
+        }
+        if (spill != null) {
+            synchronized (spill) {
+                try {
+                    spill.clear();
+                } catch (IOException e) {
+                    log.error("Could not clear spilled {} messages: {}", name, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void spill(Message message) {
+        if (!(message instanceof LoggableMessage loggableMessage)) {
+            shed(message);
+            return;
+        }
+        try {
+            spill.write(loggableMessage);
+            Metrics.QUEUE_SPILL_COUNTER.inc(name);
+        } catch (IOException e) {
+            log.error("Could not spill {} message: {}", name, e.getMessage());
+            shed(message);
+        }
+    }
+
+    /**
+     * Moves spilled messages back to the buffer until it is full or nothing is left in the file.
+     *
+     * @return true if anything was moved.
+     */
+    private boolean refill() {
+        synchronized (spill) {
+            int moved = 0;
+            try {
+                LoggableMessage next;
+                while ((next = spill.peek()) != null && offer(next)) {
+                    spill.remove();
+                    moved++;
+                }
+            } catch (IOException e) {
+                log.error("Could not read spilled {} messages, dropping them: {}", name, e.getMessage());
+                try {
+                    spill.clear();
+                } catch (IOException ignored) {
+                }
+            }
+            if (moved > 0) {
+                log.debug("Read {} spilled {} messages back.", moved, name);
+            }
+            return moved > 0;
+        }
+    }
+
+    private void shed(Message message) {
+        log.debug("{} queue is full, dropped {}", name, message);
+        Metrics.QUEUE_SHED_COUNTER.inc(name);
+    }
+}
@@ -0,0 +1,155 @@
+package chatbot.utils;
+
+import chatbot.message.LoggableMessage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only file of messages that did not fit in a {@link MessageQueue}, read back in the order
+ * they were written. The file is deleted once everything in it has been read, and one left over
+ * from a previous run is read from the start.
+ * <p>
+ * Not thread safe, the owning queue synchronizes access.
+ */
+class MessageSpill {
+
+    private final Path path;
+    private DataOutputStream out;
+    private DataInputStream in;
+    private long writtenBytes;
+    private long readBytes;
+    private LoggableMessage next;
+    private int nextSize;
+
+    MessageSpill(Path path) {
+        this.path = path;
+        try {
+            if (Files.exists(path)) {
+                writtenBytes = Files.size(path);
+            }
+        } catch (IOException e) {
+            writtenBytes = 0;
+        }
+    }
+
+    boolean isEmpty() {
+        return next == null && readBytes >= writtenBytes;
+    }
+
+    void write(LoggableMessage message) throws IOException {
+        byte[] bytes = toBytes(message);
+        if (out == null) {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+        }
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.flush();
+        writtenBytes += Integer.BYTES + bytes.length;
+    }
+
+    /**
+     * @return the next message without removing it, or null if there is none.
+     */
+    LoggableMessage peek() throws IOException {
+        if (next != null) {
+            return next;
+        }
+        if (readBytes >= writtenBytes) {
+            return null;
+        }
+        if (in == null) {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)));
+        }
+        int size = in.readInt();
+        next = fromBytes(in.readNBytes(size));
+        nextSize = Integer.BYTES + size;
+        return next;
+    }
+
+    /**
+     * Removes the message returned by {@link #peek()}.
+     */
+    void remove() throws IOException {
+        if (next == null) {
+            return;
+        }
+        next = null;
+        readBytes += nextSize;
+        if (readBytes >= writtenBytes) {
+            clear();
+        }
+    }
+
+    void clear() throws IOException {
+        if (in != null) {
+            in.close();
+            in = null;
+        }
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+        next = null;
+        readBytes = 0;
+        writtenBytes = 0;
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * @return the message in the format it is written to the file in, also used by {@link LogSpool}.
+     */
+    static byte[] toBytes(LoggableMessage message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream record = new DataOutputStream(bytes);
+        writeString(record, message.getSender());
+        writeString(record, message.getUid());
+        writeString(record, message.getStringMessage());
+        record.writeBoolean(message.isSubscribed());
+        record.writeBoolean(message.isWhisper());
+        writeString(record, message.getFullMsg());
+        record.writeLong(message.getInstant().toEpochMilli());
+        return bytes.toByteArray();
+    }
+
+    static LoggableMessage fromBytes(byte[] bytes) throws IOException {
+        DataInputStream record = new DataInputStream(new ByteArrayInputStream(bytes));
+        String sender = readString(record);
+        String uid = readString(record);
+        String message = readString(record);
+        boolean subscribed = record.readBoolean();
+        boolean whisper = record.readBoolean();
+        String fullMsg = readString(record);
+        long time = record.readLong();
+        return new LoggableMessage(sender, uid, message, subscribed, whisper, fullMsg, String.valueOf(time));
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,151 @@
+package chatbot.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Set of short strings kept outside the Java heap. The strings are stored as UTF-8 in an arena that
+ * only grows, indexed by an open addressing hash table of (hash, arena offset) pairs. Strings can't
+ * be removed.
+ */
+public class OffHeapStringSet {
+
+    private static final int SLOT_BYTES = 8;
+    private static final int MAX_LENGTH = Short.MAX_VALUE;
+
+    private ByteBuffer slots;
+    private ByteBuffer arena;
+    private int mask;
+    private int size;
+
+    public OffHeapStringSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+        this.slots = ByteBuffer.allocateDirect(capacity * SLOT_BYTES);
+        this.arena = ByteBuffer.allocateDirect(Math.max(1024, expectedSize * 16));
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * @return true if the string was not in the set yet.
+     */
+    public synchronized boolean add(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_LENGTH) {
+            throw new IllegalArgumentException("String too long: " + bytes.length + " bytes.");
+        }
+        int hash = hash(s);
+        int slot = find(hash, bytes);
+        if (ref(slot) != 0) {
+            return false;
+        }
+        int offset = append(bytes);
+        slots.putInt(slot * SLOT_BYTES, hash);
+        slots.putInt(slot * SLOT_BYTES + 4, offset + 1);
+        if (++size * 2 > mask + 1) {
+            rehash();
+        }
+        return true;
+    }
+
+    public synchronized boolean contains(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        return ref(find(hash(s), bytes)) != 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return bytes allocated outside the heap.
+     */
+    public synchronized long allocatedBytes() {
+        return (long) slots.capacity() + arena.capacity();
+    }
+
+    /**
+     * Goes through the strings in the order they were added.
+     */
+    public synchronized void forEach(Consumer<String> consumer) {
+        int offset = 0;
+        while (offset < arena.position()) {
+            int length = arena.getShort(offset);
+            byte[] bytes = new byte[length];
+            arena.get(offset + 2, bytes);
+            consumer.accept(new String(bytes, StandardCharsets.UTF_8));
+            offset += 2 + length;
+        }
+    }
+
+    /**
+     * @return the slot holding the string, or the empty slot it would go in.
+     */
+    private int find(int hash, byte[] bytes) {
+        int slot = hash & mask;
+        while (true) {
+            int ref = ref(slot);
+            if (ref == 0 || (slots.getInt(slot * SLOT_BYTES) == hash && matches(ref - 1, bytes))) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private int ref(int slot) {
+        return slots.getInt(slot * SLOT_BYTES + 4);
+    }
+
+    private boolean matches(int offset, byte[] bytes) {
+        if (arena.getShort(offset) != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (arena.get(offset + 2 + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int append(byte[] bytes) {
+        if (arena.remaining() < 2 + bytes.length) {
+            long grown = Math.max((long) arena.capacity() * 2, (long) arena.position() + 2 + bytes.length);
+            if (grown > Integer.MAX_VALUE - 1) {
+                throw new IllegalStateException("Set is full.");
+            }
+            ByteBuffer larger = ByteBuffer.allocateDirect((int) grown);
+            larger.put(arena.flip());
+            arena = larger;
+        }
+        int offset = arena.position();
+        arena.putShort((short) bytes.length);
+        arena.put(bytes);
+        return offset;
+    }
+
+    private void rehash() {
+        ByteBuffer old = slots;
+        int oldCapacity = mask + 1;
+        slots = ByteBuffer.allocateDirect(oldCapacity * 2 * SLOT_BYTES);
+        mask = oldCapacity * 2 - 1;
+        for (int i = 0; i < oldCapacity; i++) {
+            int ref = old.getInt(i * SLOT_BYTES + 4);
+            if (ref == 0) {
+                continue;
+            }
+            int hash = old.getInt(i * SLOT_BYTES);
+            int slot = hash & mask;
+            while (ref(slot) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots.putInt(slot * SLOT_BYTES, hash);
+            slots.putInt(slot * SLOT_BYTES + 4, ref);
+        }
+    }
+
+    private static int hash(String s) {
+        int h = s.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,133 @@
+package chatbot.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs tasks concurrently on virtual threads while keeping the tasks of each key in order. A task
+ * only starts once the previous task with the same key has finished or run out of time, tasks with
+ * different keys don't wait for each other.
+ */
+public class OrderedDispatcher implements AutoCloseable {
+
+    private final static Logger log = LogManager.getLogger(OrderedDispatcher.class);
+
+    private final ExecutorService executor;
+    private final ScheduledExecutorService timer;
+    /**
+     * Latest task of each key. Removed again once that task is done so idle keys don't pile up.
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<Outcome>> tails = new ConcurrentHashMap<>();
+
+    public enum Outcome {
+        DONE,
+        FAILED,
+        TIMED_OUT,
+        /**
+         * No permit was available when the task's turn came.
+         */
+        REJECTED,
+    }
+
+    public OrderedDispatcher(String name) {
+        this(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory()),
+                Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name(name + "-timer").daemon().factory()));
+    }
+
+    public OrderedDispatcher(ExecutorService executor, ScheduledExecutorService timer) {
+        this.executor = executor;
+        this.timer = timer;
+    }
+
+    /**
+     * @param key       tasks with the same key run one after another in submission order.
+     * @param permits   taken for the duration of the task, the task is rejected if none is free.
+     * @param timeout   time the task has after it starts before the next task of the key may run.
+     * @param task      the task.
+     * @param onTimeout called when the task runs out of time, before the next task of the key starts.
+     *                  The task itself is interrupted but keeps its permit until it returns.
+     * @return completed when the next task of the key may start.
+     */
+    public CompletableFuture<Outcome> submit(String key, Semaphore permits, Duration timeout, Runnable task,
+                                             Runnable onTimeout)
+    {
+        CompletableFuture<Outcome> done = new CompletableFuture<>();
+        CompletableFuture<Outcome> previous = tails.put(key, done);
+        done.whenComplete((outcome, e) -> tails.remove(key, done));
+        if (previous == null) {
+            start(permits, timeout, task, onTimeout, done);
+        } else {
+            previous.whenComplete((outcome, e) -> start(permits, timeout, task, onTimeout, done));
+        }
+        return done;
+    }
+
+    private void start(Semaphore permits, Duration timeout, Runnable task, Runnable onTimeout,
+                       CompletableFuture<Outcome> done)
+    {
+        if (!permits.tryAcquire()) {
+            done.complete(Outcome.REJECTED);
+            return;
+        }
+        Future<?> running;
+        try {
+            running = executor.submit(() -> {
+                Outcome outcome = Outcome.FAILED;
+                try {
+                    task.run();
+                    outcome = Outcome.DONE;
+                } catch (Exception e) {
+                    log.error("Task failed: {}", e.getMessage(), e);
+                } finally {
+                    // released first so the next task of the key can take it right away.
+                    permits.release();
+                    done.complete(outcome);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            done.complete(Outcome.REJECTED);
+            return;
+        }
+        ScheduledFuture<?> deadline = timer.schedule(() -> {
+            if (done.isDone()) {
+                return;
+            }
+            onTimeout.run();
+            if (done.complete(Outcome.TIMED_OUT)) {
+                running.cancel(true);
+            }
+        }, timeout.toNanos(), TimeUnit.NANOSECONDS);
+        done.whenComplete((outcome, e) -> deadline.cancel(false));
+    }
+
+    /**
+     * Stops accepting tasks and waits for the running ones to return.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("Tasks still running after 10 seconds, interrupting them.");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        timer.shutdownNow();
+    }
+}
@@ -0,0 +1,180 @@
+package chatbot.utils;
+
+import chatbot.Metrics;
+import chatbot.enums.Command;
+import chatbot.message.CommandMessage;
+import chatbot.message.Message;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Paces messages sent to chat to stay under Twitch's limit of 20 messages per 30 seconds, 100 when
+ * the bot is a moderator in the channel. A token bucket allows a short burst of a quarter of the
+ * limit and refills at a rate that keeps any 30 second window under the limit.
+ * <p>
+ * Whispers and responses to admin commands are sent before everything else. Messages that waited
+ * longer than the max age, expired command responses and copies of a message already waiting are
+ * dropped.
+ */
+public class SendScheduler {
+
+    private final static Logger log = LogManager.getLogger(SendScheduler.class);
+
+    static final int USER_LIMIT = 20;
+    static final int MODERATOR_LIMIT = 100;
+    static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    /**
+     * Text to send for a message, one of several if a long message was split.
+     */
+    public record Outgoing(Message message, String text) {
+    }
+
+    private record Entry(Outgoing outgoing, long queuedAt) {
+        Message message() {
+            return outgoing.message();
+        }
+    }
+
+    private final ArrayDeque<Entry> priority = new ArrayDeque<>();
+    private final ArrayDeque<Entry> normal = new ArrayDeque<>();
+    private final long maxAgeNanos;
+    private final BooleanSupplier moderator;
+    private final LongSupplier clock;
+    private double tokens;
+    private long refilledAt;
+
+    /**
+     * @param moderator whether the bot is currently a moderator in the channel.
+     */
+    public SendScheduler(Duration maxAge, BooleanSupplier moderator) {
+        this(maxAge, moderator, System::nanoTime);
+    }
+
+    SendScheduler(Duration maxAge, BooleanSupplier moderator, LongSupplier clock) {
+        this.maxAgeNanos = maxAge.toNanos();
+        this.moderator = moderator;
+        this.clock = clock;
+        this.refilledAt = clock.getAsLong();
+        this.tokens = burst(USER_LIMIT);
+    }
+
+    private static double burst(int limit) {
+        return limit / 4.0;
+    }
+
+    private static double tokensPerNano(int limit) {
+        return (limit - burst(limit)) / WINDOW_NANOS;
+    }
+
+    private int limit() {
+        return moderator.getAsBoolean() ? MODERATOR_LIMIT : USER_LIMIT;
+    }
+
+    private void refill(long now) {
+        int limit = limit();
+        tokens = Math.min(burst(limit), tokens + (now - refilledAt) * tokensPerNano(limit));
+        refilledAt = now;
+    }
+
+    /**
+     * Whispers and responses to admin commands.
+     */
+    static boolean isPriority(Message message, String text) {
+        if (text.startsWith("/w ")) {
+            return true;
+        }
+        if (message instanceof CommandMessage commandMessage) {
+            Command command = commandMessage.getCommand();
+            return command != null && command.isAdminOnly();
+        }
+        return false;
+    }
+
+    public void add(Message message) {
+        add(message, message.getStringMessage());
+    }
+
+    /**
+     * @param text what to send for the message, the parts of a split message are added in order.
+     */
+    public synchronized void add(Message message, String text) {
+        if (text == null) {
+            return;
+        }
+        for (ArrayDeque<Entry> queue : List.of(priority, normal)) {
+            for (Entry entry : queue) {
+                if (text.equals(entry.outgoing().text())) {
+                    log.debug("Dropped duplicate of a waiting message: {}", text);
+                    Metrics.SEND_DROPPED_COUNTER.inc("duplicate");
+                    return;
+                }
+            }
+        }
+        (isPriority(message, text) ? priority : normal).add(new Entry(new Outgoing(message, text), clock.getAsLong()));
+    }
+
+    private void dropStale(ArrayDeque<Entry> queue, long now) {
+        // entries are in the order they were added so the stale ones are at the head, expired
+        // commands can be anywhere.
+        while (!queue.isEmpty() && now - queue.peek().queuedAt() > maxAgeNanos) {
+            Entry stale = queue.poll();
+            log.info("Dropped message that waited {}ms: {}", (now - stale.queuedAt()) / 1_000_000,
+                    stale.outgoing().text());
+            Metrics.SEND_DROPPED_COUNTER.inc("stale");
+        }
+        queue.removeIf(entry -> {
+            if (entry.message() instanceof CommandMessage commandMessage && commandMessage.isExpired()) {
+                Metrics.SEND_DROPPED_COUNTER.inc("expired");
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * @return the next message if one can be sent now, otherwise null.
+     */
+    public synchronized Outgoing poll() {
+        long now = clock.getAsLong();
+        dropStale(priority, now);
+        dropStale(normal, now);
+        if (priority.isEmpty() && normal.isEmpty()) {
+            return null;
+        }
+        refill(now);
+        if (tokens < 1) {
+            return null;
+        }
+        tokens--;
+        Entry entry = priority.isEmpty() ? normal.poll() : priority.poll();
+        Metrics.SEND_QUEUE_WAIT.inc(null, (now - entry.queuedAt()) / 1_000_000);
+        return entry.outgoing();
+    }
+
+    /**
+     * @return nanoseconds until {@link #poll()} can return a message, 0 if it can now and -1 if
+     * nothing is waiting.
+     */
+    public synchronized long nanosUntilNext() {
+        if (priority.isEmpty() && normal.isEmpty()) {
+            return -1;
+        }
+        refill(clock.getAsLong());
+        if (tokens >= 1) {
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / tokensPerNano(limit()));
+    }
+
+    public synchronized int size() {
+        return priority.size() + normal.size();
+    }
+}
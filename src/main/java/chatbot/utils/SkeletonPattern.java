@@ -0,0 +1,331 @@
+package chatbot.utils;
+
+import chatbot.utils.Confusables.Folded;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pattern matched against text folded with {@link Confusables}, so it only has to be written for
+ * plain lowercase letters. Supports letters, {@code [abc]} classes, groups, {@code |}, {@code *},
+ * {@code +}, {@code ?} and {@code \b}.
+ * <p>
+ * Compiled to an NFA that is simulated over all states at once instead of backtracking, so the
+ * time taken is linear in the length of the text for each match found, whatever the input. Matches
+ * are leftmost-longest.
+ */
+public class SkeletonPattern {
+
+    private static final int CHARS = 0;
+    private static final int SPLIT = 1;
+    private static final int BOUNDARY = 2;
+    private static final int MATCH = 3;
+
+    private final String pattern;
+    private final List<String> excluded;
+    private final List<int[]> states = new ArrayList<>();
+    private final int start;
+    private int position;
+
+    private sealed interface Node permits Chars, Boundary, Sequence, Choice, Repeat {
+    }
+
+    private record Chars(int mask) implements Node {
+    }
+
+    private record Boundary() implements Node {
+    }
+
+    private record Sequence(List<Node> parts) implements Node {
+    }
+
+    private record Choice(List<Node> branches) implements Node {
+    }
+
+    private record Repeat(Node body, char quantifier) implements Node {
+    }
+
+    private SkeletonPattern(String pattern, List<String> excluded) {
+        this.pattern = pattern;
+        this.excluded = excluded;
+        Node root = parseChoice();
+        if (position != pattern.length()) {
+            throw new IllegalArgumentException("Unexpected '" + pattern.charAt(position) + "' at " + position + " in " + pattern);
+        }
+        this.start = build(root, state(MATCH, 0, -1, -1));
+    }
+
+    public static SkeletonPattern compile(String pattern) {
+        return new SkeletonPattern(pattern, List.of());
+    }
+
+    /**
+     * @return the same pattern that doesn't match where the folded text starts with any of the
+     * given words.
+     */
+    public SkeletonPattern unlessStartsWith(String... words) {
+        return new SkeletonPattern(pattern, List.of(words));
+    }
+
+    public String pattern() {
+        return pattern;
+    }
+
+    private boolean at(String chars) {
+        return position < pattern.length() && chars.indexOf(pattern.charAt(position)) >= 0;
+    }
+
+    private Node parseChoice() {
+        List<Node> branches = new ArrayList<>();
+        branches.add(parseSequence());
+        while (at("|")) {
+            position++;
+            branches.add(parseSequence());
+        }
+        return branches.size() == 1 ? branches.get(0) : new Choice(branches);
+    }
+
+    private Node parseSequence() {
+        List<Node> parts = new ArrayList<>();
+        while (position < pattern.length() && !at("|)")) {
+            Node atom = parseAtom();
+            while (at("*+?")) {
+                atom = new Repeat(atom, pattern.charAt(position++));
+            }
+            parts.add(atom);
+        }
+        return new Sequence(parts);
+    }
+
+    private Node parseAtom() {
+        char c = pattern.charAt(position++);
+        switch (c) {
+            case '(' -> {
+                Node group = parseChoice();
+                if (!at(")")) {
+                    throw new IllegalArgumentException("Unclosed group in " + pattern);
+                }
+                position++;
+                return group;
+            }
+            case '[' -> {
+                int close = pattern.indexOf(']', position);
+                if (close < 0) {
+                    throw new IllegalArgumentException("Unclosed class in " + pattern);
+                }
+                int mask = 0;
+                for (; position < close; position++) {
+                    mask |= letter(pattern.charAt(position));
+                }
+                position++;
+                return new Chars(mask);
+            }
+            case '\\' -> {
+                if (!at("b")) {
+                    throw new IllegalArgumentException("Only \\b is supported in " + pattern);
+                }
+                position++;
+                return new Boundary();
+            }
+            default -> {
+                return new Chars(letter(c));
+            }
+        }
+    }
+
+    private int letter(char c) {
+        if (c < 'a' || c > 'z') {
+            throw new IllegalArgumentException("Only lowercase letters can be matched, got '" + c + "' in " + pattern);
+        }
+        return 1 << (c - 'a');
+    }
+
+    /**
+     * @return the index of a new state with the given type, letter mask and next states.
+     */
+    private int state(int type, int mask, int out, int alt) {
+        states.add(new int[]{type, mask, out, alt});
+        return states.size() - 1;
+    }
+
+    /**
+     * Builds the states for the node in front of the already built next state.
+     *
+     * @return the state the node is entered from.
+     */
+    private int build(Node node, int next) {
+        return switch (node) {
+            case Chars chars -> state(CHARS, chars.mask(), next, -1);
+            case Boundary ignored -> state(BOUNDARY, 0, next, -1);
+            case Sequence sequence -> {
+                int entry = next;
+                for (int i = sequence.parts().size() - 1; i >= 0; i--) {
+                    entry = build(sequence.parts().get(i), entry);
+                }
+                yield entry;
+            }
+            case Choice choice -> {
+                List<Node> branches = choice.branches();
+                int entry = build(branches.get(branches.size() - 1), next);
+                for (int i = branches.size() - 2; i >= 0; i--) {
+                    entry = state(SPLIT, 0, build(branches.get(i), next), entry);
+                }
+                yield entry;
+            }
+            case Repeat repeat -> switch (repeat.quantifier()) {
+                case '*' -> {
+                    int loop = state(SPLIT, 0, -1, next);
+                    states.get(loop)[2] = build(repeat.body(), loop);
+                    yield loop;
+                }
+                case '+' -> {
+                    int loop = state(SPLIT, 0, -1, next);
+                    int body = build(repeat.body(), loop);
+                    states.get(loop)[2] = body;
+                    yield body;
+                }
+                default -> state(SPLIT, 0, build(repeat.body(), next), next);
+            };
+        };
+    }
+
+    private static boolean isWordChar(String text, int index) {
+        if (index < 0 || index >= text.length()) {
+            return false;
+        }
+        char c = text.charAt(index);
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private boolean isExcluded(String text, int index) {
+        for (String word : excluded) {
+            if (text.startsWith(word, index)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Set of states with the index where the match reaching each state started. A state reached
+     * from two starts keeps the first one as that is the leftmost match.
+     */
+    private final class Threads {
+        final int[] list = new int[states.size()];
+        final int[] startOf = new int[states.size()];
+        final int[] added = new int[states.size()];
+        int size;
+        int generation;
+
+        void clear() {
+            size = 0;
+            generation++;
+        }
+
+        void add(String text, int state, int index, int from) {
+            if (added[state] == generation) {
+                return;
+            }
+            added[state] = generation;
+            int[] s = states.get(state);
+            switch (s[0]) {
+                case SPLIT -> {
+                    add(text, s[2], index, from);
+                    add(text, s[3], index, from);
+                }
+                case BOUNDARY -> {
+                    if (isWordChar(text, index - 1) != isWordChar(text, index)) {
+                        add(text, s[2], index, from);
+                    }
+                }
+                default -> {
+                    list[size] = state;
+                    startOf[size] = from;
+                    size++;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return start and end index pairs of the matches in the folded text.
+     */
+    public List<int[]> findAll(String text) {
+        List<int[]> matches = new ArrayList<>();
+        Threads current = new Threads();
+        Threads next = new Threads();
+        int from = 0;
+        while (from < text.length()) {
+            int bestStart = -1;
+            int bestEnd = -1;
+            current.clear();
+            for (int i = from; i <= text.length(); i++) {
+                if (bestStart < 0 && !isExcluded(text, i)) {
+                    current.add(text, start, i, i);
+                }
+                if (current.size == 0) {
+                    if (bestStart >= 0 || i == text.length()) {
+                        break;
+                    }
+                    current.clear();
+                    continue;
+                }
+                next.clear();
+                int letter = i < text.length() ? text.charAt(i) - 'a' : -1;
+                for (int t = 0; t < current.size; t++) {
+                    int[] s = states.get(current.list[t]);
+                    int threadStart = current.startOf[t];
+                    if (bestStart >= 0 && threadStart > bestStart) {
+                        continue;
+                    }
+                    if (s[0] == MATCH) {
+                        if (i > threadStart && (bestStart < 0 || threadStart < bestStart
+                                || (threadStart == bestStart && i > bestEnd)))
+                        {
+                            bestStart = threadStart;
+                            bestEnd = i;
+                        }
+                    } else if (letter >= 0 && letter < 26 && (s[1] & (1 << letter)) != 0) {
+                        next.add(text, s[2], i + 1, threadStart);
+                    }
+                }
+                Threads swap = current;
+                current = next;
+                next = swap;
+            }
+            if (bestStart < 0) {
+                break;
+            }
+            matches.add(new int[]{bestStart, bestEnd});
+            from = bestEnd;
+        }
+        return matches;
+    }
+
+    /**
+     * Folds the text, and replaces every match with the replacement in the original text.
+     *
+     * @return the text itself if nothing matched.
+     */
+    public String replaceAll(String text, String replacement) {
+        Folded folded = Confusables.fold(text);
+        List<int[]> matches = findAll(folded.text());
+        if (matches.isEmpty()) {
+            return text;
+        }
+        StringBuilder sb = new StringBuilder(text.length());
+        int copied = 0;
+        for (int[] match : matches) {
+            int begin = folded.offsets()[match[0]];
+            sb.append(text, copied, begin).append(replacement);
+            copied = folded.offsets()[match[1]];
+        }
+        sb.append(text, copied, text.length());
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
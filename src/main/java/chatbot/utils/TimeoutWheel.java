@@ -0,0 +1,255 @@
+package chatbot.utils;
+
+import chatbot.message.TimeoutMessage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Hierarchical timer wheel for tracked timeouts, indexed by user. Scheduling, rescheduling and
+ * cancelling are O(1); advancing the wheel only touches the slots whose time has come, with
+ * entries in the coarser levels cascading down as their expiry gets closer.
+ */
+public class TimeoutWheel {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    /**
+     * With 100ms ticks six levels cover about 218 years, enough for the permaban length.
+     */
+    private static final int LEVELS = 6;
+
+    private final long tickNanos;
+    private final long originNanos;
+    private final Entry[][] wheel = new Entry[LEVELS][SLOTS];
+    private final Map<String, Entry> index = new HashMap<>();
+    private long currentTick;
+
+    private static final class Entry {
+        private final String key;
+        private TimeoutMessage timeout;
+        private long deadlineTick;
+        private int level;
+        private int slot;
+        private Entry prev;
+        private Entry next;
+
+        private Entry(String key, TimeoutMessage timeout) {
+            this.key = key;
+            this.timeout = timeout;
+        }
+    }
+
+    public TimeoutWheel() {
+        this(100, TimeUnit.MILLISECONDS, System.nanoTime());
+    }
+
+    public TimeoutWheel(long tick, TimeUnit unit, long originNanos) {
+        this.tickNanos = unit.toNanos(tick);
+        this.originNanos = originNanos;
+    }
+
+    private static String keyOf(TimeoutMessage timeout) {
+        if (timeout.getUserid() != null) {
+            return timeout.getUserid();
+        }
+        return timeout.getUsername().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return the tracked timeout for the same user as the given one, or null.
+     */
+    public synchronized TimeoutMessage get(TimeoutMessage timeout) {
+        Entry entry = index.get(keyOf(timeout));
+        return entry == null ? null : entry.timeout;
+    }
+
+    /**
+     * Tracks the timeout, replacing any previously tracked timeout of the same user.
+     */
+    public synchronized void schedule(TimeoutMessage timeout) {
+        String key = keyOf(timeout);
+        Entry entry = index.get(key);
+        if (entry == null) {
+            entry = new Entry(key, timeout);
+            index.put(key, entry);
+        } else {
+            unlink(entry);
+            entry.timeout = timeout;
+        }
+        entry.deadlineTick = deadlineTick(timeout);
+        insert(entry);
+    }
+
+    /**
+     * Moves an already tracked timeout to its new expiry after it has been reset.
+     */
+    public synchronized void reschedule(TimeoutMessage timeout) {
+        Entry entry = index.get(keyOf(timeout));
+        if (entry == null || entry.timeout != timeout) {
+            return;
+        }
+        unlink(entry);
+        entry.deadlineTick = deadlineTick(timeout);
+        insert(entry);
+    }
+
+    public synchronized boolean cancel(TimeoutMessage timeout) {
+        Entry entry = index.get(keyOf(timeout));
+        if (entry == null || entry.timeout != timeout) {
+            return false;
+        }
+        unlink(entry);
+        index.remove(entry.key);
+        return true;
+    }
+
+    /**
+     * Cancels every tracked timeout matching the predicate. This goes through all tracked timeouts.
+     */
+    public synchronized void removeIf(Predicate<TimeoutMessage> predicate) {
+        List<Entry> removed = new ArrayList<>();
+        for (Entry entry : index.values()) {
+            if (predicate.test(entry.timeout)) {
+                removed.add(entry);
+            }
+        }
+        for (Entry entry : removed) {
+            unlink(entry);
+            index.remove(entry.key);
+        }
+    }
+
+    public synchronized void forEach(Consumer<TimeoutMessage> consumer) {
+        for (Entry entry : index.values()) {
+            consumer.accept(entry.timeout);
+        }
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return index.isEmpty();
+    }
+
+    /**
+     * Advances the wheel to the given time and hands every timeout that has expired by then to
+     * the consumer, after removing it from the wheel.
+     *
+     * @param nowNanos current System.nanoTime()
+     * @param expired  receives the expired timeouts.
+     */
+    public void advance(long nowNanos, Consumer<TimeoutMessage> expired) {
+        List<TimeoutMessage> fired = new ArrayList<>();
+        synchronized (this) {
+            long targetTick = (nowNanos - originNanos) / tickNanos;
+            if (index.isEmpty()) {
+                currentTick = Math.max(currentTick, targetTick);
+            }
+            while (currentTick < targetTick) {
+                currentTick++;
+                for (int level = LEVELS - 1; level > 0; level--) {
+                    if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                        cascade(level, (int) (currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+                    }
+                }
+                int slot = (int) currentTick & SLOT_MASK;
+                Entry entry = wheel[0][slot];
+                while (entry != null) {
+                    Entry next = entry.next;
+                    if (entry.deadlineTick <= currentTick) {
+                        unlink(entry);
+                        index.remove(entry.key);
+                        fired.add(entry.timeout);
+                    }
+                    entry = next;
+                }
+            }
+        }
+        fired.forEach(expired);
+    }
+
+    /**
+     * @return nanoseconds until the next tick that has a timeout in it, or -1 if nothing is tracked.
+     * Entries in the coarser levels are only looked at when the finest level is empty, in which case
+     * the time until the finest level wraps around is returned.
+     */
+    public synchronized long nanosUntilNextExpiry(long nowNanos) {
+        if (index.isEmpty()) {
+            return -1;
+        }
+        long ticks = SLOTS - (currentTick & SLOT_MASK);
+        for (int i = 1; i <= SLOTS; i++) {
+            if (wheel[0][(int) (currentTick + i) & SLOT_MASK] != null) {
+                ticks = i;
+                break;
+            }
+        }
+        long nextNanos = originNanos + (currentTick + ticks) * tickNanos;
+        return Math.max(0, nextNanos - nowNanos);
+    }
+
+    private long deadlineTick(TimeoutMessage timeout) {
+        long deadlineNanos = timeout.getStartNanos() + TimeUnit.SECONDS.toNanos(timeout.getLength());
+        long ticks = Math.ceilDiv(deadlineNanos - originNanos, tickNanos);
+        return Math.max(ticks, currentTick + 1);
+    }
+
+    private void cascade(int level, int slot) {
+        Entry entry = wheel[level][slot];
+        wheel[level][slot] = null;
+        while (entry != null) {
+            Entry next = entry.next;
+            entry.prev = null;
+            entry.next = null;
+            insert(entry);
+            entry = next;
+        }
+    }
+
+    private void insert(Entry entry) {
+        long deadline = Math.max(entry.deadlineTick, currentTick + 1);
+        long delta = deadline - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        int slot;
+        if (delta >= 1L << (SLOT_BITS * LEVELS)) {
+            // past the range of the wheel, it is cascaded again after a full rotation.
+            slot = (int) ((currentTick >>> (SLOT_BITS * level)) - 1) & SLOT_MASK;
+        } else {
+            slot = (int) (deadline >>> (SLOT_BITS * level)) & SLOT_MASK;
+        }
+        entry.level = level;
+        entry.slot = slot;
+        entry.prev = null;
+        entry.next = wheel[level][slot];
+        if (entry.next != null) {
+            entry.next.prev = entry;
+        }
+        wheel[level][slot] = entry;
+    }
+
+    private void unlink(Entry entry) {
+        if (entry.prev != null) {
+            entry.prev.next = entry.next;
+        } else if (wheel[entry.level][entry.slot] == entry) {
+            wheel[entry.level][entry.slot] = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.prev = entry.prev;
+        }
+        entry.prev = null;
+        entry.next = null;
+    }
+}
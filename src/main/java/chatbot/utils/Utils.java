@@ -107,6 +107,56 @@ public class Utils {
         return word.substring(0, 1) + zws1 + zws2 + word.substring(1);
     }
 
+    /**
+     * Splits a message into parts that fit in one chat message, breaking at spaces where possible.
+     * A leading whisper command like "/w user " is repeated in front of every part.
+     *
+     * @param message   message to split.
+     * @param maxLength max length of each part including the whisper command.
+     * @param maxParts  parts after this are dropped and the last part ends with "..".
+     * @return the parts in order, the message itself if it fits.
+     */
+    public static List<String> splitMessage(final String message, int maxLength, int maxParts) {
+        if (message.length() <= maxLength) {
+            return List.of(message);
+        }
+        String prefix = "";
+        String rest = message;
+        if (message.startsWith("/w ")) {
+            int end = message.indexOf(' ', 3);
+            if (end > 0) {
+                prefix = message.substring(0, end + 1);
+                rest = message.substring(end + 1);
+            }
+        }
+        int length = maxLength - prefix.length();
+        List<String> parts = new ArrayList<>();
+        while (!rest.isEmpty()) {
+            if (parts.size() == maxParts - 1 && rest.length() > length) {
+                parts.add(prefix + rest.substring(0, cut(rest, length - 2)) + "..");
+                break;
+            }
+            if (rest.length() <= length) {
+                parts.add(prefix + rest);
+                break;
+            }
+            int end = rest.lastIndexOf(' ', length);
+            if (end <= 0) {
+                end = cut(rest, length);
+            }
+            parts.add(prefix + rest.substring(0, end).stripTrailing());
+            rest = rest.substring(end).stripLeading();
+        }
+        return parts;
+    }
+
+    /**
+     * @return length or one less if that would split a surrogate pair.
+     */
+    private static int cut(String s, int length) {
+        return Character.isHighSurrogate(s.charAt(length - 1)) ? length - 1 : length;
+    }
+
     /**
      * Gets an argument from a space separated message.
      *
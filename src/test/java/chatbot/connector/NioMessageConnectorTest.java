@@ -0,0 +1,111 @@
+package chatbot.connector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+
+public class NioMessageConnectorTest {
+
+  private final static Logger log = LogManager.getLogger(NioMessageConnectorTest.class);
+
+  private static final int LINES = 200_000;
+  private static final String PRIVMSG = "@badge-info=;subscriber=0;tmi-sent-ts=1700000000000;user-id=1 "
+      + ":tester!tester@tester.tmi.twitch.tv PRIVMSG #moonmoon :NaM message äöü 😀 ";
+  private static final String JOIN = ":tester!tester@tester.tmi.twitch.tv JOIN #moonmoon";
+
+  @Test
+  public void throughputTest() throws Exception {
+    try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+      CompletableFuture<Void> fakeIrc = CompletableFuture.runAsync(() -> serve(server));
+      NioMessageConnector connector = new NioMessageConnector("localhost", server.getLocalPort());
+
+      long start = System.nanoTime();
+      for (int i = 0; i < LINES; i++) {
+        assertEquals(PRIVMSG + i, connector.getMessage());
+      }
+      assertNull(connector.getMessage(), "JOIN lines should be filtered and the stream closed");
+      long elapsed = System.nanoTime() - start;
+      log.info("Read {} lines in {}ms ({} lines/s)", LINES, TimeUnit.NANOSECONDS.toMillis(elapsed),
+          LINES * 1_000_000_000L / elapsed);
+
+      connector.close();
+      fakeIrc.get(10, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  public void gatheredWriteTest() throws Exception {
+    try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+      NioMessageConnector connector = new NioMessageConnector("localhost", server.getLocalPort());
+      try (Socket socket = server.accept();
+          BufferedReader reader = new BufferedReader(
+              new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+        connector.sendMessages(List.of("PASS oauth:test\r\n", "NICK nambot\r\n", "JOIN #moonmoon\r\n"));
+        connector.sendMessage("PRIVMSG #moonmoon :äö\r\n");
+        assertEquals("PASS oauth:test", reader.readLine());
+        assertEquals("NICK nambot", reader.readLine());
+        assertEquals("JOIN #moonmoon", reader.readLine());
+        assertEquals("PRIVMSG #moonmoon :äö", reader.readLine());
+      }
+      connector.close();
+    }
+  }
+
+  @Test
+  public void closeEndsWaitingRead() throws Exception {
+    try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+      NioMessageConnector connector = new NioMessageConnector("localhost", server.getLocalPort());
+      try (Socket socket = server.accept()) {
+        CompletableFuture<String> read = CompletableFuture.supplyAsync(() -> {
+          try {
+            return connector.getMessage();
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+        // gives the reader time to block in select.
+        Thread.sleep(200);
+        connector.close();
+        assertNull(read.get(5, TimeUnit.SECONDS));
+      }
+    }
+  }
+
+  /**
+   * Writes all lines in uneven chunks so that lines and multibyte characters are split between
+   * reads.
+   */
+  private static void serve(ServerSocket server) {
+    try (Socket socket = server.accept(); OutputStream out = socket.getOutputStream()) {
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < LINES; i++) {
+        sb.append(PRIVMSG).append(i).append("\r\n");
+        if (i % 10 == 0) {
+          sb.append(JOIN).append("\r\n");
+        }
+        if (sb.length() > 7919) {
+          out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+          sb.setLength(0);
+        }
+      }
+      out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -0,0 +1,170 @@
+package chatbot.connector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class RedundantMessageConnectorTest {
+
+  private static final List<String> HANDSHAKE = List.of("PASS oauth:test\r\n", "JOIN #moonmoon\r\n");
+  private static final String JOINED = ":nambot.tmi.twitch.tv 366 nambot #moonmoon :End of /NAMES list";
+
+  /**
+   * Connection fed by the test, a null line closes it.
+   */
+  private static class FakeConnection implements MessageConnector {
+
+    final BlockingQueue<String> incoming = new LinkedBlockingQueue<>();
+    final List<String> sent = new CopyOnWriteArrayList<>();
+    volatile boolean closed;
+
+    void receive(String... lines) {
+      incoming.addAll(List.of(lines));
+    }
+
+    @Override
+    public String getMessage() {
+      try {
+        String line = incoming.take();
+        return line.isEmpty() ? null : line;
+      } catch (InterruptedException e) {
+        return null;
+      }
+    }
+
+    @Override
+    public void sendMessage(String message) {
+      sent.add(message);
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+      incoming.add("");
+    }
+  }
+
+  private static String privmsg(int id) {
+    return "@id=" + id + ";tmi-sent-ts=1700000000000 :user!user@user.tmi.twitch.tv PRIVMSG #moonmoon :message " + id;
+  }
+
+  private final BlockingQueue<FakeConnection> opened = new LinkedBlockingQueue<>();
+
+  private MessageConnector open() {
+    FakeConnection connection = new FakeConnection();
+    opened.add(connection);
+    return connection;
+  }
+
+  private List<String> read(MessageConnector connector, int count) throws Exception {
+    List<String> lines = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      lines.add(connector.getMessage());
+    }
+    return lines;
+  }
+
+  private static void awaitHandshake(FakeConnection connection) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (connection.sent.size() < HANDSHAKE.size() && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(HANDSHAKE, connection.sent.subList(0, HANDSHAKE.size()));
+  }
+
+  @Test
+  public void reconnectWithoutGap() throws Exception {
+    RedundantMessageConnector connector = new RedundantMessageConnector(this::open, () -> HANDSHAKE,
+        false);
+    FakeConnection first = opened.take();
+    first.receive(privmsg(1), privmsg(2), ":tmi.twitch.tv RECONNECT", privmsg(3));
+    assertEquals(List.of(privmsg(1), privmsg(2), privmsg(3)), read(connector, 3));
+
+    FakeConnection second = opened.poll(5, TimeUnit.SECONDS);
+    awaitHandshake(second);
+    // both see the same chat until the old one is dropped.
+    second.receive(privmsg(3), JOINED, privmsg(4), privmsg(5));
+    first.receive(privmsg(4));
+    assertEquals(List.of(privmsg(4), privmsg(5)), read(connector, 2));
+    assertTrue(first.closed);
+
+    connector.sendMessage("PRIVMSG #moonmoon :hi\r\n");
+    assertEquals("PRIVMSG #moonmoon :hi\r\n", second.sent.getLast());
+
+    second.receive(privmsg(6), "");
+    assertEquals(privmsg(6), connector.getMessage());
+    assertNull(connector.getMessage());
+  }
+
+  @Test
+  public void endIsNotLostWhenQueueIsFull() throws Exception {
+    RedundantMessageConnector connector = new RedundantMessageConnector(this::open, () -> HANDSHAKE,
+        false);
+    FakeConnection first = opened.take();
+    int count = 10_000;
+    List<String> lines = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      lines.add(privmsg(i));
+    }
+    first.receive(lines.toArray(String[]::new));
+    first.receive("");
+    // the connection fills the queue before anything is read.
+    Thread.sleep(200);
+
+    CompletableFuture<List<String>> read = CompletableFuture.supplyAsync(() -> {
+      try {
+        return read(connector, count + 1);
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    List<String> expected = new ArrayList<>(lines);
+    expected.add(null);
+    assertEquals(expected, read.get(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void permanentStandbyTakesOver() throws Exception {
+    RedundantMessageConnector connector = new RedundantMessageConnector(this::open, () -> HANDSHAKE,
+        true);
+    FakeConnection first = opened.take();
+    FakeConnection second = opened.poll(5, TimeUnit.SECONDS);
+    // nothing on the primary yet, so the standby has joined and answered the ping by the time
+    // its message is returned.
+    second.receive(JOINED, "PING :tmi.twitch.tv", privmsg(1));
+    assertEquals(privmsg(1), connector.getMessage());
+    assertEquals("PONG :tmi.twitch.tv\r\n", second.sent.getLast());
+    first.receive("PING :tmi.twitch.tv", privmsg(1), privmsg(2));
+    assertEquals(List.of("PING :tmi.twitch.tv", privmsg(2)), read(connector, 2));
+
+    // the primary drops, the standby continues and a new standby is opened.
+    CompletableFuture<String> next = CompletableFuture.supplyAsync(() -> {
+      try {
+        return connector.getMessage();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+    first.receive("");
+    FakeConnection third = opened.poll(5, TimeUnit.SECONDS);
+    awaitHandshake(third);
+    assertTrue(first.closed);
+    second.receive(privmsg(2), privmsg(3));
+    assertEquals(privmsg(3), next.get(5, TimeUnit.SECONDS));
+
+    connector.close();
+    assertTrue(second.closed);
+    assertTrue(third.closed);
+  }
+}
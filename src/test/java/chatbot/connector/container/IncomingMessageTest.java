@@ -0,0 +1,74 @@
+package chatbot.connector.container;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class IncomingMessageTest {
+
+  private static final String PRIVMSG = "@badge-info=;color=#FF0000;display-name=Tester;subscriber=1;"
+      + "tmi-sent-ts=1700000000000;user-id=12345;system-msg=hello\\sthere\\:\\\\ok "
+      + ":tester!tester@tester.tmi.twitch.tv PRIVMSG #moonmoon :!rq me: with a colon";
+
+  @Test
+  public void parsePrivmsgTest() {
+    IncomingMessage message = new IncomingMessage(PRIVMSG);
+    assertSame("PRIVMSG", message.getCommand());
+    assertEquals("tester", message.getName());
+    assertEquals("tester!tester@tester.tmi.twitch.tv", message.getSource());
+    assertEquals("!rq me: with a colon", message.getParams());
+    assertEquals("12345", message.getTag("user-id"));
+    assertEquals("1700000000000", message.getTag("tmi-sent-ts"));
+    assertTrue(message.tagEquals("subscriber", "1"));
+    assertEquals("", message.getTag("badge-info"));
+    assertNull(message.getTag("ban-duration"));
+    assertNull(message.getTag("user"));
+  }
+
+  @Test
+  public void tagEscapingTest() {
+    IncomingMessage message = new IncomingMessage(PRIVMSG);
+    assertEquals("hello there;\\ok", message.getTag("system-msg"));
+    assertEquals("a", IncomingMessage.unescape("a\\", 0, 2));
+    assertEquals("\r\nx", IncomingMessage.unescape("\\r\\n\\x", 0, 6));
+  }
+
+  @Test
+  public void parseWithoutTagsTest() {
+    IncomingMessage message = new IncomingMessage("PING :tmi.twitch.tv");
+    assertSame("PING", message.getCommand());
+    assertEquals("tmi.twitch.tv", message.getParams());
+    assertFalse(message.hasTag("user-id"));
+
+    message = new IncomingMessage(":tmi.twitch.tv 001 nambot :Welcome, GLHF!");
+    assertSame("001", message.getCommand());
+    assertEquals("Welcome, GLHF!", message.getParams());
+
+    message = new IncomingMessage(":tmi.twitch.tv RECONNECT");
+    assertTrue(message.isCommand("RECONNECT"));
+    assertEquals("", message.getParams());
+  }
+
+  @Test
+  public void parseClearchatTest() {
+    IncomingMessage message = new IncomingMessage(
+        "@ban-duration=600;room-id=1;target-user-id=42;tmi-sent-ts=1700000000001 "
+            + ":tmi.twitch.tv CLEARCHAT #moonmoon :baduser");
+    assertSame("CLEARCHAT", message.getCommand());
+    assertEquals("600", message.getTag("ban-duration"));
+    assertEquals("42", message.getTag("target-user-id"));
+    assertEquals("baduser", message.getParams());
+  }
+
+  @Test
+  public void reuseTest() {
+    IncomingMessage message = IncomingMessage.parseLocal(PRIVMSG);
+    assertSame(message, IncomingMessage.parseLocal(":tmi.twitch.tv UNKNOWNCMD #moonmoon"));
+    assertEquals("UNKNOWNCMD", message.getCommand());
+    assertNull(message.getTag("user-id"));
+  }
+}
@@ -0,0 +1,19 @@
+package chatbot.dao.db;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLTransientConnectionException;
+import org.junit.jupiter.api.Test;
+
+public class BatchingTest {
+
+  @Test
+  public void badRows() {
+    assertTrue(BatchingKt.isBadRow(new SQLIntegrityConstraintViolationException("duplicate")));
+    assertTrue(BatchingKt.isBadRow(new SQLException("too long", "22001")));
+    assertFalse(BatchingKt.isBadRow(new SQLTransientConnectionException("gone", "08003")));
+  }
+}
@@ -0,0 +1,65 @@
+package chatbot.dao.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class KnownUserIndexTest {
+
+  @TempDir
+  Path dir;
+
+  @Test
+  public void notReadyBeforeLoad() {
+    KnownUserIndex index = new KnownUserIndex(dir.resolve("users.snapshot"), 100);
+    index.add("nammer");
+    assertFalse(index.contains("nammer"));
+    index.load(consumer -> {});
+    assertTrue(index.contains("NAMMER"));
+  }
+
+  @Test
+  public void snapshotSkipsDatabase() {
+    Path snapshot = dir.resolve("users.snapshot");
+    AtomicInteger scans = new AtomicInteger();
+
+    KnownUserIndex first = new KnownUserIndex(snapshot, 100);
+    first.load(consumer -> {
+      scans.incrementAndGet();
+      List.of("Alice", "bob").forEach(consumer);
+    });
+    first.add("carol");
+    first.writeSnapshot();
+    assertTrue(Files.exists(snapshot));
+
+    KnownUserIndex second = new KnownUserIndex(snapshot, 100);
+    second.load(consumer -> scans.incrementAndGet());
+    assertEquals(1, scans.get());
+    assertTrue(second.contains("alice"));
+    assertTrue(second.contains("bob"));
+    assertTrue(second.contains("carol"));
+    assertFalse(second.contains("dave"));
+    assertEquals(3, second.size());
+  }
+
+  @Test
+  public void corruptSnapshotRebuilds() throws Exception {
+    Path snapshot = dir.resolve("users.snapshot");
+    Files.writeString(snapshot, "not a snapshot");
+
+    KnownUserIndex index = new KnownUserIndex(snapshot, 100);
+    index.load(consumer -> consumer.accept("alice"));
+    assertTrue(index.contains("alice"));
+
+    KnownUserIndex reloaded = new KnownUserIndex(snapshot, 100);
+    reloaded.load(consumer -> {});
+    assertTrue(reloaded.contains("alice"));
+  }
+}
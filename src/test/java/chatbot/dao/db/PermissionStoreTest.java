@@ -0,0 +1,60 @@
+package chatbot.dao.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import chatbot.dao.db.PermissionStore.Grants;
+import chatbot.enums.Command;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+public class PermissionStoreTest {
+
+  @Test
+  public void grantsFromDatabaseForm() {
+    Grants grants = Grants.of(Map.of("rs", true, "fs", false, "notacommand", true));
+
+    assertTrue(grants.get(Command.RS));
+    assertFalse(grants.get(Command.FS));
+    assertNull(grants.get(Command.RQ));
+    assertEquals(Map.of("rs", true, "fs", false), grants.toMap());
+  }
+
+  @Test
+  public void grantsOverwrite() {
+    Grants grants = Grants.NONE.with(Command.MCOUNT, true).with(Command.MCOUNT, false);
+
+    assertFalse(grants.get(Command.MCOUNT));
+    grants = grants.with(Command.MCOUNT, true);
+    assertTrue(grants.get(Command.MCOUNT));
+    assertEquals(Map.of("mcount", true), grants.toMap());
+  }
+
+  @Test
+  public void failedWriteChangesNothing() {
+    AtomicBoolean stored = new AtomicBoolean();
+    DatabaseHandler database = (DatabaseHandler) Proxy.newProxyInstance(DatabaseHandler.class.getClassLoader(),
+        new Class<?>[]{DatabaseHandler.class},
+        (proxy, method, args) -> method.getName().equals("setPermissions") ? stored.get() : null);
+    PermissionStore store = new PermissionStore(database);
+
+    assertFalse(store.set("User", Command.RS, true));
+    assertNull(store.get("user", Command.RS));
+
+    stored.set(true);
+    assertTrue(store.set("User", Command.RS, true));
+    assertTrue(store.get("user", Command.RS));
+  }
+
+  @Test
+  public void aliasesAreSeparate() {
+    Grants grants = Grants.NONE.with(Command.LM, true);
+
+    assertTrue(grants.get(Command.LM));
+    assertNull(grants.get(Command.LASTMESSAGE));
+  }
+}
@@ -0,0 +1,105 @@
+package chatbot.dao.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import chatbot.dao.db.SearchCache.MessagePattern;
+import chatbot.dao.db.SearchCache.Occurrence;
+import chatbot.message.LoggableMessage;
+import chatbot.utils.Utils;
+import java.time.Duration;
+import java.util.Date;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+
+public class SearchCacheTest {
+
+  private final SearchCache cache = new SearchCache("nambot", 100, Duration.ofMinutes(10));
+  private final AtomicInteger queries = new AtomicInteger();
+
+  private Supplier<OptionalLong> counting(long count) {
+    return () -> {
+      queries.incrementAndGet();
+      return OptionalLong.of(count);
+    };
+  }
+
+  private static LoggableMessage message(String sender, String text) {
+    return new LoggableMessage(sender, "1", text, false, false, text, "0");
+  }
+
+  private static boolean matches(String query, String message) {
+    return new MessagePattern(Utils.getWordList(query)).matches(SearchCache.tokenize(message));
+  }
+
+  @Test
+  public void repeatedSearchIsCached() {
+    assertEquals(OptionalLong.of(5), cache.search("nam", counting(5)));
+    assertEquals(OptionalLong.of(5), cache.search("nam", counting(7)));
+    assertEquals(1, queries.get());
+  }
+
+  @Test
+  public void loggedMessagesUpdateCounts() {
+    cache.search("nam", counting(5));
+    cache.searchUser("Someone", "nam", counting(2));
+    cache.messageCount("someone", counting(10));
+
+    cache.messageLogged(message("someone", "NAM nam"));
+    cache.messageLogged(message("other", "nammers"));
+    cache.messageLogged(message("nambot", "nam"));
+
+    assertEquals(OptionalLong.of(6), cache.search("nam", counting(0)));
+    assertEquals(OptionalLong.of(3), cache.searchUser("someone", "nam", counting(0)));
+    assertEquals(OptionalLong.of(11), cache.messageCount("Someone", counting(0)));
+    assertEquals(3, queries.get());
+  }
+
+  @Test
+  public void failedQueryIsNotCached() {
+    assertEquals(OptionalLong.empty(), cache.search("nam", OptionalLong::empty));
+    assertEquals(OptionalLong.of(4), cache.search("nam", counting(4)));
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void missingFirstOccurrenceDroppedOnMatch() {
+    Occurrence found = new Occurrence("someone", "nam", new Date(0));
+    Occurrence unexpected = new Occurrence("other", "nam", new Date(1));
+    assertTrue(cache.firstOccurrence("nam", Optional::empty).isEmpty());
+    assertTrue(cache.firstOccurrence("nam", () -> Optional.of(unexpected)).isEmpty());
+
+    cache.messageLogged(message("someone", "nam"));
+    assertEquals(Optional.of(found), cache.firstOccurrence("nam", () -> Optional.of(found)));
+    assertEquals(Optional.of(found), cache.firstOccurrence("nam", () -> Optional.of(unexpected)));
+    assertNull(cache.firstOccurrence("other", () -> null));
+  }
+
+  @Test
+  public void searchCommandsKeepMissingFirstOccurrence() {
+    Occurrence found = new Occurrence("someone", "nam", new Date(0));
+    assertTrue(cache.firstOccurrence("nam", Optional::empty).isEmpty());
+
+    cache.messageLogged(message("someone", "!fs nam"));
+    cache.messageLogged(message("someone", "!searchuser other nam"));
+    assertTrue(cache.firstOccurrence("nam", () -> Optional.of(found)).isEmpty());
+  }
+
+  @Test
+  public void patternMatching() {
+    assertTrue(matches("nam", "a NaM b"));
+    assertFalse(matches("nam", "nammer"));
+    assertTrue(matches("nam*", "nammer"));
+    assertTrue(matches("n?m", "nom"));
+    assertTrue(matches("\"split message\"", "a split message"));
+    assertFalse(matches("\"split message\"", "message split"));
+    assertTrue(matches("nam -peepo", "nam nam"));
+    assertFalse(matches("nam -peepo", "nam peepo"));
+    assertFalse(matches("", "nam"));
+  }
+}
@@ -0,0 +1,45 @@
+package chatbot.dao.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import chatbot.dao.db.SinkHealth.State;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+public class SinkHealthTest {
+
+  private final AtomicLong now = new AtomicLong();
+  private double random = 0;
+  private final SinkHealth health = new SinkHealth("test", () -> random, now::get);
+
+  @Test
+  public void backoffDoublesWithJitter() {
+    assertEquals(Duration.ofMillis(250), health.failed());
+    random = 1;
+    assertEquals(Duration.ofMillis(1000), health.failed());
+    random = 0.5;
+    assertEquals(Duration.ofMillis(1500), health.failed());
+    assertEquals(State.CLOSED, health.getState());
+  }
+
+  @Test
+  public void opensAfterThresholdAndHalfOpensLater() {
+    for (int i = 1; i < SinkHealth.THRESHOLD; i++) {
+      assertTrue(health.failed().compareTo(SinkHealth.MAX_DELAY) <= 0);
+    }
+    assertEquals(SinkHealth.OPEN_FOR, health.failed());
+    assertEquals(State.OPEN, health.getState());
+
+    now.addAndGet(SinkHealth.OPEN_FOR.toNanos());
+    assertEquals(State.HALF_OPEN, health.getState());
+    assertEquals(SinkHealth.OPEN_FOR, health.failed(), "a failed attempt while half open opens it again");
+    assertEquals(State.OPEN, health.getState());
+
+    health.succeeded();
+    assertEquals(State.CLOSED, health.getState());
+    assertEquals(0, health.getFailures());
+    assertEquals(Duration.ofMillis(250), health.failed());
+  }
+}
@@ -0,0 +1,156 @@
+package chatbot.dao.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import chatbot.message.LoggableMessage;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.impl.BaseHttpSolrClient.RemoteSolrException;
+import org.apache.solr.client.solrj.impl.HttpJdkSolrClient;
+import org.apache.solr.common.util.JavaBinCodec;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Runs the indexer against an HTTP server that answers /update the way solr does.
+ */
+public class SolrIndexerTest {
+
+  @TempDir
+  Path dir;
+
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final List<JsonNode> indexed = new CopyOnWriteArrayList<>();
+  private final List<Integer> requestSizes = new CopyOnWriteArrayList<>();
+  private final AtomicInteger status = new AtomicInteger(200);
+  private HttpServer server;
+  private SolrClient client;
+  private DeadLetters deadLetters;
+
+  @BeforeEach
+  public void start() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/solr/core/update", this::update);
+    server.start();
+    client = new HttpJdkSolrClient.Builder("http://127.0.0.1:" + server.getAddress().getPort() + "/solr/core")
+        .withConnectionTimeout(5, TimeUnit.SECONDS)
+        .withRequestTimeout(10, TimeUnit.SECONDS)
+        .build();
+    deadLetters = new DeadLetters(dir.resolve("dead-letters.tsv"));
+  }
+
+  @AfterEach
+  public void stop() throws IOException {
+    client.close();
+    server.stop(0);
+  }
+
+  private void update(HttpExchange exchange) throws IOException {
+    byte[] body = exchange.getRequestBody().readAllBytes();
+    requestSizes.add(body.length);
+    JsonNode documents = mapper.readTree(body);
+    int code = status.get();
+    for (JsonNode document : documents) {
+      if (document.get("message").asText().contains("BAD")) {
+        code = 400;
+      }
+    }
+    if (code == 200) {
+      documents.forEach(indexed::add);
+    }
+
+    NamedList<Object> header = new SimpleOrderedMap<>();
+    header.add("status", code == 200 ? 0 : code);
+    NamedList<Object> response = new SimpleOrderedMap<>();
+    response.add("responseHeader", header);
+    if (code != 200) {
+      NamedList<Object> error = new SimpleOrderedMap<>();
+      error.add("msg", "rejected");
+      error.add("code", code);
+      response.add("error", error);
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (JavaBinCodec codec = new JavaBinCodec()) {
+      codec.marshal(response, bytes);
+    }
+    exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+    exchange.sendResponseHeaders(code, bytes.size());
+    try (OutputStream out = exchange.getResponseBody()) {
+      bytes.writeTo(out);
+    }
+  }
+
+  private static List<LoggableMessage> messages(int count, String prefix) {
+    List<LoggableMessage> messages = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      messages.add(new LoggableMessage("user" + i % 10, "1", prefix + " message " + i, false, false,
+          "full " + i, String.valueOf(1700000000000L + i)));
+    }
+    return messages;
+  }
+
+  @Test
+  public void writesDocumentFields() throws Exception {
+    LoggableMessage message = messages(1, "\"quoted\"").get(0);
+    new SolrIndexer(client, deadLetters, SolrIndexer.MAX_CHUNK_BYTES).index(List.of(message));
+
+    assertEquals(1, indexed.size());
+    JsonNode document = indexed.get(0);
+    assertEquals(message.getUUID(), document.get("id").asText());
+    assertEquals("2023-11-14T22:13:20Z", document.get("time").asText());
+    assertEquals("user0", document.get("username").asText());
+    assertEquals("\"quoted\" message 0", document.get("message").asText());
+  }
+
+  @Test
+  public void splitsIntoBoundedChunks() throws Exception {
+    new SolrIndexer(client, deadLetters, 4096).index(messages(500, "x".repeat(20)));
+
+    assertEquals(500, indexed.size());
+    assertTrue(requestSizes.size() > 1, requestSizes.size() + " requests");
+    for (int size : requestSizes) {
+      assertTrue(size <= 4096, size + " bytes");
+    }
+  }
+
+  @Test
+  public void badDocumentsAreDeadLettered() throws Exception {
+    List<LoggableMessage> messages = new ArrayList<>(messages(10, "good"));
+    messages.add(3, messages(1, "BAD").get(0));
+    new SolrIndexer(client, deadLetters, SolrIndexer.MAX_CHUNK_BYTES).index(messages);
+
+    assertEquals(10, indexed.size());
+    List<String> lines = Files.readAllLines(dir.resolve("dead-letters.tsv"));
+    assertEquals(1, lines.size());
+    assertTrue(lines.get(0).contains("\tsolr\t"), lines.get(0));
+  }
+
+  @Test
+  public void serverErrorsAreThrown() {
+    status.set(503);
+
+    assertThrows(RemoteSolrException.class,
+        () -> new SolrIndexer(client, deadLetters, SolrIndexer.MAX_CHUNK_BYTES).index(messages(5, "good")));
+    assertEquals(0, indexed.size());
+  }
+}
@@ -0,0 +1,163 @@
+package chatbot.dao.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import chatbot.singleton.SharedState;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.impl.HttpJdkSolrClient;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.util.JavaBinCodec;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Runs the solr reads of {@link SQLSolrHandler} against an HTTP server that answers /select the way
+ * solr does.
+ */
+public class SolrReadTest {
+
+  private static final long FOUND = 42;
+
+  @TempDir
+  Path dir;
+
+  private final AtomicInteger requests = new AtomicInteger();
+  private volatile CountDownLatch arrived;
+  private HttpServer server;
+  private String url;
+
+  @BeforeEach
+  public void start() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/solr/core/select", this::select);
+    server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    server.start();
+    url = "http://127.0.0.1:" + server.getAddress().getPort() + "/solr/core";
+  }
+
+  @AfterEach
+  public void stop() {
+    server.stop(0);
+  }
+
+  private void select(HttpExchange exchange) throws IOException {
+    requests.incrementAndGet();
+    CountDownLatch latch = arrived;
+    if (latch != null) {
+      // only answers once every expected request is waiting.
+      latch.countDown();
+      try {
+        latch.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    SolrDocumentList results = new SolrDocumentList();
+    results.setNumFound(FOUND);
+    SolrDocument document = new SolrDocument();
+    document.setField("username", "someone");
+    document.setField("message", "nam nam");
+    document.setField("time", new Date(0));
+    results.add(document);
+    NamedList<Object> header = new SimpleOrderedMap<>();
+    header.add("status", 0);
+    NamedList<Object> response = new SimpleOrderedMap<>();
+    response.add("responseHeader", header);
+    response.add("response", results);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (JavaBinCodec codec = new JavaBinCodec()) {
+      codec.marshal(response, bytes);
+    }
+    exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+    exchange.sendResponseHeaders(200, bytes.size());
+    try (OutputStream out = exchange.getResponseBody()) {
+      bytes.writeTo(out);
+    }
+  }
+
+  private SolrClient client() {
+    return new HttpJdkSolrClient.Builder(url)
+        .withConnectionTimeout(5, TimeUnit.SECONDS)
+        .withRequestTimeout(7, TimeUnit.SECONDS)
+        .build();
+  }
+
+  private SQLSolrHandler handler(SolrClient client) {
+    SearchCache cache = new SearchCache("bot", 1000, Duration.ofMinutes(1));
+    return new SQLSolrHandler(cache, new KnownUserIndex(dir.resolve("known-users"), 1000), client);
+  }
+
+  @Test
+  public void sharedClientAnswersEveryQuery() throws IOException {
+    try (SolrClient client = client()) {
+      SQLSolrHandler handler = handler(client);
+      for (int i = 0; i < 20; i++) {
+        assertEquals(OptionalLong.of(FOUND), handler.search("word" + i));
+      }
+    }
+
+    assertEquals(20, requests.get());
+  }
+
+  @Test
+  public void cachedFirstOccurrenceIsRedactedOnceUserOptsOut() throws IOException {
+    SharedState state = SharedState.getInstance();
+    try (SolrClient client = client()) {
+      SQLSolrHandler handler = handler(client);
+      assertTrue(handler.firstOccurrence("nam").orElseThrow().contains(" someone: nam nam"));
+
+      state.disabledUsers.add("Someone");
+      String cached = handler.firstOccurrence("nam").orElseThrow();
+      assertTrue(cached.contains(" <redacted>: nam nam"), cached);
+      assertEquals(1, requests.get());
+    } finally {
+      state.disabledUsers.remove("Someone");
+    }
+  }
+
+  @Test
+  public void concurrentLookupsShareTheClient() throws IOException {
+    int lookups = 5;
+    arrived = new CountDownLatch(lookups);
+    try (SolrClient client = client()) {
+      SQLSolrHandler handler = handler(client);
+      List<CompletableFuture<OptionalLong>> counts = new ArrayList<>();
+      for (int i = 0; i < lookups; i++) {
+        String word = "word" + i;
+        counts.add(CompletableFuture.supplyAsync(() -> handler.searchUser("user", word),
+            task -> Thread.ofVirtual().start(task)));
+      }
+
+      for (CompletableFuture<OptionalLong> count : counts) {
+        assertEquals(OptionalLong.of(FOUND), count.orTimeout(10, TimeUnit.SECONDS).join());
+      }
+    }
+    // the server waits for all of them before answering, so they were all in flight at once.
+    assertEquals(0, arrived.getCount());
+  }
+}
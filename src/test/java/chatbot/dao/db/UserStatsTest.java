@@ -0,0 +1,173 @@
+package chatbot.dao.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs the stats against a connection that records the upserted rows instead of writing them.
+ */
+public class UserStatsTest {
+
+  private final List<Map<Integer, Object>> written = new ArrayList<>();
+  private final List<Map<Integer, Object>> seeded = new ArrayList<>();
+  private boolean failing;
+  private int connections;
+
+  private Connection connection() {
+    connections++;
+    Map<String, List<Map<Integer, Object>>> batches = new LinkedHashMap<>();
+    return proxy(Connection.class, (name, args) -> switch (name) {
+      case "prepareStatement" -> statement(batches.computeIfAbsent((String) args[0], sql -> new ArrayList<>()));
+      case "commit" -> {
+        batches.forEach((sql, rows) -> (sql.contains("INSERT IGNORE") ? seeded : written).addAll(rows));
+        yield null;
+      }
+      default -> null;
+    });
+  }
+
+  private PreparedStatement statement(List<Map<Integer, Object>> batch) {
+    AtomicReference<Map<Integer, Object>> row = new AtomicReference<>(new HashMap<>());
+    return proxy(PreparedStatement.class, (name, args) -> switch (name) {
+      case "setString", "setLong", "setTimestamp" -> row.get().put((Integer) args[0], args[1]);
+      case "setNull" -> row.get().put((Integer) args[0], null);
+      case "addBatch" -> {
+        batch.add(row.getAndSet(new HashMap<>()));
+        yield null;
+      }
+      case "executeBatch" -> {
+        if (failing) {
+          throw new SQLException("connection lost", "08003");
+        }
+        yield new int[batch.size()];
+      }
+      default -> null;
+    });
+  }
+
+  private interface Handler {
+    Object invoke(String name, Object[] args) throws Exception;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T proxy(Class<T> type, Handler handler) {
+    return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+        (proxy, method, args) -> handler.invoke(method.getName(), args));
+  }
+
+  private UserStats stats(Duration flushInterval, int maxPending) {
+    return new UserStats(flushInterval, maxPending, this::connection);
+  }
+
+  private Map<Integer, Object> row(String username) {
+    return written.stream().filter(row -> username.equals(row.get(1))).findFirst().orElseThrow();
+  }
+
+  @Test
+  public void mergesChangesPerUser() {
+    UserStats stats = stats(Duration.ofHours(1), 1000);
+    stats.messageLogged("a", 5, new Timestamp(5));
+    stats.messageLogged("a", 3, new Timestamp(3));
+    stats.messageLogged("a", 7, new Timestamp(7));
+    stats.timeoutAdded("a", 60);
+    stats.timeoutAdded("b", 30);
+
+    assertTrue(stats.flush());
+    assertEquals(2, written.size());
+    Map<Integer, Object> a = row("a");
+    assertEquals(3L, a.get(2));
+    assertEquals(new Timestamp(3), a.get(3));
+    assertEquals(7L, a.get(4));
+    assertEquals(new Timestamp(7), a.get(5));
+    assertEquals(3L, a.get(6));
+    assertEquals(60L, a.get(7));
+    Map<Integer, Object> b = row("b");
+    assertNull(b.get(2));
+    assertNull(b.get(4));
+    assertEquals(0L, b.get(6));
+    assertEquals(30L, b.get(7));
+  }
+
+  @Test
+  public void userWithOnlyTimeoutsStartsFromTheirTotal() {
+    UserStats stats = stats(Duration.ofHours(1), 1000);
+    stats.timeoutAdded("timedout", 60);
+    stats.timeoutAdded("timedout", 30);
+
+    assertTrue(stats.flush());
+    // the row is seeded from users.timeout less the 90 seconds that are already in there, then
+    // the upsert adds them.
+    assertEquals(1, seeded.size());
+    assertEquals(90L, seeded.get(0).get(1));
+    assertEquals("timedout", seeded.get(0).get(2));
+    Map<Integer, Object> row = row("timedout");
+    assertNull(row.get(2));
+    assertEquals(0L, row.get(6));
+    assertEquals(90L, row.get(7));
+  }
+
+  @Test
+  public void failedFlushKeepsChanges() {
+    UserStats stats = stats(Duration.ofHours(1), 1000);
+    stats.messageLogged("a", 5, new Timestamp(5));
+    failing = true;
+    assertFalse(stats.flush());
+
+    stats.messageLogged("a", 2, new Timestamp(2));
+    stats.messageLogged("a", 9, new Timestamp(9));
+    failing = false;
+    assertTrue(stats.flush());
+
+    assertEquals(1, written.size());
+    Map<Integer, Object> a = row("a");
+    assertEquals(2L, a.get(2));
+    assertEquals(9L, a.get(4));
+    assertEquals(3L, a.get(6));
+
+    // written once, nothing is left for the next flush.
+    assertTrue(stats.flush());
+    assertEquals(1, written.size());
+  }
+
+  @Test
+  public void flushIfDueWaitsForEnoughUsers() {
+    UserStats stats = stats(Duration.ofHours(1), 2);
+    stats.messageLogged("a", 1, new Timestamp(1));
+    stats.flushIfDue();
+    assertEquals(0, connections);
+
+    stats.messageLogged("b", 2, new Timestamp(2));
+    stats.flushIfDue();
+    assertEquals(2, written.size());
+  }
+
+  @Test
+  public void flushIfDueAfterInterval() throws InterruptedException {
+    UserStats stats = stats(Duration.ofMillis(20), 1000);
+    stats.flushIfDue();
+    Thread.sleep(30);
+    stats.flushIfDue();
+    assertEquals(0, connections);
+
+    stats.messageLogged("a", 1, new Timestamp(1));
+    Thread.sleep(30);
+    stats.flushIfDue();
+    assertEquals(1, written.size());
+  }
+}
@@ -0,0 +1,69 @@
+package chatbot.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class BlacklistMatcherTest {
+
+  private static final String ZWS = "\uDB40\uDC00";
+
+  @Test
+  public void wordsOnlyMatchWholeWords() {
+    BlacklistMatcher matcher = BlacklistMatcher.of(List.of("bad"), List.of());
+
+    assertEquals("b" + ZWS + "ad word, b" + ZWS + "ad.", matcher.escape("bad word, bad."));
+    assertEquals("badly abad", matcher.escape("badly abad"));
+  }
+
+  @Test
+  public void textMatchesInsideWords() {
+    BlacklistMatcher matcher = BlacklistMatcher.of(List.of(), List.of("bad"));
+
+    assertEquals("b" + ZWS + "adly ab" + ZWS + "ad", matcher.escape("badly abad"));
+  }
+
+  @Test
+  public void ignoresCaseAndKeepsOriginalCasing() {
+    BlacklistMatcher matcher = BlacklistMatcher.of(List.of("bad"), List.of());
+
+    assertEquals("B" + ZWS + "aD", matcher.escape("BaD"));
+  }
+
+  @Test
+  public void overlappingMatchesPreferFirstThenLongest() {
+    BlacklistMatcher matcher = BlacklistMatcher.of(List.of(), List.of("abc", "abcd", "bcde", "she", "he", "hers"));
+
+    assertEquals("a" + ZWS + "bcde", matcher.escape("abcde"));
+    assertEquals("u" + "s" + ZWS + "hers", matcher.escape("ushers"));
+  }
+
+  @Test
+  public void sameAsRegexForPlainPhrases() {
+    List<String> words = List.of("nam", "forsen", "pepega");
+    List<String> texts = List.of("xqc", "lul");
+    BlacklistMatcher matcher = BlacklistMatcher.of(words, texts);
+
+    for (String msg : List.of("nam forsen", "NaM said xQcL", "namnam lul", "forsen's pepega, nam!",
+        "nothing here", "lullul")) {
+      String expected = msg;
+      for (String word : words) {
+        expected = expected.replaceAll("\\b(?i)" + word + "\\b", Utils.addZws(word));
+      }
+      for (String text : texts) {
+        expected = expected.replaceAll("(?i)" + text, Utils.addZws(text));
+      }
+      assertEquals(expected.toLowerCase(), matcher.escape(msg).toLowerCase(), msg);
+    }
+  }
+
+  @Test
+  public void emptyListReturnsMessage() {
+    String msg = "nothing";
+
+    assertSame(msg, BlacklistMatcher.of(List.of(), List.of()).escape(msg));
+    assertSame(msg, BlacklistMatcher.of(List.of("bad"), List.of()).escape(msg));
+  }
+}
@@ -0,0 +1,55 @@
+package chatbot.utils;
+
+import static chatbot.enums.Command.FIRSTMESSAGE;
+import static chatbot.enums.Command.FM;
+import static chatbot.enums.Command.LM;
+import static chatbot.enums.Command.LS;
+import static chatbot.enums.Command.NAM;
+import static chatbot.enums.Command.NAMES;
+import static chatbot.enums.Command.RQ;
+import static chatbot.enums.Command.RS;
+import static chatbot.utils.CommandRecognizer.recognize;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import chatbot.enums.Command;
+import java.util.stream.Stream;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+public class CommandRecognizerTest {
+
+  static Stream<Arguments> messagesForRecognize() {
+    return Stream.of(
+        Arguments.of(RQ, "!rq"),
+        Arguments.of(RQ, "!rq "),
+        Arguments.of(RQ, "!RQ\t"),
+        Arguments.of(RS, "!rs me"),
+        Arguments.of(RS, "!rs tester test"),
+        Arguments.of(RS, "!rs  \uDB40\uDC00"),
+        Arguments.of(RS, "!r\uDB40\uDC00s"),
+        Arguments.of(NAM, "!nam"),
+        Arguments.of(NAMES, "!NaMeS me"),
+        Arguments.of(LM, "!lm tester"),
+        Arguments.of(FM, "!fm"),
+        Arguments.of(LS, "!ls tester"),
+        Arguments.of(FIRSTMESSAGE, "!firstmessage"),
+        Arguments.of(null, "!rq\ttester"),
+        Arguments.of(null, "!rss"),
+        Arguments.of(null, "!rs*"),
+        Arguments.of(null, "!na"),
+        Arguments.of(null, "*"),
+        Arguments.of(null, "rq"),
+        Arguments.of(null, ""),
+        Arguments.of(null, "!"),
+        Arguments.of(null, "! rs"),
+        Arguments.of(null, "!rqä")
+    );
+  }
+
+  @ParameterizedTest
+  @MethodSource("messagesForRecognize")
+  public void recognizeTest(Command expected, String input) {
+    assertEquals(expected, recognize(input));
+  }
+}
@@ -0,0 +1,217 @@
+package chatbot.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import chatbot.message.LoggableMessage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LogSpoolTest {
+
+  @TempDir
+  Path dir;
+
+  private static LoggableMessage message(String text) {
+    return new LoggableMessage("user", "1", text, false, false, "full " + text, "1700000000000");
+  }
+
+  private static List<String> texts(List<LoggableMessage> messages) {
+    return messages.stream().map(LoggableMessage::getStringMessage).toList();
+  }
+
+  private static List<String> pollAll(LogSpool.Cursor cursor) throws Exception {
+    // everything already appended is read without waiting for more.
+    List<LoggableMessage> read = new ArrayList<>();
+    cursor.poll(read, 1000, Duration.ZERO);
+    return texts(read);
+  }
+
+  private long segments() throws IOException {
+    try (Stream<Path> files = Files.list(dir)) {
+      return files.filter(p -> p.toString().endsWith(".seg")).count();
+    }
+  }
+
+  @Test
+  public void readsUpToMax() throws Exception {
+    LogSpool spool = new LogSpool(dir, 1024);
+    LogSpool.Cursor cursor = spool.cursor("a");
+    for (int i = 0; i < 5; i++) {
+      spool.append(message("m" + i));
+    }
+
+    List<LoggableMessage> batch = new ArrayList<>();
+    assertTrue(cursor.poll(batch, 3, Duration.ofSeconds(10)));
+    assertEquals(List.of("m0", "m1", "m2"), texts(batch));
+    assertEquals("full m0", batch.get(0).getFullMsg());
+    assertEquals(List.of("m3", "m4"), pollAll(cursor));
+  }
+
+  @Test
+  public void cursorsAreIndependent() throws Exception {
+    LogSpool spool = new LogSpool(dir, 1024);
+    LogSpool.Cursor a = spool.cursor("a");
+    LogSpool.Cursor b = spool.cursor("b");
+    spool.append(message("m0"));
+    spool.append(message("m1"));
+
+    assertEquals(List.of("m0", "m1"), pollAll(a));
+    assertEquals(List.of("m0", "m1"), pollAll(b));
+  }
+
+  @Test
+  public void uncommittedAreReadAgainAfterRestart() throws Exception {
+    LogSpool spool = new LogSpool(dir, 1024);
+    LogSpool.Cursor a = spool.cursor("a");
+    LogSpool.Cursor b = spool.cursor("b");
+    spool.append(message("m0"));
+    spool.append(message("m1"));
+    pollAll(a);
+    a.commit();
+    spool.append(message("m2"));
+    pollAll(b);
+    // no close, as if the process died after the last sync.
+    spool.sync();
+
+    LogSpool reopened = new LogSpool(dir, 1024);
+    assertEquals(List.of("m2"), pollAll(reopened.cursor("a")));
+    assertEquals(List.of("m0", "m1", "m2"), pollAll(reopened.cursor("b")));
+  }
+
+  @Test
+  public void tornRecordIsDropped() throws Exception {
+    LogSpool spool = new LogSpool(dir, 1024);
+    spool.append(message("m0"));
+    spool.append(message("m1"));
+    spool.sync();
+
+    Path segment;
+    try (Stream<Path> files = Files.list(dir)) {
+      segment = files.filter(p -> p.toString().endsWith(".seg")).findFirst().orElseThrow();
+    }
+    int first = MessageSpill.toBytes(message("m0")).length + 8;
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+      // corrupt the payload of the second record.
+      channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3}), first + 8);
+    }
+
+    LogSpool reopened = new LogSpool(dir, 1024);
+    LogSpool.Cursor cursor = reopened.cursor("a");
+    assertEquals(List.of("m0"), pollAll(cursor));
+    reopened.append(message("m2"));
+    assertEquals(List.of("m2"), pollAll(cursor));
+  }
+
+  @Test
+  public void corruptRecordInOlderSegmentIsSkipped() throws Exception {
+    LogSpool spool = new LogSpool(dir, 256);
+    spool.cursor("a");
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      spool.append(message("m" + i));
+      expected.add("m" + i);
+    }
+    spool.sync();
+    assertTrue(segments() > 1);
+
+    Path oldest;
+    try (Stream<Path> files = Files.list(dir)) {
+      oldest = files.filter(p -> p.toString().endsWith(".seg")).sorted().findFirst().orElseThrow();
+    }
+    int first = MessageSpill.toBytes(message("m0")).length + 8;
+    try (FileChannel channel = FileChannel.open(oldest, StandardOpenOption.WRITE)) {
+      // recovery only checks the last segment, the reader has to notice this one.
+      channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3}), first + 8);
+    }
+
+    LogSpool reopened = new LogSpool(dir, 256);
+    expected.remove("m1");
+    assertEquals(expected, pollAll(reopened.cursor("a")));
+  }
+
+  @Test
+  public void segmentsAreDeletedOnceEveryCursorCommitted() throws Exception {
+    LogSpool spool = new LogSpool(dir, 256);
+    LogSpool.Cursor a = spool.cursor("a");
+    LogSpool.Cursor b = spool.cursor("b");
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      spool.append(message("m" + i));
+      expected.add("m" + i);
+    }
+    long written = segments();
+    assertTrue(written > 2, written + " segments");
+
+    assertEquals(expected, pollAll(a));
+    a.commit();
+    spool.sync();
+    assertEquals(written, segments());
+
+    assertEquals(expected, pollAll(b));
+    b.commit();
+    spool.sync();
+    assertEquals(1, segments());
+    assertEquals(0, spool.pendingBytes());
+  }
+
+  @Test
+  public void oldestSegmentsDroppedOverMaxSize() throws Exception {
+    LogSpool spool = new LogSpool(dir, 1024, 2048);
+    LogSpool.Cursor behind = spool.cursor("behind");
+    for (int i = 0; i < 100; i++) {
+      spool.append(message("m" + i));
+    }
+
+    assertTrue(spool.sizeBytes() <= 2048, spool.sizeBytes() + " bytes");
+    assertTrue(segments() <= 2);
+    List<String> read = pollAll(behind);
+    assertFalse(read.contains("m0"));
+    assertEquals("m99", read.getLast());
+  }
+
+  @Test
+  public void messageLargerThanSegment() throws Exception {
+    LogSpool spool = new LogSpool(dir, 64);
+    LogSpool.Cursor cursor = spool.cursor("a");
+    String large = "x".repeat(500);
+    spool.append(message("m0"));
+    spool.append(message(large));
+    spool.append(message("m1"));
+
+    assertEquals(List.of("m0", large, "m1"), pollAll(cursor));
+    LogSpool reopened = new LogSpool(dir, 64);
+    assertEquals(List.of("m0", large, "m1"), pollAll(reopened.cursor("a")));
+  }
+
+  @Test
+  public void pollWaitsForAppend() throws Exception {
+    LogSpool spool = new LogSpool(dir, 1024);
+    LogSpool.Cursor cursor = spool.cursor("a");
+    Thread appender = Thread.ofVirtual().start(() -> {
+      try {
+        Thread.sleep(50);
+        spool.append(message("m0"));
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    });
+
+    List<LoggableMessage> batch = new ArrayList<>();
+    assertTrue(cursor.poll(batch, 10, Duration.ZERO));
+    assertEquals(List.of("m0"), texts(batch));
+    appender.join();
+    assertFalse(cursor.poll(batch, 10, Duration.ZERO));
+  }
+}
@@ -0,0 +1,106 @@
+package chatbot.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import chatbot.enums.OverflowPolicy;
+import chatbot.enums.WaitStrategy;
+import chatbot.message.LoggableMessage;
+import chatbot.message.Message;
+import chatbot.message.SimpleMessage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MessageQueueTest {
+
+  @TempDir
+  Path dir;
+
+  private static LoggableMessage loggable(int i) {
+    return new LoggableMessage("user" + i, String.valueOf(i), "message " + i, i % 2 == 0, false,
+        "@tags :user" + i + " PRIVMSG #channel :message " + i, String.valueOf(1700000000000L + i));
+  }
+
+  @Test
+  public void dropsOldest() {
+    MessageQueue queue = new MessageQueue("test", 4, OverflowPolicy.DROP_OLDEST,
+        WaitStrategy.BLOCKING);
+    for (int i = 0; i < 6; i++) {
+      queue.add(new SimpleMessage("user", String.valueOf(i)));
+    }
+    List<Message> messages = new ArrayList<>();
+    queue.drainTo(messages);
+    assertEquals(List.of("2", "3", "4", "5"),
+        messages.stream().map(Message::getStringMessage).toList());
+  }
+
+  @Test
+  public void blocksUntilSpace() throws InterruptedException {
+    MessageQueue queue = new MessageQueue("test", 2, OverflowPolicy.BLOCK, WaitStrategy.BLOCKING);
+    queue.add(new SimpleMessage("user", "first"));
+    queue.add(new SimpleMessage("user", "second"));
+    Thread producer = Thread.ofVirtual().start(() -> queue.add(new SimpleMessage("user", "third")));
+    producer.join(100);
+    assertTrue(producer.isAlive());
+    assertEquals("first", queue.take().getStringMessage());
+    assertEquals("second", queue.take().getStringMessage());
+    assertEquals("third", queue.poll(5, TimeUnit.SECONDS).getStringMessage());
+    producer.join();
+  }
+
+  @Test
+  public void spillsInOrder() throws InterruptedException {
+    Path spillFile = dir.resolve("test.spill");
+    MessageQueue queue = new MessageQueue("test", 4, OverflowPolicy.SPILL_TO_DISK,
+        WaitStrategy.BLOCKING, spillFile);
+    for (int i = 0; i < 20; i++) {
+      queue.add(loggable(i));
+    }
+    assertEquals(4, queue.size());
+    assertTrue(Files.exists(spillFile));
+
+    for (int i = 0; i < 20; i++) {
+      Message message = queue.poll(1, TimeUnit.SECONDS);
+      assertInstanceOf(LoggableMessage.class, message);
+      LoggableMessage expected = loggable(i);
+      LoggableMessage actual = (LoggableMessage) message;
+      assertEquals(expected.getSender(), actual.getSender());
+      assertEquals(expected.getUid(), actual.getUid());
+      assertEquals(expected.getStringMessage(), actual.getStringMessage());
+      assertEquals(expected.isSubscribed(), actual.isSubscribed());
+      assertEquals(expected.getFullMsg(), actual.getFullMsg());
+      assertEquals(expected.getInstant(), actual.getInstant());
+    }
+    assertTrue(queue.isEmpty());
+    assertNull(queue.poll());
+    assertFalse(Files.exists(spillFile));
+  }
+
+  @Test
+  public void readsSpillFromPreviousRun() {
+    Path spillFile = dir.resolve("test.spill");
+    MessageQueue queue = new MessageQueue("test", 2, OverflowPolicy.SPILL_TO_DISK,
+        WaitStrategy.BLOCKING, spillFile);
+    for (int i = 0; i < 5; i++) {
+      queue.add(loggable(i));
+    }
+    assertEquals(2, queue.size());
+
+    // the first two were only in memory and are lost with the old queue.
+    MessageQueue restarted = new MessageQueue("test", 8, OverflowPolicy.SPILL_TO_DISK,
+        WaitStrategy.BLOCKING, spillFile);
+    assertFalse(restarted.isEmpty());
+    List<Message> messages = new ArrayList<>();
+    restarted.drainTo(messages);
+    assertEquals(List.of("message 2", "message 3", "message 4"),
+        messages.stream().map(Message::getStringMessage).toList());
+  }
+}
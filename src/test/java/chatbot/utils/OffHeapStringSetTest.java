@@ -0,0 +1,51 @@
+package chatbot.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class OffHeapStringSetTest {
+
+  @Test
+  public void addAndContains() {
+    OffHeapStringSet set = new OffHeapStringSet(4);
+    assertTrue(set.add("nammer"));
+    assertFalse(set.add("nammer"));
+    assertTrue(set.add("ñam"));
+
+    assertTrue(set.contains("nammer"));
+    assertTrue(set.contains("ñam"));
+    assertFalse(set.contains("nam"));
+    assertFalse(set.contains(""));
+    assertEquals(2, set.size());
+  }
+
+  @Test
+  public void growsPastExpectedSize() {
+    OffHeapStringSet set = new OffHeapStringSet(16);
+    for (int i = 0; i < 50_000; i++) {
+      set.add("user" + i);
+    }
+    assertEquals(50_000, set.size());
+    for (int i = 0; i < 50_000; i++) {
+      assertTrue(set.contains("user" + i), "user" + i);
+    }
+    assertFalse(set.contains("user50000"));
+  }
+
+  @Test
+  public void forEachInInsertionOrder() {
+    OffHeapStringSet set = new OffHeapStringSet(16);
+    set.add("b");
+    set.add("a");
+    set.add("b");
+    set.add("c");
+    List<String> seen = new ArrayList<>();
+    set.forEach(seen::add);
+    assertEquals(List.of("b", "a", "c"), seen);
+  }
+}
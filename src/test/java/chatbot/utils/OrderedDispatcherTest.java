@@ -0,0 +1,111 @@
+package chatbot.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import chatbot.utils.OrderedDispatcher.Outcome;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class OrderedDispatcherTest {
+
+  private static final Duration LONG = Duration.ofSeconds(10);
+  private final OrderedDispatcher dispatcher = new OrderedDispatcher("test");
+
+  @AfterEach
+  public void close() {
+    dispatcher.close();
+  }
+
+  @Test
+  public void sameKeyRunsInOrder() throws Exception {
+    List<Integer> order = new CopyOnWriteArrayList<>();
+    CountDownLatch release = new CountDownLatch(1);
+    Semaphore permits = new Semaphore(10);
+
+    dispatcher.submit("user", permits, LONG, () -> {
+      await(release);
+      order.add(1);
+    }, () -> {});
+    dispatcher.submit("user", permits, LONG, () -> order.add(2), () -> {});
+    CompletableFuture<Outcome> last = dispatcher.submit("user", permits, LONG, () -> order.add(3), () -> {});
+
+    assertTrue(order.isEmpty());
+    release.countDown();
+    assertEquals(Outcome.DONE, last.get(5, TimeUnit.SECONDS));
+    assertEquals(List.of(1, 2, 3), order);
+  }
+
+  @Test
+  public void otherKeysDoNotWait() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    Semaphore permits = new Semaphore(10);
+
+    CompletableFuture<Outcome> slow = dispatcher.submit("slow", permits, LONG, () -> await(release), () -> {});
+    CompletableFuture<Outcome> fast = dispatcher.submit("fast", permits, LONG, () -> {}, () -> {});
+
+    assertEquals(Outcome.DONE, fast.get(5, TimeUnit.SECONDS));
+    assertFalse(slow.isDone());
+    release.countDown();
+    assertEquals(Outcome.DONE, slow.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void rejectedWithoutPermit() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    Semaphore permits = new Semaphore(1);
+    AtomicBoolean ran = new AtomicBoolean();
+
+    CompletableFuture<Outcome> first = dispatcher.submit("a", permits, LONG, () -> await(release), () -> {});
+    CompletableFuture<Outcome> second = dispatcher.submit("b", permits, LONG, () -> ran.set(true), () -> {});
+
+    assertEquals(Outcome.REJECTED, second.get(5, TimeUnit.SECONDS));
+    assertFalse(ran.get());
+    release.countDown();
+    assertEquals(Outcome.DONE, first.get(5, TimeUnit.SECONDS));
+    assertEquals(1, permits.availablePermits());
+  }
+
+  @Test
+  public void timeoutLetsNextTaskRun() throws Exception {
+    Semaphore permits = new Semaphore(10);
+    AtomicBoolean timedOut = new AtomicBoolean();
+
+    CompletableFuture<Outcome> hung = dispatcher.submit("user", permits, Duration.ofMillis(50),
+        () -> await(new CountDownLatch(1)), () -> timedOut.set(true));
+    CompletableFuture<Outcome> next = dispatcher.submit("user", permits, LONG, () -> {}, () -> {});
+
+    assertEquals(Outcome.TIMED_OUT, hung.get(5, TimeUnit.SECONDS));
+    assertTrue(timedOut.get());
+    assertEquals(Outcome.DONE, next.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void failedTaskReleasesPermit() throws Exception {
+    Semaphore permits = new Semaphore(1);
+
+    CompletableFuture<Outcome> failed = dispatcher.submit("user", permits, LONG, () -> {
+      throw new IllegalStateException("test");
+    }, () -> {});
+
+    assertEquals(Outcome.FAILED, failed.get(5, TimeUnit.SECONDS));
+    assertEquals(1, permits.availablePermits());
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
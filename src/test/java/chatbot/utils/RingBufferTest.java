@@ -0,0 +1,129 @@
+package chatbot.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import chatbot.enums.WaitStrategy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+public class RingBufferTest {
+
+  @Test
+  public void boundedCapacity() {
+    RingBuffer<Integer> buffer = new RingBuffer<>(3, WaitStrategy.BLOCKING);
+    assertEquals(4, buffer.capacity());
+    for (int i = 0; i < 4; i++) {
+      assertTrue(buffer.offer(i));
+    }
+    assertFalse(buffer.offer(4));
+    assertEquals(0, buffer.poll());
+    assertTrue(buffer.offer(4));
+    assertEquals(4, buffer.size());
+  }
+
+  @Test
+  public void drainsInOrder() {
+    RingBuffer<Integer> buffer = new RingBuffer<>(16, WaitStrategy.BLOCKING);
+    for (int i = 0; i < 10; i++) {
+      buffer.add(i);
+    }
+    List<Integer> batch = new ArrayList<>();
+    assertEquals(4, buffer.drainTo(batch, 4));
+    assertEquals(List.of(0, 1, 2, 3), batch);
+    assertEquals(6, buffer.drainTo(batch));
+    assertEquals(10, batch.size());
+    assertTrue(buffer.isEmpty());
+    assertNull(buffer.poll());
+  }
+
+  @Test
+  public void collectionViewsUseSnapshot() {
+    RingBuffer<Integer> buffer = new RingBuffer<>(4, WaitStrategy.BLOCKING);
+    for (int i = 0; i < 4; i++) {
+      buffer.add(i);
+    }
+    buffer.poll();
+    buffer.add(4);
+
+    assertEquals("[1, 2, 3, 4]", buffer.toString());
+    assertTrue(buffer.contains(4));
+    assertFalse(buffer.contains(0));
+    assertTrue(buffer.containsAll(List.of(1, 3)));
+    assertThrows(UnsupportedOperationException.class, () -> buffer.remove(2));
+    buffer.clear();
+    assertTrue(buffer.isEmpty());
+    assertEquals("[]", buffer.toString());
+  }
+
+  @Test
+  public void pollTimesOut() throws InterruptedException {
+    RingBuffer<Integer> buffer = new RingBuffer<>(16, WaitStrategy.BLOCKING);
+    long start = System.nanoTime();
+    assertNull(buffer.poll(50, TimeUnit.MILLISECONDS));
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+  }
+
+  @ParameterizedTest
+  @EnumSource(WaitStrategy.class)
+  public void multipleProducersAndConsumers(WaitStrategy waitStrategy) throws Exception {
+    int producers = 3;
+    int consumers = 2;
+    int perProducer = 20_000;
+    RingBuffer<Long> buffer = new RingBuffer<>(1024, waitStrategy);
+    AtomicLong sum = new AtomicLong();
+    AtomicLong count = new AtomicLong();
+
+    try (ExecutorService executor = Executors.newFixedThreadPool(producers + consumers)) {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int c = 0; c < consumers; c++) {
+        futures.add(executor.submit(() -> {
+          List<Long> batch = new ArrayList<>();
+          while (true) {
+            batch.clear();
+            batch.add(buffer.take());
+            buffer.drainTo(batch, 63);
+            for (Long value : batch) {
+              if (value < 0) {
+                // passed on for the other consumers, a batch can only have one of them.
+                buffer.put(value);
+                return null;
+              }
+              sum.addAndGet(value);
+              count.incrementAndGet();
+            }
+          }
+        }));
+      }
+      List<Future<?>> producing = new ArrayList<>();
+      for (int p = 0; p < producers; p++) {
+        producing.add(executor.submit(() -> {
+          for (long i = 1; i <= perProducer; i++) {
+            buffer.put(i);
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : producing) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+      buffer.put(-1L);
+      for (Future<?> future : futures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+    }
+    assertEquals((long) producers * perProducer, count.get());
+    assertEquals((long) producers * perProducer * (perProducer + 1) / 2, sum.get());
+  }
+}
@@ -0,0 +1,109 @@
+package chatbot.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import chatbot.message.CommandMessage;
+import chatbot.message.SimpleMessage;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+public class SendSchedulerTest {
+
+  private final AtomicLong now = new AtomicLong();
+  private final AtomicBoolean moderator = new AtomicBoolean();
+  private final SendScheduler scheduler = new SendScheduler(Duration.ofSeconds(30), moderator::get, now::get);
+
+  private void advance(long seconds) {
+    now.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+  }
+
+  private int sendable() {
+    int sent = 0;
+    while (scheduler.poll() != null) {
+      sent++;
+    }
+    return sent;
+  }
+
+  @Test
+  public void burstThenRefill() {
+    for (int i = 0; i < 20; i++) {
+      scheduler.add(new SimpleMessage("a", "message " + i));
+    }
+
+    assertEquals(5, sendable());
+    assertEquals(TimeUnit.SECONDS.toNanos(2), scheduler.nanosUntilNext(), 1000);
+    advance(2);
+    assertEquals(1, sendable());
+    advance(20);
+    assertEquals(5, sendable(), "refill is capped at the burst size");
+  }
+
+  @Test
+  public void neverMoreThanLimitInWindow() {
+    List<Long> sentAt = new ArrayList<>();
+    for (int second = 0; second < 120; second++) {
+      for (int i = 0; i < 5; i++) {
+        scheduler.add(new SimpleMessage("a", second + " " + i));
+      }
+      int sent = sendable();
+      for (int i = 0; i < sent; i++) {
+        sentAt.add(now.get());
+      }
+      advance(1);
+    }
+
+    for (long start : sentAt) {
+      long inWindow = sentAt.stream().filter(t -> t >= start && t < start + SendScheduler.WINDOW_NANOS).count();
+      assertTrue(inWindow <= SendScheduler.USER_LIMIT, inWindow + " sent in 30s");
+    }
+  }
+
+  @Test
+  public void moderatorHasHigherLimit() {
+    moderator.set(true);
+    advance(30);
+    for (int i = 0; i < 50; i++) {
+      scheduler.add(new SimpleMessage("a", "message " + i));
+    }
+
+    assertEquals(25, sendable());
+  }
+
+  @Test
+  public void priorityFirst() {
+    scheduler.add(new SimpleMessage("a", "normal"));
+    scheduler.add(new SimpleMessage("a", "/w user whisper"));
+
+    assertEquals("/w user whisper", scheduler.poll().text());
+    assertEquals("normal", scheduler.poll().text());
+  }
+
+  @Test
+  public void duplicatesAreCoalesced() {
+    scheduler.add(new SimpleMessage("a", "same"));
+    scheduler.add(new SimpleMessage("b", "same"));
+
+    assertEquals(1, scheduler.size());
+  }
+
+  @Test
+  public void staleAndExpiredAreDropped() {
+    scheduler.add(new SimpleMessage("a", "old"));
+    advance(31);
+    CommandMessage expired = new CommandMessage("b", "!rq b").setResponse("response");
+    expired.expire();
+    scheduler.add(expired);
+    scheduler.add(new SimpleMessage("c", "new"));
+
+    assertEquals("new", scheduler.poll().text());
+    assertNull(scheduler.poll());
+  }
+}
@@ -0,0 +1,90 @@
+package chatbot.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
+
+import chatbot.utils.Confusables.Folded;
+import java.time.Duration;
+import java.util.List;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+
+public class SkeletonPatternTest {
+
+  @Test
+  public void foldsLookAlikesAndDropsMarks() {
+    Folded folded = Confusables.fold("Ḟ0Ｏ d̦áy ❗");
+
+    assertEquals("foo day i", folded.text());
+    assertArrayEquals(new int[]{0, 1, 2, 3, 4, 6, 8, 9, 10, 11}, folded.offsets());
+  }
+
+  @Test
+  public void replacesInOriginalText() {
+    SkeletonPattern pattern = SkeletonPattern.compile("\\bfo+d*");
+
+    assertEquals("x BAD y", pattern.replaceAll("x Ḟ0Ｏd̦ y", "BAD"));
+    assertEquals("BAD, BAD", pattern.replaceAll("foo, FOOOD", "BAD"));
+    assertEquals("xfoo", pattern.replaceAll("xfoo", "BAD"));
+  }
+
+  @Test
+  public void leftmostLongest() {
+    SkeletonPattern pattern = SkeletonPattern.compile("ab|abcd|bcde");
+
+    assertEquals("<>e", pattern.replaceAll("abcde", "<>"));
+  }
+
+  @Test
+  public void classesGroupsAndOptional() {
+    SkeletonPattern pattern = SkeletonPattern.compile("c[ao]t(er)?s*");
+
+    assertEquals("- - - cut", pattern.replaceAll("cat cots caters cut", "-"));
+  }
+
+  @Test
+  public void excludedStarts() {
+    SkeletonPattern pattern = SkeletonPattern.compile("\\bna+m").unlessStartsWith("names");
+
+    assertEquals("X names X", pattern.replaceAll("nam names naaam", "X"));
+  }
+
+  @Test
+  public void noMatchReturnsText() {
+    String text = "nothing here";
+
+    assertSame(text, SkeletonPattern.compile("\\bxyz").replaceAll(text, "X"));
+  }
+
+  @Test
+  public void rejectsUnsupportedSyntax() {
+    assertThrows(IllegalArgumentException.class, () -> SkeletonPattern.compile("a{2,}"));
+    assertThrows(IllegalArgumentException.class, () -> SkeletonPattern.compile("(ab"));
+    assertThrows(IllegalArgumentException.class, () -> SkeletonPattern.compile("\\d"));
+  }
+
+  @Test
+  public void repeatedLettersMatchLikeTheOldRegex() {
+    // the ASCII part of the character classes the replace list had before it was folded.
+    Pattern old = Pattern.compile("\\b[c]+[o0]{2,}[n]+[s]*");
+    SkeletonPattern folded = SkeletonPattern.compile("\\bc+oo+n+s*");
+
+    for (String text : List.of("cccoon coon", "ccoooonnss", "c00n", "con", "xcoon", "cocoon")) {
+      assertEquals(old.matcher(text).replaceAll("BAD"), folded.replaceAll(text, "BAD"), text);
+    }
+    assertEquals("BAD BAD", folded.replaceAll("cccoon coon", "BAD"));
+  }
+
+  @Test
+  public void nestedRepetitionStaysLinear() {
+    // (a*)* style nesting that makes a backtracking regex take exponential time when it fails.
+    SkeletonPattern pattern = SkeletonPattern.compile("\\bn+[ao]*g+(le+t+|[ea]*r*|no+g+|a*)*x");
+    String text = "n" + "g".repeat(1000) + "ear".repeat(3000) + "!";
+
+    String result = assertTimeout(Duration.ofSeconds(5), () -> pattern.replaceAll(text, "X"));
+    assertSame(text, result);
+  }
+}
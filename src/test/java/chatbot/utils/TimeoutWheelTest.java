@@ -0,0 +1,112 @@
+package chatbot.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import chatbot.message.TimeoutMessage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+
+public class TimeoutWheelTest {
+
+  private final static Logger log = LogManager.getLogger(TimeoutWheelTest.class);
+
+  @Test
+  public void expiresAfterLength() {
+    TimeoutMessage timeout = new TimeoutMessage("user", "1", 10);
+    TimeoutWheel wheel = new TimeoutWheel(100, TimeUnit.MILLISECONDS, timeout.getStartNanos());
+    wheel.schedule(timeout);
+    List<TimeoutMessage> expired = new ArrayList<>();
+
+    wheel.advance(timeout.getStartNanos() + TimeUnit.SECONDS.toNanos(9), expired::add);
+    assertTrue(expired.isEmpty());
+    assertSame(timeout, wheel.get(new TimeoutMessage("USER", "1", 0)));
+
+    wheel.advance(timeout.getStartNanos() + TimeUnit.SECONDS.toNanos(11), expired::add);
+    assertEquals(List.of(timeout), expired);
+    assertTrue(wheel.isEmpty());
+  }
+
+  @Test
+  public void rescheduleMovesExpiry() {
+    TimeoutMessage timeout = new TimeoutMessage("user", "1", 600);
+    long origin = timeout.getStartNanos();
+    TimeoutWheel wheel = new TimeoutWheel(100, TimeUnit.MILLISECONDS, origin);
+    wheel.schedule(timeout);
+    timeout.resetTimeout(1);
+    wheel.reschedule(timeout);
+    List<TimeoutMessage> expired = new ArrayList<>();
+
+    wheel.advance(timeout.getStartNanos() + TimeUnit.SECONDS.toNanos(2), expired::add);
+    assertEquals(List.of(timeout), expired);
+  }
+
+  @Test
+  public void cancelledTimeoutDoesNotExpire() {
+    TimeoutMessage timeout = new TimeoutMessage("user", "1", 5);
+    TimeoutWheel wheel = new TimeoutWheel(100, TimeUnit.MILLISECONDS, timeout.getStartNanos());
+    wheel.schedule(timeout);
+    assertTrue(wheel.cancel(timeout));
+    List<TimeoutMessage> expired = new ArrayList<>();
+
+    wheel.advance(timeout.getStartNanos() + TimeUnit.SECONDS.toNanos(10), expired::add);
+    assertTrue(expired.isEmpty());
+    assertNull(wheel.get(timeout));
+  }
+
+  @Test
+  public void nextExpiry() {
+    TimeoutMessage timeout = new TimeoutMessage("user", "1", 2);
+    long origin = timeout.getStartNanos();
+    TimeoutWheel wheel = new TimeoutWheel(100, TimeUnit.MILLISECONDS, origin);
+    assertEquals(-1, wheel.nanosUntilNextExpiry(origin));
+    wheel.schedule(timeout);
+    long next = wheel.nanosUntilNextExpiry(origin);
+    assertTrue(next > TimeUnit.MILLISECONDS.toNanos(1900) && next <= TimeUnit.SECONDS.toNanos(2),
+        "next expiry in " + next);
+  }
+
+  /**
+   * Tracks 10000 timeouts of lengths from a second up to two weeks and steps through them, every
+   * timeout has to expire exactly once and not before its time.
+   */
+  @Test
+  public void manyTimeouts() {
+    int count = 10000;
+    long origin = System.nanoTime();
+    TimeoutWheel wheel = new TimeoutWheel(100, TimeUnit.MILLISECONDS, origin);
+    List<TimeoutMessage> timeouts = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      timeouts.add(new TimeoutMessage("user" + i, String.valueOf(i), 1 + (i * 121) % 1209600));
+    }
+
+    long start = System.nanoTime();
+    timeouts.forEach(wheel::schedule);
+    log.info("Scheduled {} timeouts in {}us", count, (System.nanoTime() - start) / 1000);
+    assertEquals(count, wheel.size());
+
+    long maxStart = timeouts.getLast().getStartNanos();
+    long[] now = {origin};
+    int[] fired = {0};
+    start = System.nanoTime();
+    while (!wheel.isEmpty()) {
+      now[0] += TimeUnit.MINUTES.toNanos(1);
+      wheel.advance(now[0], timeout -> {
+        long deadline = timeout.getStartNanos() + TimeUnit.SECONDS.toNanos(timeout.getLength());
+        assertTrue(deadline - now[0] <= 0, "expired early: " + timeout);
+        assertTrue(now[0] - deadline < TimeUnit.MINUTES.toNanos(1) + (maxStart - origin)
+            + TimeUnit.MILLISECONDS.toNanos(100), "expired late: " + timeout);
+        fired[0]++;
+      });
+    }
+    log.info("Expired {} timeouts over two weeks in {}us", fired[0],
+        (System.nanoTime() - start) / 1000);
+    assertEquals(count, fired[0]);
+  }
+}
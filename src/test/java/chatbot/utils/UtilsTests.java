@@ -2,6 +2,7 @@ package chatbot.utils;
 
 import static chatbot.utils.Utils.convertTime;
 import static chatbot.utils.Utils.getWordList;
+import static chatbot.utils.Utils.splitMessage;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertIterableEquals;
 
@@ -49,4 +50,17 @@ public class UtilsTests {
         "one quote");
 
   }
+
+  @Test
+  public void splitMessageTest() {
+    assertIterableEquals(List.of("short"), splitMessage("short", 10, 3));
+    assertIterableEquals(List.of("one two", "three four", "five"),
+        splitMessage("one two three four five", 10, 3));
+    assertIterableEquals(List.of("abcdefghij", "klm"), splitMessage("abcdefghijklm", 10, 3),
+        "no space to break at");
+    assertIterableEquals(List.of("one two", "three fo.."), splitMessage("one two three four five", 10, 2),
+        "cut after max parts");
+    assertIterableEquals(List.of("/w nam one", "/w nam two", "/w nam six"),
+        splitMessage("/w nam one two six", 10, 3), "whisper prefix on every part");
+  }
 }